@@ -0,0 +1,46 @@
+#!/bin/bash
+#
+# Compare per-request latency of cold launches (decaf.sh) with requests to
+# a warm compiler server (decafc.sh) for the same compiler arguments:
+#
+#     ./bench-server.sh [options] <file>
+#
+# RUNS sets the number of timed runs of each kind (default 10). A private
+# server is started on DECAF_PORT (default 7391) and stopped afterwards.
+
+RUNS=${RUNS:-10}
+export DECAF_PORT=${DECAF_PORT:-7391}
+DIR="$(dirname "$0")"
+
+if [ $# -eq 0 ]; then
+    echo "Usage: ./bench-server.sh [options] <file>"
+    exit 1
+fi
+
+# print the wall-clock time of a command in milliseconds
+elapsed() {
+    local start=$(date +%s%N)
+    "$@" > /dev/null 2>&1
+    echo $(( ($(date +%s%N) - start) / 1000000 ))
+}
+
+# print min / median / max of the numbers on stdin
+summarize() {
+    sort -n | awk '{ t[NR] = $1 } END {
+        printf "min %d ms, median %d ms, max %d ms\n", t[1], t[int((NR + 1) / 2)], t[NR] }'
+}
+
+bash "$DIR/decaf.sh" --server=$DECAF_PORT 2> /dev/null &
+for i in $(seq 50); do
+    { exec 3<>/dev/tcp/127.0.0.1/$DECAF_PORT; } 2> /dev/null && break
+    sleep 0.1
+done
+exec 3<&-
+
+echo -n "cold (decaf.sh):   "
+for i in $(seq $RUNS); do elapsed bash "$DIR/decaf.sh" "$@"; done | summarize
+echo -n "warm (decafc.sh):  "
+for i in $(seq $RUNS); do elapsed "$DIR/decafc.sh" "$@"; done | summarize
+
+"$DIR/decafc.sh" --shutdown > /dev/null
+wait
@@ -0,0 +1,46 @@
+#!/bin/bash
+#
+# Measure startup with and without the class-data-sharing archive built by
+# "mvn package" (see the "cds" profile in pom.xml):
+#
+#     ./bench-startup.sh [file]
+#
+# For each configuration, reports the median time from JVM start to the
+# first token (as printed by --timings) and the median total wall time over
+# RUNS runs (default 10). The file defaults to TestFile.decaf.
+
+RUNS=${RUNS:-10}
+DIR="$(dirname "$0")"
+JAR="$DIR/target/decaf-1.0-SNAPSHOT.jar"
+CDS="$DIR/target/decaf.jsa"
+FILE=${1:-$DIR/TestFile.decaf}
+
+if [ ! -f "$JAR" -o ! -f "$CDS" ]; then
+    echo "Run \"mvn package\" (on Java 13 or later) first"
+    exit 1
+fi
+
+median() {
+    sort -n | awk '{ t[NR] = $1 } END { print t[int((NR + 1) / 2)] }'
+}
+
+# run the compiler RUNS times with the given JVM options and print the
+# median time to first token and median wall time
+measure() {
+    local first=() total=()
+    for i in $(seq $RUNS); do
+        local start=$(date +%s%N)
+        local t=$(java "$@" -cp "$JAR" edu.jmu.decaf.DecafCompiler --timings "$FILE" \
+            2>&1 >/dev/null | sed -n 's/^Timings.* first-token \([0-9.]*\).*/\1/p')
+        total+=($(( ($(date +%s%N) - start) / 1000000 )))
+        first+=(${t:-0})
+    done
+    printf "first token %6s ms, total %4s ms\n" \
+        "$(printf '%s\n' "${first[@]}" | median)" \
+        "$(printf '%s\n' "${total[@]}" | median)"
+}
+
+echo -n "without archive:  "
+measure -Xshare:auto
+echo -n "with archive:     "
+measure -XX:SharedArchiveFile="$CDS" -Xlog:cds=off,cds+dynamic=off
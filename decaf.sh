@@ -1,4 +1,15 @@
 #!/bin/bash
 
-java -cp target/classes edu.jmu.decaf.DecafCompiler $@
+DIR="$(dirname "$0")"
+JAR="$DIR/target/decaf-1.0-SNAPSHOT.jar"
+CDS="$DIR/target/decaf.jsa"
 
+# use the jar and its class-data-sharing archive (built by "mvn package" on
+# Java 13+) if the archive is up to date; otherwise use the compiled classes
+if [ -f "$CDS" -a "$CDS" -nt "$JAR" ] && \
+        [ -z "$(find "$DIR/target/classes" -name '*.class' -newer "$JAR" 2>/dev/null | head -1)" ]; then
+    exec java -XX:SharedArchiveFile="$CDS" -Xlog:cds=off,cds+dynamic=off \
+        -cp "$JAR" edu.jmu.decaf.DecafCompiler "$@"
+fi
+
+java -cp "$DIR/target/classes" edu.jmu.decaf.DecafCompiler "$@"
@@ -0,0 +1,24 @@
+#!/bin/bash
+#
+# Client for the compiler server ("./decaf.sh --server"). Takes the same
+# arguments as decaf.sh but sends them to the running server instead of
+# starting a new JVM; falls back to decaf.sh if no server is running.
+# "./decafc.sh --shutdown" stops the server. Requests are authenticated
+# with the token that the server writes to ~/.decaf/server-<port>.token.
+
+PORT=${DECAF_PORT:-7381}
+TOKEN_FILE="$HOME/.decaf/server-$PORT.token"
+
+if [ -r "$TOKEN_FILE" ] && { exec 3<>/dev/tcp/127.0.0.1/$PORT; } 2>/dev/null; then
+    {
+        printf 'DECAF 2\n%s\n%s\n' "$(cat "$TOKEN_FILE")" "$PWD"
+        for arg in "$@"; do
+            printf '%s\n' "$arg"
+        done
+        printf '\n'
+    } >&3
+    cat <&3
+    exec 3<&-
+else
+    exec bash "$(dirname "$0")/decaf.sh" "$@"
+fi
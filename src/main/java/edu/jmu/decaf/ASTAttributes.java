@@ -0,0 +1,116 @@
+package edu.jmu.decaf;
+
+import java.util.*;
+
+/**
+ * Map view of the attributes of an {@link ASTNode} (its {@code attributes}
+ * field). Well-known attributes are read from and written to the fields of
+ * the node (see {@link ASTNode#getField} and {@link ASTNode#setField}); all
+ * other keys go to an ordinary hash map that is created the first time one
+ * of them is stored.
+ *
+ * A field that holds {@code null} (or -1, for the sizes and the depth) is
+ * treated as absent, so storing {@code null} under a well-known key removes
+ * the attribute. The entry set is a read-only snapshot; modify the view with
+ * {@link #put}, {@link #remove}, and {@link #clear}.
+ */
+class ASTAttributes extends AbstractMap<String, Object>
+{
+    /**
+     * Returned by {@link ASTNode#getField} for keys that are not stored in
+     * fields of the node
+     */
+    static final Object NOT_A_FIELD = new Object();
+
+    /**
+     * Names of all attributes that are stored in fields (in some node class)
+     */
+    private static final String[] FIELD_KEYS = {
+        "parent", "depth", "source", "type", "symbolTable",
+        "staticSize", "localSize", "code", "reg" };
+
+    private final ASTNode node;
+    private Map<String, Object> others;
+
+    public ASTAttributes(ASTNode node)
+    {
+        this.node = node;
+        others = null;
+    }
+
+    @Override
+    public Object get(Object key)
+    {
+        if (key instanceof String) {
+            Object value = node.getField((String)key);
+            if (value != NOT_A_FIELD) {
+                return value;
+            }
+        }
+        return (others != null ? others.get(key) : null);
+    }
+
+    @Override
+    public boolean containsKey(Object key)
+    {
+        if (key instanceof String) {
+            Object value = node.getField((String)key);
+            if (value != NOT_A_FIELD) {
+                return value != null;
+            }
+        }
+        return others != null && others.containsKey(key);
+    }
+
+    @Override
+    public Object put(String key, Object value)
+    {
+        Object previous = node.getField(key);
+        if (previous != NOT_A_FIELD) {
+            node.setField(key, value);
+            return previous;
+        }
+        if (others == null) {
+            others = new HashMap<String, Object>();
+        }
+        return others.put(key, value);
+    }
+
+    @Override
+    public Object remove(Object key)
+    {
+        if (key instanceof String) {
+            Object previous = node.getField((String)key);
+            if (previous != NOT_A_FIELD) {
+                node.setField((String)key, null);
+                return previous;
+            }
+        }
+        return (others != null ? others.remove(key) : null);
+    }
+
+    @Override
+    public void clear()
+    {
+        for (String key : FIELD_KEYS) {
+            node.setField(key, null);
+        }
+        others = null;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet()
+    {
+        Map<String, Object> entries = new LinkedHashMap<String, Object>();
+        for (String key : FIELD_KEYS) {
+            Object value = node.getField(key);
+            if (value != NOT_A_FIELD && value != null) {
+                entries.put(key, value);
+            }
+        }
+        if (others != null) {
+            entries.putAll(others);
+        }
+        return Collections.unmodifiableMap(entries).entrySet();
+    }
+}
@@ -14,12 +14,45 @@ public class ASTBlock extends ASTNode
     public List<ASTVariable> variables;
     public List<ASTStatement> statements;
 
+    private SymbolTable symbolTable;
+
     public ASTBlock()
     {
         this.variables = new ArrayList<ASTVariable>();
         this.statements = new ArrayList<ASTStatement>();
     }
 
+    @Override
+    public void setSymbolTable(SymbolTable table)
+    {
+        symbolTable = table;
+    }
+
+    @Override
+    public SymbolTable getSymbolTable()
+    {
+        return symbolTable;
+    }
+
+    @Override
+    Object getField(String key)
+    {
+        if (key.equals("symbolTable")) {
+            return symbolTable;
+        }
+        return super.getField(key);
+    }
+
+    @Override
+    boolean setField(String key, Object value)
+    {
+        if (key.equals("symbolTable")) {
+            symbolTable = (SymbolTable)value;
+            return true;
+        }
+        return super.setField(key, value);
+    }
+
     @Override
     public void traverse(ASTVisitor visitor)
     {
@@ -29,12 +29,16 @@ public class ASTFunction extends ASTNode
 
     public List<Parameter> parameters;
 
+    private SymbolTable symbolTable;
+    private int localSize;
+
     public ASTFunction(String name, ASTNode.DataType returnType, ASTBlock body)
     {
         this.name = name;
         this.returnType = returnType;
         this.body = body;
         this.parameters = new ArrayList<Parameter>();
+        this.localSize = -1;
     }
 
     public String getParameterStr()
@@ -51,6 +55,61 @@ public class ASTFunction extends ASTNode
         return params.toString();
     }
 
+    @Override
+    public void setSymbolTable(SymbolTable table)
+    {
+        symbolTable = table;
+    }
+
+    @Override
+    public SymbolTable getSymbolTable()
+    {
+        return symbolTable;
+    }
+
+    /**
+     * Initialize the size of the local variables
+     * @param size Size (in bytes)
+     */
+    public void setLocalSize(int size)
+    {
+        localSize = size;
+    }
+
+    /**
+     * Retrieve the size of the local variables
+     * @return Size (in bytes) or -1 if the corresponding attribute is not
+     * present
+     */
+    public int getLocalSize()
+    {
+        return localSize;
+    }
+
+    @Override
+    Object getField(String key)
+    {
+        if (key.equals("symbolTable")) {
+            return symbolTable;
+        } else if (key.equals("localSize")) {
+            return (localSize >= 0 ? Integer.valueOf(localSize) : null);
+        }
+        return super.getField(key);
+    }
+
+    @Override
+    boolean setField(String key, Object value)
+    {
+        if (key.equals("symbolTable")) {
+            symbolTable = (SymbolTable)value;
+            return true;
+        } else if (key.equals("localSize")) {
+            localSize = (value != null ? ((Integer)value).intValue() : -1);
+            return true;
+        }
+        return super.setField(key, value);
+    }
+
     @Override
     public void traverse(ASTVisitor visitor)
     {
@@ -6,11 +6,17 @@ import java.util.*;
  * Abstract base class for abstract syntax tree (AST) nodes. Provides some
  * basic definitions used across many nodes, such as {@link DataType} definitions
  * and attribute management. AST nodes are designed to be semi-mutable by means
- * of the {@code attributes} map that is stored in every
- * node. Several of the more important attributes (e.g., parent links and tree
- * depth) are widely used and thus have special handlers implemented in this
- * class. However, this class is not intended to be instantiated directly,
- * and thus is declared {@code abstract}.
+ * of attributes that later passes attach to them. The well-known attributes
+ * listed below are stored in fields of this class (or of the subclasses that
+ * use them) and have typed accessors. Any other attribute is kept in a map
+ * that is only created when a node is first given one.
+ *
+ * The {@code attributes} map in every node is a view of all of the node's
+ * attributes, keyed by the names below. Storing a well-known attribute in it
+ * sets the corresponding field (its value must have the listed type, and
+ * storing {@code null} removes the attribute), so passes that use the map
+ * and passes that use the accessors see the same annotations. New code
+ * should prefer the accessors, which avoid the string lookup and boxing.
  * 
  * List of potential attributes (not exhaustive):
  * 
@@ -23,6 +29,8 @@ import java.util.*;
  * <tr><td>{@code type}</td><td>{@link ASTNode.DataType} of node (only in {@link ASTExpression} subclasses)</td></tr>
  * <tr><td>{@code staticSize}</td><td>Size (in bytes) of global variables (only in {@link ASTProgram})</td></tr>
  * <tr><td>{@code localSize}</td><td>Size (in bytes) of local variables (only in {@link ASTFunction})</td></tr>
+ * <tr><td>{@code code}</td><td>Generated ILOC code ({@code List<ILOCInstruction>})</td></tr>
+ * <tr><td>{@code reg}</td><td>ILOC virtual register that holds the result ({@link ILOCOperand})</td></tr>
  * <caption>Potential attributes</caption>
  * </table>
  */
@@ -51,17 +59,25 @@ public abstract class ASTNode
     }
 
     /**
-     * Generic key/value store. Used to annotate AST with useful properties. See
-     * class documentation for more details.
+     * Key/value view of all attributes. Used to annotate AST with useful
+     * properties. See class documentation for more details.
      */
     public Map<String, Object> attributes;
 
+    private ASTNode parent;
+    private int depth;
+    private SourceInfo source;
+    private DataType type;
+    private List<ILOCInstruction> code;
+    private ILOCOperand reg;
+
     /**
      * Generic constructor.
      */
     public ASTNode()
     {
-        attributes = new HashMap<String, Object>();
+        attributes = new ASTAttributes(this);
+        depth = -1;
     }
 
     /**
@@ -79,7 +95,7 @@ public abstract class ASTNode
      */
     public void setParent(ASTNode parent)
     {
-        attributes.put("parent", parent);
+        this.parent = parent;
     }
 
     /**
@@ -89,10 +105,6 @@ public abstract class ASTNode
      */
     public ASTNode getParent()
     {
-        ASTNode parent = null;
-        if (attributes.containsKey("parent")) {
-            parent = (ASTNode)attributes.get("parent");
-        }
         return parent;
     }
 
@@ -102,7 +114,7 @@ public abstract class ASTNode
      */
     public void setDepth(int depth)
     {
-        attributes.put("depth", Integer.valueOf(depth));
+        this.depth = depth;
     }
 
     /**
@@ -112,10 +124,6 @@ public abstract class ASTNode
      */
     public int getDepth()
     {
-        int depth = -1;
-        if (attributes.containsKey("depth")) {
-            depth = ((Integer)attributes.get("depth")).intValue();
-        }
         return depth;
     }
 
@@ -125,7 +133,7 @@ public abstract class ASTNode
      */
     public void setSourceInfo(SourceInfo source)
     {
-        attributes.put("source", source);
+        this.source = source;
     }
 
     /**
@@ -135,11 +143,7 @@ public abstract class ASTNode
      */
     public SourceInfo getSourceInfo()
     {
-        if (attributes.containsKey("source")) {
-            return (SourceInfo)attributes.get("source");
-        } else {
-            return SourceInfo.INVALID;
-        }
+        return (source != null ? source : SourceInfo.INVALID);
     }
 
     /**
@@ -148,7 +152,7 @@ public abstract class ASTNode
      */
     public void setType(DataType type)
     {
-        attributes.put("type", type);
+        this.type = type;
     }
 
     /**
@@ -157,11 +161,123 @@ public abstract class ASTNode
      */
     public DataType getType()
     {
-        DataType type = DataType.VOID;
-        if (attributes.containsKey("type")) {
-            type = (DataType)attributes.get("type");
+        return (type != null ? type : DataType.VOID);
+    }
+
+    /**
+     * Initialize the symbol table. Only {@link ASTProgram}, {@link
+     * ASTFunction}, and {@link ASTBlock} have a field for it; other nodes keep
+     * it with the other rare attributes.
+     * @param table Symbol table
+     */
+    public void setSymbolTable(SymbolTable table)
+    {
+        attributes.put("symbolTable", table);
+    }
+
+    /**
+     * Retrieve the symbol table
+     * @return {@link SymbolTable} reference or {@code null} if the
+     * corresponding attribute is not present
+     */
+    public SymbolTable getSymbolTable()
+    {
+        return (SymbolTable)attributes.get("symbolTable");
+    }
+
+    /**
+     * Initialize the generated code
+     * @param code List of ILOC instructions (by reference)
+     */
+    public void setCode(List<ILOCInstruction> code)
+    {
+        this.code = code;
+    }
+
+    /**
+     * Retrieve the generated code
+     * @return List of ILOC instructions (by reference) or {@code null} if the
+     * corresponding attribute is not present
+     */
+    public List<ILOCInstruction> getCode()
+    {
+        return code;
+    }
+
+    /**
+     * Initialize the result register
+     * @param reg ILOC virtual temporary register
+     */
+    public void setReg(ILOCOperand reg)
+    {
+        this.reg = reg;
+    }
+
+    /**
+     * Retrieve the result register
+     * @return ILOC virtual temporary register or {@code null} if the
+     * corresponding attribute is not present
+     */
+    public ILOCOperand getReg()
+    {
+        return reg;
+    }
+
+    /**
+     * Retrieve an attribute that is stored in a field (see {@link
+     * ASTAttributes}). Subclasses with attribute fields extend this.
+     *
+     * @param key Attribute name
+     * @return Attribute value ({@code null} if it is not present) or {@link
+     * ASTAttributes#NOT_A_FIELD} if this node has no field for the key
+     */
+    Object getField(String key)
+    {
+        switch (key) {
+            case "parent":  return parent;
+            case "depth":   return (depth >= 0 ? Integer.valueOf(depth) : null);
+            case "source":  return source;
+            case "type":    return type;
+            case "code":    return code;
+            case "reg":     return reg;
+            default:        return ASTAttributes.NOT_A_FIELD;
+        }
+    }
+
+    /**
+     * Set an attribute that is stored in a field (see {@link
+     * ASTAttributes}). Subclasses with attribute fields extend this.
+     *
+     * @param key Attribute name
+     * @param value Attribute value ({@code null} removes the attribute)
+     * @return False if this node has no field for the key
+     */
+    @SuppressWarnings("unchecked")
+    boolean setField(String key, Object value)
+    {
+        switch (key) {
+            case "parent":
+                parent = (ASTNode)value;
+                break;
+            case "depth":
+                depth = (value != null ? ((Integer)value).intValue() : -1);
+                break;
+            case "source":
+                source = (SourceInfo)value;
+                break;
+            case "type":
+                type = (DataType)value;
+                break;
+            case "code":
+                code = (List<ILOCInstruction>)value;
+                break;
+            case "reg":
+                reg = (ILOCOperand)value;
+                break;
+            default:
+                return false;
         }
-        return type;
+        return true;
     }
 
     /**
@@ -11,11 +11,70 @@ public class ASTProgram extends ASTNode
     public List<ASTVariable> variables;
     public List<ASTFunction> functions;
 
+    private SymbolTable symbolTable;
+    private int staticSize;
+
     public ASTProgram()
     {
         super();
         this.variables = new ArrayList<ASTVariable>();
         this.functions = new ArrayList<ASTFunction>();
+        this.staticSize = -1;
+    }
+
+    @Override
+    public void setSymbolTable(SymbolTable table)
+    {
+        symbolTable = table;
+    }
+
+    @Override
+    public SymbolTable getSymbolTable()
+    {
+        return symbolTable;
+    }
+
+    /**
+     * Initialize the size of the global variables
+     * @param size Size (in bytes)
+     */
+    public void setStaticSize(int size)
+    {
+        staticSize = size;
+    }
+
+    /**
+     * Retrieve the size of the global variables
+     * @return Size (in bytes) or -1 if the corresponding attribute is not
+     * present
+     */
+    public int getStaticSize()
+    {
+        return staticSize;
+    }
+
+    @Override
+    Object getField(String key)
+    {
+        if (key.equals("symbolTable")) {
+            return symbolTable;
+        } else if (key.equals("staticSize")) {
+            return (staticSize >= 0 ? Integer.valueOf(staticSize) : null);
+        }
+        return super.getField(key);
+    }
+
+    @Override
+    boolean setField(String key, Object value)
+    {
+        if (key.equals("symbolTable")) {
+            symbolTable = (SymbolTable)value;
+            return true;
+        } else if (key.equals("staticSize")) {
+            staticSize = (value != null ? ((Integer)value).intValue() : -1);
+            return true;
+        }
+        return super.setField(key, value);
     }
 
     @Override
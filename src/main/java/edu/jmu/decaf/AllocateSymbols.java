@@ -19,8 +19,8 @@ public class AllocateSymbols extends DefaultASTVisitor
     public void preVisit(ASTFunction node)
     {
         currentLocalSize = 0;
-        if (node.attributes.containsKey("symbolTable")) {
-            SymbolTable table = (SymbolTable)node.attributes.get("symbolTable");
+        SymbolTable table = node.getSymbolTable();
+        if (table != null) {
             int paramOffset = 0;
             for (ASTFunction.Parameter v : node.parameters) {
                 try {
@@ -37,14 +37,13 @@ public class AllocateSymbols extends DefaultASTVisitor
     public void preVisit(ASTVariable node)
     {
         ASTNode parent = node.getParent();
-        while (parent != null &&
-                !parent.attributes.containsKey("symbolTable")) {
+        while (parent != null && parent.getSymbolTable() == null) {
             parent = parent.getParent();
         }
         if (parent == null) {
             return;
         }
-        SymbolTable table = (SymbolTable)parent.attributes.get("symbolTable");
+        SymbolTable table = parent.getSymbolTable();
         try {
             Symbol sym = table.lookup(node.name);
             if (parent instanceof ASTProgram) {
@@ -62,12 +61,12 @@ public class AllocateSymbols extends DefaultASTVisitor
     @Override
     public void postVisit(ASTFunction node)
     {
-        node.attributes.put("localSize", Integer.valueOf(currentLocalSize));
+        node.setLocalSize(currentLocalSize);
     }
 
     @Override
     public void postVisit(ASTProgram node)
     {
-        node.attributes.put("staticSize", Integer.valueOf(currentStaticSize));
+        node.setStaticSize(currentStaticSize);
     }
 }
@@ -0,0 +1,34 @@
+package edu.jmu.decaf;
+
+/**
+ * Flag that asks a running {@link ILOCInterpreter} to stop (see
+ * {@link ILOCInterpreter#setCancellationToken}). A token can be shared by
+ * several interpreters and cancelled from any thread; once cancelled, it
+ * stays cancelled.
+ */
+public class CancellationToken
+{
+    private volatile boolean cancelled;
+
+    public CancellationToken()
+    {
+        this.cancelled = false;
+    }
+
+    /**
+     * Request cancellation
+     */
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    /**
+     * Check whether cancellation has been requested
+     * @return True if {@link #cancel} has been called
+     */
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+}
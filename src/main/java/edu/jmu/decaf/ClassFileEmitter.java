@@ -0,0 +1,580 @@
+package edu.jmu.decaf;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Minimal JVM class file writer. Supports just enough of the class file
+ * format to generate code for ILOC programs: a constant pool, static and
+ * instance fields, and methods with a single {@code Code} attribute.
+ *
+ * Classes are emitted with version 49.0 (Java 5) so that the JVM verifies
+ * them by type inference and no {@code StackMapTable} attributes are needed.
+ * Branch targets are symbolic labels that are patched when the method is
+ * finished; methods whose branches do not fit in a 16-bit offset are
+ * rejected with an {@link IllegalStateException}.
+ *
+ * All class names are in internal form (e.g., {@code java/lang/Object}).
+ */
+public class ClassFileEmitter
+{
+    // access flags
+    public static final int ACC_PUBLIC      = 0x0001;
+    public static final int ACC_PRIVATE     = 0x0002;
+    public static final int ACC_STATIC      = 0x0008;
+    public static final int ACC_FINAL       = 0x0010;
+    public static final int ACC_SUPER       = 0x0020;
+
+    // opcodes
+    public static final int NOP             = 0x00;
+    public static final int ACONST_NULL     = 0x01;
+    public static final int ICONST_0        = 0x03;
+    public static final int ICONST_1        = 0x04;
+    public static final int ICONST_2        = 0x05;
+    public static final int BIPUSH          = 0x10;
+    public static final int SIPUSH          = 0x11;
+    public static final int LDC_W           = 0x13;
+    public static final int ILOAD           = 0x15;
+    public static final int ALOAD           = 0x19;
+    public static final int IALOAD          = 0x2e;
+    public static final int ISTORE          = 0x36;
+    public static final int ASTORE          = 0x3a;
+    public static final int IASTORE         = 0x4f;
+    public static final int POP             = 0x57;
+    public static final int DUP             = 0x59;
+    public static final int DUP_X1          = 0x5a;
+    public static final int SWAP            = 0x5f;
+    public static final int IADD            = 0x60;
+    public static final int ISUB            = 0x64;
+    public static final int IMUL            = 0x68;
+    public static final int IDIV            = 0x6c;
+    public static final int INEG            = 0x74;
+    public static final int ISHL            = 0x78;
+    public static final int ISHR            = 0x7a;
+    public static final int IUSHR           = 0x7c;
+    public static final int IAND            = 0x7e;
+    public static final int IOR             = 0x80;
+    public static final int IXOR            = 0x82;
+    public static final int IINC            = 0x84;
+    public static final int IFEQ            = 0x99;
+    public static final int IFNE            = 0x9a;
+    public static final int IFLT            = 0x9b;
+    public static final int IFGE            = 0x9c;
+    public static final int IFGT            = 0x9d;
+    public static final int IFLE            = 0x9e;
+    public static final int IF_ICMPEQ       = 0x9f;
+    public static final int IF_ICMPNE       = 0xa0;
+    public static final int IF_ICMPLT       = 0xa1;
+    public static final int IF_ICMPGE       = 0xa2;
+    public static final int IF_ICMPGT       = 0xa3;
+    public static final int IF_ICMPLE       = 0xa4;
+    public static final int GOTO            = 0xa7;
+    public static final int LOOKUPSWITCH    = 0xab;
+    public static final int IRETURN         = 0xac;
+    public static final int ARETURN         = 0xb0;
+    public static final int RETURN          = 0xb1;
+    public static final int GETSTATIC       = 0xb2;
+    public static final int PUTSTATIC       = 0xb3;
+    public static final int GETFIELD        = 0xb4;
+    public static final int PUTFIELD        = 0xb5;
+    public static final int INVOKEVIRTUAL   = 0xb6;
+    public static final int INVOKESPECIAL   = 0xb7;
+    public static final int INVOKESTATIC    = 0xb8;
+    public static final int NEW             = 0xbb;
+    public static final int NEWARRAY        = 0xbc;
+    public static final int ATHROW          = 0xbf;
+
+    /**
+     * {@code NEWARRAY} element type for {@code int[]}
+     */
+    public static final int T_INT           = 10;
+
+    // constant pool tags
+    private static final int CONSTANT_Utf8          = 1;
+    private static final int CONSTANT_Integer       = 3;
+    private static final int CONSTANT_Class         = 7;
+    private static final int CONSTANT_String        = 8;
+    private static final int CONSTANT_Fieldref      = 9;
+    private static final int CONSTANT_Methodref     = 10;
+    private static final int CONSTANT_NameAndType   = 12;
+
+    private final String className;
+    private final String superName;
+    private final ByteArrayOutputStream pool;
+    private final DataOutputStream poolOut;
+    private final Map<String, Integer> poolIndex;
+    private int poolCount;
+    private final List<byte[]> fields;
+    private final List<byte[]> methods;
+
+    /**
+     * Start a new public final class
+     * @param className Internal name of the class
+     * @param superName Internal name of its superclass
+     */
+    public ClassFileEmitter(String className, String superName)
+    {
+        this.className = className;
+        this.superName = superName;
+        this.pool = new ByteArrayOutputStream();
+        this.poolOut = new DataOutputStream(pool);
+        this.poolIndex = new HashMap<String, Integer>();
+        this.poolCount = 1;
+        this.fields = new ArrayList<byte[]>();
+        this.methods = new ArrayList<byte[]>();
+    }
+
+    /**
+     * Returns the internal name of the class being emitted
+     * @return Class name
+     */
+    public String getClassName()
+    {
+        return className;
+    }
+
+    // constant pool
+
+    public int utf8(String s)
+    {
+        String key = "U" + s;
+        Integer idx = poolIndex.get(key);
+        if (idx != null) {
+            return idx.intValue();
+        }
+        try {
+            poolOut.writeByte(CONSTANT_Utf8);
+            poolOut.writeUTF(s);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return addEntry(key);
+    }
+
+    public int integer(int value)
+    {
+        String key = "I" + value;
+        Integer idx = poolIndex.get(key);
+        if (idx != null) {
+            return idx.intValue();
+        }
+        try {
+            poolOut.writeByte(CONSTANT_Integer);
+            poolOut.writeInt(value);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return addEntry(key);
+    }
+
+    public int classRef(String name)
+    {
+        return ref(CONSTANT_Class, "C" + name, utf8(name), -1);
+    }
+
+    public int string(String s)
+    {
+        return ref(CONSTANT_String, "S" + s, utf8(s), -1);
+    }
+
+    public int fieldRef(String owner, String name, String desc)
+    {
+        return ref(CONSTANT_Fieldref, "F" + owner + "." + name + ":" + desc,
+                classRef(owner), nameAndType(name, desc));
+    }
+
+    public int methodRef(String owner, String name, String desc)
+    {
+        return ref(CONSTANT_Methodref, "M" + owner + "." + name + ":" + desc,
+                classRef(owner), nameAndType(name, desc));
+    }
+
+    private int nameAndType(String name, String desc)
+    {
+        return ref(CONSTANT_NameAndType, "N" + name + ":" + desc,
+                utf8(name), utf8(desc));
+    }
+
+    private int ref(int tag, String key, int a, int b)
+    {
+        Integer idx = poolIndex.get(key);
+        if (idx != null) {
+            return idx.intValue();
+        }
+        try {
+            poolOut.writeByte(tag);
+            poolOut.writeShort(a);
+            if (b >= 0) {
+                poolOut.writeShort(b);
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return addEntry(key);
+    }
+
+    private int addEntry(String key)
+    {
+        if (poolCount >= 0xFFFF) {
+            throw new IllegalStateException("Constant pool too large");
+        }
+        int idx = poolCount++;
+        poolIndex.put(key, Integer.valueOf(idx));
+        return idx;
+    }
+
+    // members
+
+    /**
+     * Add a field
+     * @param access Access flags
+     * @param name Field name
+     * @param desc Field descriptor
+     */
+    public void addField(int access, String name, String desc)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(desc));
+            out.writeShort(0);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        fields.add(bytes.toByteArray());
+    }
+
+    /**
+     * Start a new method. The method is added to the class when
+     * {@link Code#finish} is called.
+     * @param access Access flags
+     * @param name Method name
+     * @param desc Method descriptor
+     * @return Code buffer for the method body
+     */
+    public Code addMethod(int access, String name, String desc)
+    {
+        return new Code(access, name, desc);
+    }
+
+    /**
+     * Add a public no-argument constructor that just calls the superclass
+     * constructor
+     */
+    public void addDefaultConstructor()
+    {
+        Code code = addMethod(ACC_PUBLIC, "<init>", "()V");
+        code.aload(0);
+        code.invoke(INVOKESPECIAL, superName, "<init>", "()V");
+        code.op(RETURN);
+        code.finish(1, 1);
+    }
+
+    /**
+     * Serialize the class
+     * @return Class file contents
+     */
+    public byte[] toByteArray()
+    {
+        int thisIdx = classRef(className);
+        int superIdx = classRef(superName);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);      // minor version
+            out.writeShort(49);     // major version (Java 5)
+            out.writeShort(poolCount);
+            poolOut.flush();
+            pool.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisIdx);
+            out.writeShort(superIdx);
+            out.writeShort(0);      // interfaces
+            out.writeShort(fields.size());
+            for (byte[] f : fields) {
+                out.write(f);
+            }
+            out.writeShort(methods.size());
+            for (byte[] m : methods) {
+                out.write(m);
+            }
+            out.writeShort(0);      // attributes
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Bytecode buffer for a single method
+     */
+    public class Code
+    {
+        private final int access;
+        private final String name;
+        private final String desc;
+        private byte[] code;
+        private int length;
+        private int[] labels;
+        private int numLabels;
+        private List<int[]> fixups;     // { position, opcode position, label, width }
+
+        private Code(int access, String name, String desc)
+        {
+            this.access = access;
+            this.name = name;
+            this.desc = desc;
+            this.code = new byte[256];
+            this.length = 0;
+            this.labels = new int[16];
+            this.numLabels = 0;
+            this.fixups = new ArrayList<int[]>();
+        }
+
+        /**
+         * Returns the current size of the method body
+         * @return Code length (in bytes)
+         */
+        public int size()
+        {
+            return length;
+        }
+
+        private void u1(int b)
+        {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, length * 2);
+            }
+            code[length++] = (byte)b;
+        }
+
+        private void u2(int v)
+        {
+            u1(v >> 8);
+            u1(v);
+        }
+
+        private void u4(int v)
+        {
+            u2(v >> 16);
+            u2(v);
+        }
+
+        public void op(int opcode)
+        {
+            u1(opcode);
+        }
+
+        public void iload(int local)
+        {
+            varOp(ILOAD, local);
+        }
+
+        public void istore(int local)
+        {
+            varOp(ISTORE, local);
+        }
+
+        public void aload(int local)
+        {
+            varOp(ALOAD, local);
+        }
+
+        public void astore(int local)
+        {
+            varOp(ASTORE, local);
+        }
+
+        private void varOp(int opcode, int local)
+        {
+            if (local < 4) {
+                // short forms (e.g., iload_0 = 0x1a, istore_0 = 0x3b)
+                int shortBase = (opcode == ILOAD ? 0x1a : opcode == ALOAD ? 0x2a :
+                                 opcode == ISTORE ? 0x3b : 0x4b);
+                u1(shortBase + local);
+            } else if (local < 256) {
+                u1(opcode);
+                u1(local);
+            } else {
+                u1(0xc4);   // wide
+                u1(opcode);
+                u2(local);
+            }
+        }
+
+        /**
+         * Push an integer constant using the shortest encoding
+         * @param value Constant
+         */
+        public void pushInt(int value)
+        {
+            if (value >= -1 && value <= 5) {
+                u1(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                u1(BIPUSH);
+                u1(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                u1(SIPUSH);
+                u2(value);
+            } else {
+                u1(LDC_W);
+                u2(integer(value));
+            }
+        }
+
+        public void pushString(String value)
+        {
+            u1(LDC_W);
+            u2(string(value));
+        }
+
+        public void invoke(int opcode, String owner, String name, String desc)
+        {
+            u1(opcode);
+            u2(methodRef(owner, name, desc));
+        }
+
+        public void field(int opcode, String owner, String name, String desc)
+        {
+            u1(opcode);
+            u2(fieldRef(owner, name, desc));
+        }
+
+        public void type(int opcode, String name)
+        {
+            u1(opcode);
+            u2(classRef(name));
+        }
+
+        public void newIntArray()
+        {
+            u1(NEWARRAY);
+            u1(T_INT);
+        }
+
+        /**
+         * Create a new unbound label
+         * @return Label ID
+         */
+        public int newLabel()
+        {
+            if (numLabels == labels.length) {
+                labels = Arrays.copyOf(labels, numLabels * 2);
+            }
+            labels[numLabels] = -1;
+            return numLabels++;
+        }
+
+        /**
+         * Bind a label to the current position
+         * @param label Label ID
+         */
+        public void bind(int label)
+        {
+            labels[label] = length;
+        }
+
+        /**
+         * Emit a branch instruction ({@code GOTO} or any {@code IF*})
+         * @param opcode Branch opcode
+         * @param label Target label ID
+         */
+        public void jump(int opcode, int label)
+        {
+            int start = length;
+            u1(opcode);
+            fixups.add(new int[] { length, start, label, 2 });
+            u2(0);
+        }
+
+        /**
+         * Emit a {@code LOOKUPSWITCH} instruction
+         * @param keys Case values
+         * @param targets Label ID for each case value
+         * @param defaultLabel Label ID for the default case
+         */
+        public void lookupSwitch(int[] keys, int[] targets, int defaultLabel)
+        {
+            int start = length;
+            u1(LOOKUPSWITCH);
+            while (length % 4 != 0) {
+                u1(0);
+            }
+            fixups.add(new int[] { length, start, defaultLabel, 4 });
+            u4(0);
+
+            // pairs must be sorted by key
+            Integer[] order = new Integer[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                order[i] = Integer.valueOf(i);
+            }
+            final int[] k = keys;
+            Arrays.sort(order, new Comparator<Integer>() {
+                public int compare(Integer a, Integer b) {
+                    return Integer.compare(k[a.intValue()], k[b.intValue()]);
+                }
+            });
+            u4(keys.length);
+            for (Integer i : order) {
+                u4(keys[i.intValue()]);
+                fixups.add(new int[] { length, start, targets[i.intValue()], 4 });
+                u4(0);
+            }
+        }
+
+        /**
+         * Resolve labels and add the method to the class
+         * @param maxStack Maximum operand stack depth
+         * @param maxLocals Number of local variable slots (including
+         *                  parameters)
+         */
+        public void finish(int maxStack, int maxLocals)
+        {
+            for (int[] fix : fixups) {
+                int target = labels[fix[2]];
+                if (target < 0) {
+                    throw new IllegalStateException("Unbound label in " + name);
+                }
+                int offset = target - fix[1];
+                if (fix[3] == 2) {
+                    if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                        throw new IllegalStateException("Method too large: " + name);
+                    }
+                    code[fix[0]] = (byte)(offset >> 8);
+                    code[fix[0]+1] = (byte)offset;
+                } else {
+                    code[fix[0]] = (byte)(offset >> 24);
+                    code[fix[0]+1] = (byte)(offset >> 16);
+                    code[fix[0]+2] = (byte)(offset >> 8);
+                    code[fix[0]+3] = (byte)offset;
+                }
+            }
+            if (length > 0xFFFF) {
+                throw new IllegalStateException("Method too large: " + name);
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            try {
+                out.writeShort(access);
+                out.writeShort(utf8(name));
+                out.writeShort(utf8(desc));
+                out.writeShort(1);                  // attributes
+                out.writeShort(utf8("Code"));
+                out.writeInt(12 + length);
+                out.writeShort(maxStack);
+                out.writeShort(maxLocals);
+                out.writeInt(length);
+                out.write(code, 0, length);
+                out.writeShort(0);                  // exception table
+                out.writeShort(0);                  // attributes
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+            methods.add(bytes.toByteArray());
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package edu.jmu.decaf;
+
+import java.util.*;
+
+/**
+ * State that belongs to a single compilation: the errors reported by static
+ * analysis, the counters that hand out virtual register, anonymous label,
+ * and basic block IDs, and the pool of identifier names. Compilations that
+ * use different contexts are independent, so several programs can be
+ * compiled at the same time and each one produces exactly the same output
+ * as it would on its own.
+ *
+ * The compiler passes reach the context through static helpers such as
+ * {@link StaticAnalysis#addError(String)} and {@link
+ * ILOCOperand#newVirtualReg}, which delegate to the context that is current
+ * on the calling thread. A context is made current for the duration of a
+ * compilation:
+ *
+ * <pre>
+ * CompilationContext context = new CompilationContext();
+ * CompilationContext previous = context.enter();
+ * try {
+ *     // lex, parse, analyze, generate code
+ * } finally {
+ *     CompilationContext.restore(previous);
+ * }
+ * </pre>
+ *
+ * A context must only be used by one thread at a time. Threads that never
+ * enter a context get a default one of their own.
+ */
+public class CompilationContext
+{
+    private static final ThreadLocal<CompilationContext> current =
+        new ThreadLocal<CompilationContext>() {
+            protected CompilationContext initialValue() {
+                return new CompilationContext();
+            }
+        };
+
+    private List<String> errors;
+    private int numTempRegisters;
+    private int numAnonLabels;
+    private int numBasicBlocks;
+    private Map<String, Long> marks;
+    private NamePool names;
+
+    public CompilationContext()
+    {
+        errors = new ArrayList<String>();
+        marks = new LinkedHashMap<String, Long>();
+        names = new NamePool();
+        numTempRegisters = 0;
+        numAnonLabels = 0;
+        numBasicBlocks = 0;
+    }
+
+    /**
+     * Retrieve the context that is current on the calling thread
+     * @return Current context
+     */
+    public static CompilationContext current()
+    {
+        return current.get();
+    }
+
+    /**
+     * Make this the current context of the calling thread
+     * @return Previously current context (to be passed to {@link #restore})
+     */
+    public CompilationContext enter()
+    {
+        CompilationContext previous = current.get();
+        current.set(this);
+        return previous;
+    }
+
+    /**
+     * Make a previously current context current again
+     * @param previous Context returned by {@link #enter}
+     */
+    public static void restore(CompilationContext previous)
+    {
+        current.set(previous);
+    }
+
+    /**
+     * Run an ILOC pass with this as the current context (e.g., so that
+     * basic blocks and spill registers created by the pass get their IDs
+     * from this compilation)
+     * @param pass Pass to run
+     * @param program Program to process
+     */
+    public void process(ILOCProcessor pass, ILOCProgram program)
+    {
+        CompilationContext previous = enter();
+        try {
+            pass.process(program);
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * Report an error message to be saved for later aggregation
+     * @param msg Message to add
+     */
+    public void addError(String msg)
+    {
+        errors.add(msg);
+    }
+
+    /**
+     * Clear all existing errors
+     */
+    public void resetErrors()
+    {
+        errors = new ArrayList<String>();
+    }
+
+    /**
+     * Retrieve a list of all errors reported in this context
+     * @return List of error strings
+     */
+    public List<String> getErrors()
+    {
+        return errors;
+    }
+
+    /**
+     * Record that the compilation has reached a milestone (e.g., the end of
+     * a phase)
+     * @param event Name of the milestone
+     */
+    public void mark(String event)
+    {
+        marks.put(event, Long.valueOf(System.nanoTime()));
+    }
+
+    /**
+     * Retrieve all recorded milestones
+     * @return Map from milestone name to {@link System#nanoTime} value, in
+     *         the order they were recorded
+     */
+    public Map<String, Long> getMarks()
+    {
+        return marks;
+    }
+
+    /**
+     * Retrieve the pool that the lexer interns identifiers in
+     * @return Name pool
+     */
+    public NamePool getNames()
+    {
+        return names;
+    }
+
+    /**
+     * Allocate a new virtual register ID
+     * @return Unique ID (starting at 1)
+     */
+    public int newVirtualRegID()
+    {
+        return ++numTempRegisters;
+    }
+
+    /**
+     * Allocate a new anonymous jump label ID
+     * @return Unique ID (starting at 1)
+     */
+    public int newAnonymousLabelID()
+    {
+        return ++numAnonLabels;
+    }
+
+    /**
+     * Allocate a new basic block ID
+     * @return Unique ID (starting at 1)
+     */
+    public int newBasicBlockID()
+    {
+        return ++numBasicBlocks;
+    }
+}
@@ -19,7 +19,7 @@ public abstract class DecafAnalysis extends StaticAnalysis
     {
         Symbol sym = null;
         ASTNode tableParent = node;
-        while (tableParent != null && !tableParent.attributes.containsKey("symbolTable")) {
+        while (tableParent != null && tableParent.getSymbolTable() == null) {
             tableParent = tableParent.getParent();
         }
         if (tableParent == null) {
@@ -27,7 +27,7 @@ public abstract class DecafAnalysis extends StaticAnalysis
                         " at " + node.getSourceInfo().toString());
         } else {
             try {
-                SymbolTable table = (SymbolTable)tableParent.attributes.get("symbolTable");
+                SymbolTable table = tableParent.getSymbolTable();
                 sym = table.lookup(name);
             } catch (InvalidProgramException ex) {
                 addError(new InvalidProgramException(ex.getMessage() +
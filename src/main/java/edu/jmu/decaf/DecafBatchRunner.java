@@ -0,0 +1,430 @@
+package edu.jmu.decaf;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Compiles and runs many Decaf programs concurrently, one job per program:
+ *
+ * <pre>
+ * DecafBatchRunner runner = new DecafBatchRunner();
+ * runner.setTimeout(1000);
+ * runner.run(DecafBatchRunner.listPrograms(new File("tests")), System.out);
+ * </pre>
+ *
+ * Each job runs on its own virtual thread when the JVM supports them (Java 21
+ * and later) and on a bounded thread pool otherwise. A job lexes, parses,
+ * analyzes, and generates ILOC for its program, then interprets the (virtual
+ * register) ILOC with a recycled {@link ILOCInterpreter}, capturing the
+ * program's output. Register allocation is skipped, since the interpreter
+ * does not need it. Batch results are therefore not directly comparable with
+ * those of a single run with {@link DecafCompiler}, which interprets the ILOC
+ * after register allocation: a program can behave differently (or only fail
+ * in one of them) if the allocator changes its meaning, and instruction
+ * counts do not include spill code.
+ *
+ * Jobs are limited by an optional instruction budget and an optional
+ * wall-clock timeout; a job that runs too long is cancelled through its
+ * {@link CancellationToken}. A report line is printed as each job finishes:
+ *
+ * <pre>
+ * status  file  return-value  time(ms)  instructions  [message]
+ * </pre>
+ *
+ * Every job compiles in its own {@link CompilationContext}, so jobs do not
+ * share errors or ID counters.
+ */
+public class DecafBatchRunner
+{
+    /**
+     * How a job ended
+     */
+    public enum Status {
+        OK,             // program returned normally
+        OUT_OF_FUEL,    // instruction budget exhausted
+        TIMEOUT,        // wall-clock timeout expired
+        INVALID,        // lexing, parsing, or static analysis error
+        TRAPPED,        // ILOC runtime error
+        FAILED          // I/O error or other unexpected exception
+    }
+
+    /**
+     * Outcome of a single job
+     */
+    public static class Result
+    {
+        private final File file;
+        private final Status status;
+        private final int returnValue;
+        private final String output;
+        private final long nanos;
+        private final long instructions;
+        private final String message;
+
+        public Result(File file, Status status, int returnValue, String output,
+                long nanos, long instructions, String message)
+        {
+            this.file = file;
+            this.status = status;
+            this.returnValue = returnValue;
+            this.output = output;
+            this.nanos = nanos;
+            this.instructions = instructions;
+            this.message = message;
+        }
+
+        public File getFile()               { return file; }
+        public Status getStatus()           { return status; }
+        public int getReturnValue()         { return returnValue; }
+        public String getOutput()           { return output; }
+        public long getNanos()              { return nanos; }
+        public long getInstructions()       { return instructions; }
+        public String getMessage()          { return message; }
+
+        /**
+         * Format this result as a tab-separated report line
+         * @return Report line (without a trailing newline)
+         */
+        public String toString()
+        {
+            StringBuilder str = new StringBuilder();
+            str.append(status);
+            str.append('\t');
+            str.append(file.getPath());
+            str.append('\t');
+            str.append(status == Status.OK ? String.valueOf(returnValue) : "-");
+            str.append('\t');
+            str.append(String.format("%.3f", nanos / 1e6));
+            str.append('\t');
+            str.append(instructions);
+            if (message != null) {
+                str.append('\t');
+                str.append(message);
+            }
+            return str.toString();
+        }
+    }
+
+    private int threads;
+    private int memSize;
+    private long fuel;
+    private long timeout;
+    private final Queue<ILOCInterpreter> idle;
+
+    public DecafBatchRunner()
+    {
+        threads = Runtime.getRuntime().availableProcessors();
+        memSize = ILOCInterpreter.DEFAULT_MEM_SIZE;
+        fuel = ILOCInterpreter.UNLIMITED_FUEL;
+        timeout = 0;
+        idle = new ConcurrentLinkedQueue<ILOCInterpreter>();
+    }
+
+    /**
+     * Set the number of worker threads used when virtual threads are not
+     * available
+     * @param threads Number of platform threads
+     */
+    public void setThreads(int threads)
+    {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Invalid thread count: " + threads);
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Set the memory size of each interpreter
+     * @param size Memory size (in bytes)
+     */
+    public void setMemorySize(int size)
+    {
+        if (size <= 0 || size % Symbol.WORD_SIZE != 0) {
+            throw new IllegalArgumentException("Invalid memory size: " + size);
+        }
+        this.memSize = size;
+    }
+
+    /**
+     * Limit the number of instructions each program may execute
+     * @param instructions Instruction budget (or {@link
+     *        ILOCInterpreter#UNLIMITED_FUEL})
+     */
+    public void setFuel(long instructions)
+    {
+        this.fuel = instructions;
+    }
+
+    /**
+     * Limit the wall-clock time of each job (compilation and execution)
+     * @param millis Timeout in milliseconds (0 for no timeout)
+     */
+    public void setTimeout(long millis)
+    {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Invalid timeout: " + millis);
+        }
+        this.timeout = millis;
+    }
+
+    /**
+     * Find the programs to run. A directory yields all {@code .decaf} files
+     * in it (sorted by name); any other file is read as a manifest with one
+     * path per line, relative to the manifest's directory. Blank lines and
+     * lines starting with {@code #} are ignored in manifests.
+     *
+     * @param source Directory or manifest file
+     * @return List of program files
+     * @throws IOException Thrown if the directory or manifest cannot be read
+     */
+    public static List<File> listPrograms(File source) throws IOException
+    {
+        List<File> files = new ArrayList<File>();
+        if (source.isDirectory()) {
+            File[] entries = source.listFiles();
+            if (entries == null) {
+                throw new IOException("Cannot read directory: " + source);
+            }
+            for (File f : entries) {
+                if (f.isFile() && f.getName().endsWith(".decaf")) {
+                    files.add(f);
+                }
+            }
+            Collections.sort(files);
+        } else {
+            File base = source.getAbsoluteFile().getParentFile();
+            BufferedReader input = new BufferedReader(new FileReader(source));
+            try {
+                String line;
+                while ((line = input.readLine()) != null) {
+                    line = line.trim();
+                    if (line.length() == 0 || line.startsWith("#")) {
+                        continue;
+                    }
+                    File f = new File(line);
+                    files.add(f.isAbsolute() ? f : new File(base, line));
+                }
+            } finally {
+                input.close();
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Compile and run all given programs, printing a report line for each
+     * one as it finishes and a summary at the end
+     *
+     * @param files Programs to run
+     * @param report Stream for the report (or null for no report)
+     * @return Results, in the same order as {@code files}
+     * @throws InterruptedException If interrupted while waiting for jobs
+     */
+    public List<Result> run(List<File> files, PrintStream report)
+        throws InterruptedException
+    {
+        ExecutorService executor = newExecutor(threads);
+        final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "decaf-batch-timer");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        CompletionService<Result> completed =
+            new ExecutorCompletionService<Result>(executor);
+        Map<Future<Result>, Integer> index = new HashMap<Future<Result>, Integer>();
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                final File file = files.get(i);
+                index.put(completed.submit(new Callable<Result>() {
+                    public Result call() {
+                        return runJob(file, timer);
+                    }
+                }), Integer.valueOf(i));
+            }
+
+            Result[] results = new Result[files.size()];
+            int[] counts = new int[Status.values().length];
+            for (int n = 0; n < files.size(); n++) {
+                Future<Result> f = completed.take();
+                Result r;
+                try {
+                    r = f.get();
+                } catch (ExecutionException ex) {
+                    // runJob catches everything; this is only reached on errors
+                    int i = index.get(f).intValue();
+                    r = new Result(files.get(i), Status.FAILED, 0, "", 0, 0,
+                            String.valueOf(ex.getCause()));
+                }
+                results[index.get(f).intValue()] = r;
+                counts[r.getStatus().ordinal()]++;
+                if (report != null) {
+                    report.println(r);
+                    report.flush();
+                }
+            }
+
+            if (report != null) {
+                StringBuilder summary = new StringBuilder();
+                summary.append(files.size() + " programs in " +
+                        String.format("%.1f", (System.nanoTime() - start) / 1e6) +
+                        " ms:");
+                for (Status s : Status.values()) {
+                    if (counts[s.ordinal()] > 0) {
+                        summary.append(" " + counts[s.ordinal()] + " " + s);
+                    }
+                }
+                report.println(summary);
+                report.flush();
+            }
+            return Arrays.asList(results);
+        } finally {
+            executor.shutdownNow();
+            timer.shutdownNow();
+        }
+    }
+
+    /**
+     * Compile and run a single program on the current thread
+     * @param file Program to run
+     * @return Result of the job
+     */
+    public Result runJob(File file)
+    {
+        ScheduledExecutorService timer = null;
+        if (timeout > 0) {
+            timer = Executors.newSingleThreadScheduledExecutor();
+        }
+        try {
+            return runJob(file, timer);
+        } finally {
+            if (timer != null) {
+                timer.shutdownNow();
+            }
+        }
+    }
+
+    private Result runJob(File file, ScheduledExecutorService timer)
+    {
+        long start = System.nanoTime();
+        final CancellationToken token = new CancellationToken();
+        ScheduledFuture<?> alarm = null;
+        if (timeout > 0) {
+            alarm = timer.schedule(new Runnable() {
+                public void run() {
+                    token.cancel();
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+        }
+
+        ILOCInterpreter interp = null;
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream output = new PrintStream(buffer);
+        try {
+            ILOCProgram program = compile(file);
+
+            interp = idle.poll();
+            if (interp == null) {
+                interp = new ILOCInterpreter();
+                interp.setMemorySize(memSize);
+            }
+            interp.setOutput(output);
+            interp.setFuel(fuel);
+            interp.setCancellationToken(token);
+            interp.process(program);
+            output.flush();
+
+            Status status;
+            switch (interp.getStatus()) {
+                case OUT_OF_FUEL:   status = Status.OUT_OF_FUEL;    break;
+                case CANCELLED:     status = Status.TIMEOUT;        break;
+                default:            status = Status.OK;             break;
+            }
+            return new Result(file, status, interp.getReturnValue(),
+                    buffer.toString(), System.nanoTime() - start,
+                    interp.getFuelUsed(), null);
+        } catch (InvalidTokenException ex) {
+            return failed(file, Status.INVALID, buffer, start, interp, ex);
+        } catch (InvalidSyntaxException ex) {
+            return failed(file, Status.INVALID, buffer, start, interp, ex);
+        } catch (InvalidProgramException ex) {
+            return failed(file, Status.INVALID, buffer, start, interp, ex);
+        } catch (ILOCRuntimeException ex) {
+            return failed(file, Status.TRAPPED, buffer, start, interp, ex);
+        } catch (Exception ex) {
+            return failed(file, Status.FAILED, buffer, start, interp, ex);
+        } finally {
+            if (alarm != null) {
+                alarm.cancel(false);
+            }
+            if (interp != null) {
+                interp.setOutput(null);
+                interp.setCancellationToken(null);
+                interp.reset();
+                idle.add(interp);
+            }
+        }
+    }
+
+    private static Result failed(File file, Status status,
+            ByteArrayOutputStream buffer, long start, ILOCInterpreter interp,
+            Exception ex)
+    {
+        String message = ex.getMessage();
+        if (message == null) {
+            message = ex.toString();
+        }
+        // keep report lines on one line
+        message = message.trim().replace('\n', ' ').replace('\t', ' ');
+        return new Result(file, status, 0, buffer.toString(),
+                System.nanoTime() - start,
+                (interp == null ? 0 : interp.getFuelUsed()), message);
+    }
+
+    /**
+     * Run the front end and IR generation on a single program in a fresh
+     * {@link CompilationContext}
+     */
+    private static ILOCProgram compile(File file) throws IOException,
+            InvalidTokenException, InvalidSyntaxException, InvalidProgramException
+    {
+        BufferedReader input = new BufferedReader(new FileReader(file));
+        try {
+            return DecafCompiler.compile(new CompilationContext(), input,
+                    file.getName());
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Create an executor that runs each task on a new virtual thread, or a
+     * bounded pool of platform threads if virtual threads are unavailable
+     * (the lookup is reflective so that this class still builds for Java 8)
+     */
+    private static ExecutorService newExecutor(int threads)
+    {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException ex) {
+            // Java 20 and earlier
+        } catch (IllegalAccessException ex) {
+            // fall through
+        } catch (InvocationTargetException ex) {
+            // preview feature not enabled
+        }
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "decaf-batch");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+}
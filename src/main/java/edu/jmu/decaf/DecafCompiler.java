@@ -1,14 +1,44 @@
 package edu.jmu.decaf;
 
 import java.io.*;
+import java.lang.management.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Decaf compiler driver class.
  */
 class DecafCompiler
 {
+    /**
+     * Thrown after usage information has been printed because the
+     * command-line arguments are invalid
+     */
+    static class UsageException extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        public UsageException()
+        {
+            super("Invalid arguments");
+        }
+    }
+
+    private File workingDir;
     private File mainFile;
+    private String engine;
+    private boolean sharedRegs;
+    private File classDir;
+    private File jarFile;
+    private File asmFile;
+    private String profile;
+    private long fuel;
+    private File batchSource;
+    private long timeout;
+    private boolean timings;
+    private boolean mapped;
+    private boolean recover;
+    private CompilationContext context;
 
     /**
      * Program entry point.
@@ -16,8 +46,32 @@ class DecafCompiler
      */
     public static void main(String[] args)
     {
+        if (args.length > 0 && args[0].startsWith("--server")) {
+            DecafServer.main(args);
+            return;
+        }
         try {
-            (new DecafCompiler(args)).run();
+            execute(args, null);
+        } catch (UsageException ex) {
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Compile (and usually run) a program as requested by command-line
+     * arguments, printing the results or any compilation errors to
+     * {@code System.out}
+     *
+     * @param args Command-line arguments
+     * @param dir Directory that relative file names are resolved against
+     *            (or null for the current directory)
+     * @throws UsageException Thrown if the arguments are invalid
+     */
+    static void execute(String[] args, File dir)
+    {
+        DecafCompiler compiler = new DecafCompiler(args, dir);
+        try {
+            compiler.run();
         } catch (IOException ex) {
             System.out.println(ex.getMessage());
         } catch (InvalidTokenException ex) {
@@ -26,6 +80,10 @@ class DecafCompiler
             System.out.println(ex.getMessage());
         } catch (InvalidProgramException ex) {
             System.out.println(ex.getMessage());
+        } catch (ILOCRuntimeException ex) {
+            System.out.println(ex.getMessage());
+        } finally {
+            compiler.printTimings();
         }
     }
 
@@ -35,7 +93,32 @@ class DecafCompiler
      */
     public DecafCompiler(String[] args)
     {
+        this(args, null);
+    }
+
+    /**
+     * Create a new compiler instance
+     * @param args Command-line arguments
+     * @param dir Directory that relative file names are resolved against
+     *            (or null for the current directory)
+     */
+    public DecafCompiler(String[] args, File dir)
+    {
+        workingDir = dir;
     	mainFile = null;
+        engine = "switch";
+        sharedRegs = false;
+        classDir = null;
+        jarFile = null;
+        asmFile = null;
+        profile = null;
+        fuel = ILOCInterpreter.UNLIMITED_FUEL;
+        batchSource = null;
+        timeout = 0;
+        timings = false;
+        mapped = false;
+        recover = false;
+        context = null;
         parseCompilerArguments(args);
     }
 
@@ -48,62 +131,307 @@ class DecafCompiler
     public void run() throws IOException, InvalidTokenException,
            InvalidSyntaxException, InvalidProgramException
     {
-        // PHASE 1 - LEXER
+        // compile and run a whole directory or manifest of programs instead
+        if (batchSource != null) {
+            DecafBatchRunner runner = new DecafBatchRunner();
+            runner.setFuel(fuel);
+            runner.setTimeout(timeout);
+            try {
+                runner.run(DecafBatchRunner.listPrograms(batchSource), System.out);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
 
-        // tokenize (Decaf source => Queue<Token>)
-        DecafLexer lexer = new MyDecafLexer();
-        BufferedReader input = new BufferedReader(new FileReader(mainFile));
-        Queue<Token> tokens = lexer.lex(input, mainFile.getName());
+        // PHASES 1-4 - LEXER, PARSER, ANALYSIS, IR CODE GEN
+        context = new CompilationContext();
+        context.mark("started");
+        DecafScanner scanner = new DecafScanner(context.getNames());
+        DecafParser parser;
+        if (recover) {
+            parser = new RecoveringParser();
+        } else if (mainFile.length() >= ParallelParser.MIN_PARALLEL_BYTES) {
+            parser = new ParallelParser();
+        } else {
+            // stream tokens from the lexer to the parser
+            parser = new MyDecafParser();
+        }
+        ILOCProgram ir;
+        if (mapped) {
+            ir = compile(context, scanner.streamMapped(mainFile, mainFile.getName()),
+                    parser);
+        } else {
+            BufferedReader input = new BufferedReader(new FileReader(mainFile));
+            try {
+                ir = compile(context, scanner.stream(input, mainFile.getName()), parser);
+            } finally {
+                input.close();
+            }
+        }
 
-        // PHASE 2 - PARSER
+        // PHASE 5 - REGISTER ALLOCATION
 
-        // LL(1) parse (Queue<Token> => ASTNode)
-        DecafParser parser = new MyDecafParser();
-        ASTProgram ast = parser.parse(tokens);
+        // perform register allocation (modify ILOCProgram)
+        context.process(new MyLocalRegisterAllocator(4), ir);
+        context.mark("allocated");
 
-        // sample AST traversals (annotate ASTNode)
-        ast.traverse(new BuildParentLinks());
-        ast.traverse(new CalculateNodeDepths());
+        // print ILOC
+        System.out.println(ir.toString());
 
-        // PHASE 3 - ANALYSIS
+        // translate ILOC to x86-64 assembly instead of running it
+        if (asmFile != null) {
+            ILOCAssemblyGenerator gen = new ILOCAssemblyGenerator();
+            gen.process(ir);
+            gen.writeAssembly(asmFile);
+            System.out.println("Wrote " + asmFile);
+            return;
+        }
 
-        // build symbol tables (annotate ASTNode)
-        StaticAnalysis symTablePass = new BuildSymbolTables();
-        ast.traverse(symTablePass);
+        // translate ILOC to a JVM class instead of running it
+        if (classDir != null || jarFile != null) {
+            ILOCClassGenerator gen = new ILOCClassGenerator(getMainClassName());
+            gen.process(ir);
+            if (classDir != null) {
+                System.out.println("Wrote " + gen.writeClassFile(classDir));
+            }
+            if (jarFile != null) {
+                gen.writeJar(jarFile);
+                System.out.println("Wrote " + jarFile);
+            }
+            return;
+        }
 
-        // perform type checking (check ASTNode)
-        StaticAnalysis typeCheckPass = new MyDecafAnalysis();
-        ast.traverse(typeCheckPass);
+        // run ILOC (cancelled when the timeout expires)
+        final CancellationToken token = new CancellationToken();
+        ScheduledExecutorService timer = null;
+        if (timeout > 0) {
+            timer = Executors.newSingleThreadScheduledExecutor();
+            timer.schedule(new Runnable() {
+                public void run() {
+                    token.cancel();
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+        }
+        int result;
+        ILOCProfiler profiler = null;
+        ILOCInterpreter.Status status;
+        try {
+            if (engine.equals("threaded")) {
+                ILOCThreadedInterpreter interp = new ILOCThreadedInterpreter();
+                interp.setSharedRegisters(sharedRegs);
+                interp.setCancellationToken(token);
+                interp.process(ir);
+                result = interp.getReturnValue();
+                status = interp.getStatus();
+            } else {
+                ILOCInterpreter interp = new ILOCInterpreter();
+                interp.setSharedRegisters(sharedRegs);
+                interp.setTieredCompilation(engine.equals("tiered"));
+                if (profile != null) {
+                    profiler = new ILOCProfiler();
+                    interp.setExecutionListener(profiler);
+                }
+                interp.setFuel(fuel);
+                interp.setCancellationToken(token);
+                interp.process(ir);
+                result = interp.getReturnValue();
+                status = interp.getStatus();
+                if (status == ILOCInterpreter.Status.OUT_OF_FUEL) {
+                    System.out.println("\nStopped after " + interp.getFuelUsed() +
+                            " instructions (out of fuel)");
+                }
+            }
+        } finally {
+            if (timer != null) {
+                timer.shutdownNow();
+            }
+        }
+        if (status == ILOCInterpreter.Status.CANCELLED) {
+            System.out.println("\nStopped after " + timeout + " ms (timed out)");
+        } else if (status == ILOCInterpreter.Status.HALTED) {
+            System.out.println("\nResult: " + result);
+        }
 
-        // aggregate and report any errors found during static analysis
-        if (StaticAnalysis.getErrors().size() > 0) {
-            throw new InvalidProgramException(
-                    StaticAnalysis.getErrorString());
+        // print profile
+        if (profiler != null) {
+            System.out.println();
+            if (profile.equals("csv")) {
+                profiler.writeCSV(System.out);
+            } else if (profile.equals("json")) {
+                profiler.writeJSON(System.out);
+            } else {
+                profiler.printFlatProfile(System.out);
+            }
         }
+    }
 
-        // PHASE 4 - IR CODE GEN
+    /**
+     * Run the front end and IR generation phases on a single program. All
+     * errors and IDs belong to the given context, so independent programs
+     * can be compiled concurrently in separate contexts. Register allocation
+     * is left to the caller.
+     *
+     * @param context Compilation context (made current while compiling)
+     * @param input Decaf source code
+     * @param filename Source file name (for error messages)
+     * @return Generated (renumbered) ILOC program
+     * @throws IOException Thrown if there is an I/O problem
+     * @throws InvalidTokenException Thrown if there is a lexing problem
+     * @throws InvalidSyntaxException Thrown if there is a parsing problem
+     * @throws InvalidProgramException Thrown if static analysis fails
+     */
+    public static ILOCProgram compile(CompilationContext context,
+            BufferedReader input, String filename) throws IOException,
+           InvalidTokenException, InvalidSyntaxException, InvalidProgramException
+    {
+        return compile(context, (new DecafScanner(context.getNames())).stream(
+                    input, filename));
+    }
 
-        // allocate stack symbols (annotate ASTNode)
-        ast.traverse(new AllocateSymbols());
+    /**
+     * Run the front end and IR generation phases on a single program that
+     * is lexed from the given token stream (see {@link #compile(
+     * CompilationContext, BufferedReader, String)}). The program is parsed
+     * sequentially, while it is being lexed.
+     *
+     * @param context Compilation context (made current while compiling)
+     * @param tokens Decaf source tokens
+     * @return Generated (renumbered) ILOC program
+     * @throws IOException Thrown if there is an I/O problem
+     * @throws InvalidTokenException Thrown if there is a lexing problem
+     * @throws InvalidSyntaxException Thrown if there is a parsing problem
+     * @throws InvalidProgramException Thrown if static analysis fails
+     */
+    public static ILOCProgram compile(CompilationContext context,
+            TokenStream tokens) throws IOException,
+           InvalidTokenException, InvalidSyntaxException, InvalidProgramException
+    {
+        return compile(context, tokens, new MyDecafParser());
+    }
 
-        // generate intermediate representation (ASTNode => ILOCProgram)
-        ILOCGenerator codegen = new MyILOCGenerator();
-        ast.traverse(codegen);
-        ILOCProgram ir = codegen.getProgram();
+    /**
+     * Run the front end and IR generation phases on a single program with
+     * the given parser. A parser that recovers from syntax errors reports
+     * them through the context (see {@link RecoveringParser}); they are
+     * then reported along with any static analysis errors.
+     *
+     * @param context Compilation context (made current while compiling)
+     * @param tokens Decaf source tokens
+     * @param parser Parser
+     * @return Generated (renumbered) ILOC program
+     * @throws IOException Thrown if there is an I/O problem
+     * @throws InvalidTokenException Thrown if there is a lexing problem
+     * @throws InvalidSyntaxException Thrown if there is a parsing problem
+     * @throws InvalidProgramException Thrown if static analysis (or
+     *         parsing with recovery) fails
+     */
+    public static ILOCProgram compile(CompilationContext context,
+            TokenStream tokens, DecafParser parser) throws IOException,
+           InvalidTokenException, InvalidSyntaxException, InvalidProgramException
+    {
+        CompilationContext previous = context.enter();
+        try {
+            // PHASES 1-2 - LEXER AND PARSER
 
-        // PHASE 5 - REGISTER ALLOCATION
+            // tokenize lazily (Decaf source => TokenStream)
+            tokens.peek();
+            context.mark("first-token");
 
-        // perform register allocation (modify ILOCProgram)
-        (new RenumberRegistersAndLabels()).process(ir);
-        (new MyLocalRegisterAllocator(4)).process(ir);
+            // LL(1) parse (TokenBuffer => ASTNode); lexing errors anywhere in
+            // the input take precedence over syntax errors
+            ASTProgram ast;
+            try {
+                ast = parser.parse(new TokenBuffer(tokens));
+            } finally {
+                tokens.finish();
+            }
+            context.mark("parsed");
 
-        // print ILOC
-        System.out.println(ir.toString());
+            // sample AST traversals (annotate ASTNode)
+            ast.traverse(new BuildParentLinks());
+            ast.traverse(new CalculateNodeDepths());
+
+            // PHASE 3 - ANALYSIS
+
+            // build symbol tables (annotate ASTNode)
+            StaticAnalysis symTablePass = new BuildSymbolTables();
+            ast.traverse(symTablePass);
+
+            // perform type checking (check ASTNode)
+            StaticAnalysis typeCheckPass = new MyDecafAnalysis();
+            ast.traverse(typeCheckPass);
+
+            // aggregate and report any errors found during static analysis (and
+            // any syntax errors that a recovering parser skipped over)
+            if (context.getErrors().size() > 0) {
+                throw new InvalidProgramException(
+                        StaticAnalysis.getErrorString());
+            }
+            context.mark("analyzed");
+
+            // PHASE 4 - IR CODE GEN
+
+            // allocate stack symbols (annotate ASTNode)
+            ast.traverse(new AllocateSymbols());
+
+            // generate intermediate representation (ASTNode => ILOCProgram)
+            ILOCGenerator codegen = new MyILOCGenerator();
+            ast.traverse(codegen);
+            ILOCProgram ir = codegen.getProgram();
+
+            // renumber registers and labels (modify ILOCProgram)
+            (new RenumberRegistersAndLabels()).process(ir);
+            context.mark("generated");
+            return ir;
+        } finally {
+            CompilationContext.restore(previous);
+        }
+    }
+
+    /**
+     * Print the times at which compilation phases finished, measured from
+     * JVM startup, to {@code System.err} (if requested with {@code
+     * --timings}).
+     */
+    private void printTimings()
+    {
+        if (!timings || context == null) {
+            return;
+        }
+        context.mark("finished");
+        long start = System.nanoTime() -
+            ManagementFactory.getRuntimeMXBean().getUptime() * 1000000L;
+        StringBuilder str = new StringBuilder("Timings (ms since JVM start):");
+        for (Map.Entry<String, Long> e : context.getMarks().entrySet()) {
+            str.append(String.format(" %s %.1f", e.getKey(),
+                        (e.getValue().longValue() - start) / 1e6));
+        }
+        System.err.println(str);
+    }
 
-        // run ILOC
-        ILOCInterpreter interp = new ILOCInterpreter();
-        interp.process(ir);
-        System.out.println("\nResult: " + interp.getReturnValue());
+    /**
+     * Derive a class name for the ahead-of-time backend from the name of the
+     * source file (e.g., {@code fib-2.decaf} becomes {@code Fib_2})
+     *
+     * @return Java class name
+     */
+    private String getMainClassName()
+    {
+        String base = mainFile.getName();
+        if (base.lastIndexOf('.') > 0) {
+            base = base.substring(0, base.lastIndexOf('.'));
+        }
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < base.length(); i++) {
+            char ch = base.charAt(i);
+            name.append(Character.isJavaIdentifierPart(ch) ? ch : '_');
+        }
+        if (name.length() == 0 || !Character.isJavaIdentifierStart(name.charAt(0))) {
+            name.insert(0, '_');
+        }
+        name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+        return name.toString();
     }
 
     /**
@@ -113,12 +441,116 @@ class DecafCompiler
      */
     private void parseCompilerArguments(String[] args)
     {
-        if (args.length != 1) {
-            System.out.println("Usage: ./decaf.sh <file>");
-            System.exit(-1);
+        for (String arg : args) {
+            if (arg.equals("--engine=switch") || arg.equals("--engine=threaded") ||
+                    arg.equals("--engine=tiered")) {
+                engine = arg.substring(arg.indexOf('=') + 1);
+            } else if (arg.equals("--shared-regs")) {
+                sharedRegs = true;
+            } else if (arg.startsWith("--emit-class=")) {
+                classDir = file(arg.substring(arg.indexOf('=') + 1));
+            } else if (arg.startsWith("--emit-jar=")) {
+                jarFile = file(arg.substring(arg.indexOf('=') + 1));
+            } else if (arg.equals("--profile")) {
+                profile = "flat";
+            } else if (arg.equals("--profile=flat") || arg.equals("--profile=csv") ||
+                    arg.equals("--profile=json")) {
+                profile = arg.substring(arg.indexOf('=') + 1);
+            } else if (arg.startsWith("--fuel=")) {
+                try {
+                    fuel = Long.parseLong(arg.substring(arg.indexOf('=') + 1));
+                } catch (NumberFormatException ex) {
+                    usage();
+                }
+            } else if (arg.startsWith("--emit-asm=")) {
+                asmFile = file(arg.substring(arg.indexOf('=') + 1));
+            } else if (arg.equals("--timings")) {
+                timings = true;
+            } else if (arg.equals("--mmap")) {
+                mapped = true;
+            } else if (arg.equals("--recover")) {
+                recover = true;
+            } else if (arg.startsWith("--batch=")) {
+                batchSource = file(arg.substring(arg.indexOf('=') + 1));
+            } else if (arg.startsWith("--timeout=")) {
+                try {
+                    timeout = Long.parseLong(arg.substring(arg.indexOf('=') + 1));
+                } catch (NumberFormatException ex) {
+                    usage();
+                }
+                if (timeout < 0) {
+                    usage();
+                }
+            } else if (arg.startsWith("--") || mainFile != null) {
+                usage();
+            } else {
+                mainFile = file(arg);
+            }
+        }
+        if ((mainFile == null) == (batchSource == null)) {
+            usage();
+        }
+        // the threaded-code engine has no instruction budget or profiler
+        if (engine.equals("threaded") && (profile != null ||
+                    fuel != ILOCInterpreter.UNLIMITED_FUEL)) {
+            usage();
         }
+        // compiled functions always use register windows and cannot be
+        // observed by the profiler
+        if (engine.equals("tiered") && (sharedRegs || profile != null)) {
+            usage();
+        }
+    }
 
-        mainFile = new File(args[0]);
+    /**
+     * Resolve a file name from the command line
+     *
+     * @param name Absolute or relative file name
+     * @return File relative to the working directory
+     */
+    private File file(String name)
+    {
+        File f = new File(name);
+        if (workingDir == null || f.isAbsolute()) {
+            return f;
+        }
+        return new File(workingDir, name);
+    }
+
+    /**
+     * Print usage information and abort
+     *
+     * @throws UsageException Always
+     */
+    private static void usage()
+    {
+        System.out.println("Usage: ./decaf.sh [options] <file>");
+        System.out.println("       ./decaf.sh --batch=<dir|manifest> [--fuel=<n>] [--timeout=<ms>]");
+        System.out.println("Options:");
+        System.out.println("  --engine=switch     run ILOC with the decoding interpreter (default)");
+        System.out.println("  --engine=threaded   run ILOC with the threaded-code engine (cannot be");
+        System.out.println("                      combined with --fuel or --profile)");
+        System.out.println("  --engine=tiered     interpret ILOC, compiling hot functions to JVM bytecode");
+        System.out.println("                      (cannot be combined with --profile or --shared-regs)");
+        System.out.println("  --shared-regs       share one virtual register file between all calls");
+        System.out.println("                      instead of giving each call its own registers");
+        System.out.println("  --profile[=flat|csv|json]");
+        System.out.println("                      interpret ILOC and print an execution profile");
+        System.out.println("  --fuel=<n>          stop interpreting after about n instructions");
+        System.out.println("  --emit-class=<dir>  write a standalone JVM class instead of running ILOC");
+        System.out.println("  --emit-jar=<file>   write an executable jar instead of running ILOC");
+        System.out.println("  --emit-asm=<file>   write x86-64 assembly instead of running ILOC");
+        System.out.println("  --timings           print when each phase finished (since JVM start)");
+        System.out.println("  --mmap              lex the source file from a memory mapping");
+        System.out.println("  --recover           report all syntax errors instead of only the first");
+        System.out.println("  --batch=<dir|manifest>");
+        System.out.println("                      compile and run many programs concurrently (without");
+        System.out.println("                      register allocation, so results may differ from");
+        System.out.println("                      single runs)");
+        System.out.println("  --timeout=<ms>      stop interpreting (each batch job) after ms milliseconds");
+        System.out.println("  --server[=<port>]   keep a compiler running and serve requests from");
+        System.out.println("                      decafc.sh (this must be the first option)");
+        throw new UsageException();
     }
 }
 
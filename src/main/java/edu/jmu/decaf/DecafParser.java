@@ -4,7 +4,12 @@ import java.util.*;
 
 /**
  * "Stub" Decaf parser. Contains utility methods useful for manipulating
- * token lists.
+ * token lists. All of them also work on a lazily lexed {@link TokenStream}
+ * and need only one queue operation per call, which is an array access on a
+ * {@link TokenBuffer}.
+ *
+ * Keywords and symbols are compared by their codes (see {@link Token#code}),
+ * which can also be passed directly instead of the keyword or symbol text.
  */
 public abstract class DecafParser
 {
@@ -36,18 +41,22 @@ public abstract class DecafParser
     public void matchSymbol(Queue<Token> tokens, String symbol)
             throws InvalidSyntaxException
     {
-        if (tokens.size() == 0) {
-            throw new InvalidSyntaxException("Symbol \"" + symbol +
-                    "\" expected but not found at end of input");
-        }
-        Token peek = tokens.peek();
-        if (peek.type == Token.Type.SYM && peek.text.equals(symbol)) {
-            consumeNextToken(tokens);
-        } else {
-            throw new InvalidSyntaxException("Symbol \"" + symbol +
-                    "\" expected but not found at " +
-                    getCurrentSourceInfo(tokens).toString());
-        }
+        match(tokens, Token.Type.SYM, Token.codeOf(symbol), symbol, "Symbol");
+    }
+
+    /**
+     * Match and discard the given symbol (see {@link #matchSymbol(Queue,
+     * String)})
+     *
+     * @param tokens Input token queue
+     * @param code Expected symbol code (see {@link Token#codeOf})
+     * @throws InvalidSyntaxException Thrown if the queue is empty or the token
+     * does not match
+     */
+    public void matchSymbol(Queue<Token> tokens, int code)
+            throws InvalidSyntaxException
+    {
+        match(tokens, Token.Type.SYM, code, Token.textOf(code), "Symbol");
     }
 
     /**
@@ -63,18 +72,50 @@ public abstract class DecafParser
     public void matchKeyword(Queue<Token> tokens, String keyword)
             throws InvalidSyntaxException
     {
-        if (tokens.size() == 0) {
-            throw new InvalidSyntaxException("Keyword \"" + keyword +
+        match(tokens, Token.Type.KEY, Token.codeOf(keyword), keyword, "Keyword");
+    }
+
+    /**
+     * Match and discard the given keyword (see {@link #matchKeyword(Queue,
+     * String)})
+     *
+     * @param tokens Input token queue
+     * @param code Expected keyword code (see {@link Token#codeOf})
+     * @throws InvalidSyntaxException Thrown if the queue is empty or the token
+     * does not match
+     */
+    public void matchKeyword(Queue<Token> tokens, int code)
+            throws InvalidSyntaxException
+    {
+        match(tokens, Token.Type.KEY, code, Token.textOf(code), "Keyword");
+    }
+
+    private void match(Queue<Token> tokens, Token.Type type, int code,
+            String text, String kind) throws InvalidSyntaxException
+    {
+        Token peek = tokens.peek();
+        if (peek == null) {
+            throw new InvalidSyntaxException(kind + " \"" + text +
                     "\" expected but not found at end of input");
         }
-        Token peek = tokens.peek();
-        if (peek.type == Token.Type.KEY && peek.text.equals(keyword)) {
-            consumeNextToken(tokens);
+        if (matches(peek, type, code, text)) {
+            tokens.poll();
         } else {
-            throw new InvalidSyntaxException("Keyword \"" + keyword +
-                    "\" expected but not found at " +
-                    getCurrentSourceInfo(tokens).toString());
+            throw new InvalidSyntaxException(kind + " \"" + text +
+                    "\" expected but not found at " + peek.source.toString());
+        }
+    }
+
+    /**
+     * Compare a token against a keyword or symbol by code (or by text if the
+     * expected text has no code)
+     */
+    private static boolean matches(Token token, Token.Type type, int code, String text)
+    {
+        if (token == null || token.type != type) {
+            return false;
         }
+        return (code != Token.NO_CODE ? token.code == code : token.text.equals(text));
     }
 
     /**
@@ -105,12 +146,20 @@ public abstract class DecafParser
      */
     public boolean isNextTokenSymbol(Queue<Token> tokens, String symbol)
     {
-        Token peek = tokens.peek();
-        if (peek != null && peek.type == Token.Type.SYM && peek.text.equals(symbol)) {
-            return true;
-        } else {
-            return false;
-        }
+        return matches(tokens.peek(), Token.Type.SYM, Token.codeOf(symbol), symbol);
+    }
+
+    /**
+     * Returns true if and only if the head of the queue is a symbol token with
+     * the expected code.
+     *
+     * @param tokens Input token queue
+     * @param code Expected symbol code (see {@link Token#codeOf})
+     * @return Boolean indicating whether the next token matches
+     */
+    public boolean isNextTokenSymbol(Queue<Token> tokens, int code)
+    {
+        return matches(tokens.peek(), Token.Type.SYM, code, null);
     }
 
     /**
@@ -123,12 +172,46 @@ public abstract class DecafParser
      */
     public boolean isNextTokenKeyword(Queue<Token> tokens, String keyword)
     {
-        Token peek = tokens.peek();
-        if (peek != null && peek.type == Token.Type.KEY && peek.text.equals(keyword)) {
-            return true;
-        } else {
-            return false;
+        return matches(tokens.peek(), Token.Type.KEY, Token.codeOf(keyword), keyword);
+    }
+
+    /**
+     * Returns true if and only if the head of the queue is a keyword token with
+     * the expected code.
+     *
+     * @param tokens Input token queue
+     * @param code Expected keyword code (see {@link Token#codeOf})
+     * @return Boolean indicating whether the next token matches
+     */
+    public boolean isNextTokenKeyword(Queue<Token> tokens, int code)
+    {
+        return matches(tokens.peek(), Token.Type.KEY, code, null);
+    }
+
+    /**
+     * Returns the token {@code k} positions from the head of the queue without
+     * consuming anything ({@code k = 0} is the head). On a {@link
+     * TokenStream}, this only lexes as far ahead as needed, and on a {@link
+     * TokenBuffer} it takes constant time.
+     *
+     * @param tokens Input token queue
+     * @param k Lookahead distance
+     * @return The token, or null if there are not enough tokens
+     */
+    public Token peekToken(Queue<Token> tokens, int k)
+    {
+        if (tokens instanceof TokenBuffer) {
+            return ((TokenBuffer)tokens).peek(k);
+        }
+        if (tokens instanceof TokenStream) {
+            return ((TokenStream)tokens).peek(k);
         }
+        for (Token t : tokens) {
+            if (k-- == 0) {
+                return t;
+            }
+        }
+        return null;
     }
 
     /**
@@ -140,10 +223,9 @@ public abstract class DecafParser
     public void consumeNextToken(Queue<Token> tokens)
             throws InvalidSyntaxException
     {
-        if (tokens.size() == 0) {
+        if (tokens.poll() == null) {
             throw new InvalidSyntaxException("Unexpected end of input");
         }
-        tokens.remove();
     }
 
     /**
@@ -155,8 +237,9 @@ public abstract class DecafParser
      */
     public SourceInfo getCurrentSourceInfo(Queue<Token> tokens)
     {
-        if (tokens.size() > 0) {
-            return tokens.peek().source;
+        Token peek = tokens.peek();
+        if (peek != null) {
+            return peek.source;
         } else {
             return SourceInfo.INVALID;
         }
@@ -0,0 +1,542 @@
+package edu.jmu.decaf;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+ * Hand-coded Decaf lexer. Produces exactly the same tokens, source info, and
+ * errors as the regular-expression lexer ({@link MyDecafLexer}), but scans
+ * the source text by index in a single pass instead of matching every token
+ * pattern against a {@link StringBuffer} and deleting the matched prefix, so
+ * lexing takes linear time even for very long lines.
+ *
+ * The token rules, tried in this order at each position, are:
+ *
+ * <pre>
+ * HEX  0x(0|[1-9a-fA-F][0-9a-fA-F]*)
+ * DEC  0|[1-9][0-9]*
+ * STR  "([^\\"]+|\\[nt"\\])*"
+ * SYM  &lt;= &gt;= &amp;&amp; || == != ( ) [ ] { } , . ; = + - * / % ! &lt; &gt;
+ * ID   [a-zA-Z]\w*      (KEY if it is a keyword)
+ * </pre>
+ *
+ * Whitespace ({@code \s+}) and then a comment ({@code //.*}) are skipped
+ * before each token. Tokens never span lines.
+ *
+ * Besides lexing a whole input into a queue, the scanner can lex on demand
+ * as a parser pulls tokens from a {@link TokenStream} (see {@link #stream}).
+ * Source files can also be memory-mapped and scanned as raw bytes (see
+ * {@link #lexMapped}), which avoids decoding and copying the whole file.
+ */
+public class DecafScanner extends DecafLexer
+{
+    private final NamePool names;
+
+    public DecafScanner()
+    {
+        this(new NamePool());
+    }
+
+    /**
+     * Create a scanner that interns identifiers in the given pool
+     * @param names Name pool (usually that of the current compilation)
+     */
+    public DecafScanner(NamePool names)
+    {
+        super();
+        this.names = names;
+    }
+
+    @Override
+    public Queue<Token> lex(BufferedReader input, String filename)
+            throws IOException, InvalidTokenException
+    {
+        checkInput(input, filename);
+        Queue<Token> tokens = new ArrayDeque<Token>();
+        String line;
+        int lineNumber = 1;
+        while ((line = input.readLine()) != null) {
+            scanLine(line, 0, line.length(), new SourceInfo(filename, lineNumber), names, tokens);
+            lineNumber++;
+        }
+        input.close();
+        return tokens;
+    }
+
+    /**
+     * Perform lexical analysis on text that is already in memory.
+     *
+     * @param text Decaf source code
+     * @param filename Source file name (for source info)
+     * @return Queue of lexed tokens
+     * @throws InvalidTokenException Thrown if an invalid token is encountered
+     */
+    public Queue<Token> lex(CharSequence text, String filename)
+            throws InvalidTokenException
+    {
+        Queue<Token> tokens = new ArrayDeque<Token>();
+        int length = text.length();
+        int pos = 0;
+        int lineNumber = 1;
+
+        // lines end at "\n", "\r", or "\r\n" (as with BufferedReader.readLine)
+        while (pos < length) {
+            int end = pos;
+            while (end < length && text.charAt(end) != '\n' && text.charAt(end) != '\r') {
+                end++;
+            }
+            scanLine(text, pos, end, new SourceInfo(filename, lineNumber), names, tokens);
+
+            pos = end;
+            if (pos < length) {
+                if (text.charAt(pos) == '\r' && pos + 1 < length && text.charAt(pos + 1) == '\n') {
+                    pos++;
+                }
+                pos++;
+            }
+            lineNumber++;
+        }
+        return tokens;
+    }
+
+    /**
+     * Lex lazily: tokens are read from the input a line at a time as they
+     * are requested from the returned stream. Lexical errors end the stream
+     * and are reported by {@link TokenStream#finish}.
+     *
+     * @param input Input text reader (closed at the end of the input)
+     * @param filename Source file name (for source info)
+     * @return Token stream
+     * @throws InvalidTokenException Thrown if the input or filename is null
+     */
+    public TokenStream stream(final BufferedReader input, final String filename)
+            throws InvalidTokenException
+    {
+        checkInput(input, filename);
+        return new TokenStream() {
+            private final Queue<Token> line = new ArrayDeque<Token>();
+            private int lineNumber = 0;
+
+            protected Token readToken() throws IOException, InvalidTokenException
+            {
+                while (line.isEmpty()) {
+                    String text = input.readLine();
+                    if (text == null) {
+                        input.close();
+                        return null;
+                    }
+                    lineNumber++;
+                    scanLine(text, 0, text.length(),
+                            new SourceInfo(filename, lineNumber), names, line);
+                }
+                return line.remove();
+            }
+        };
+    }
+
+    /**
+     * Perform lexical analysis on a memory-mapped file. The file is scanned
+     * as bytes without decoding it first; only the text of each token is
+     * converted to a string. The encoding must be ASCII-compatible (e.g.,
+     * UTF-8); the rare lines that contain non-ASCII bytes (which can only
+     * be valid inside comments and string literals) are decoded with the
+     * default charset, just as {@link FileReader} would.
+     *
+     * @param file Input text file
+     * @param filename Source file name (for source info)
+     * @return Queue of lexed tokens
+     * @throws IOException Thrown if the file cannot be mapped
+     * @throws InvalidTokenException Thrown if an invalid token is encountered
+     */
+    public Queue<Token> lexMapped(File file, String filename)
+            throws IOException, InvalidTokenException
+    {
+        MappedSource source = new MappedSource(file, filename, names);
+        Queue<Token> tokens = new ArrayDeque<Token>();
+        while (source.scanLine(tokens)) { }
+        return tokens;
+    }
+
+    /**
+     * Lex a memory-mapped file lazily (see {@link #lexMapped} and {@link
+     * #stream(BufferedReader, String)})
+     *
+     * @param file Input text file
+     * @param filename Source file name (for source info)
+     * @return Token stream
+     * @throws IOException Thrown if the file cannot be mapped
+     */
+    public TokenStream streamMapped(File file, String filename)
+            throws IOException
+    {
+        final MappedSource source = new MappedSource(file, filename, names);
+        return new TokenStream() {
+            private final Queue<Token> line = new ArrayDeque<Token>();
+
+            protected Token readToken() throws InvalidTokenException
+            {
+                while (line.isEmpty()) {
+                    if (!source.scanLine(line)) {
+                        return null;
+                    }
+                }
+                return line.remove();
+            }
+        };
+    }
+
+    /**
+     * Memory-mapped source file, scanned a line at a time
+     */
+    private static class MappedSource
+    {
+        private final ByteBuffer buffer;
+        private final ByteBuffer cursor;
+        private final String filename;
+        private final NamePool names;
+        private byte[] line;
+        private int pos;
+        private int lineNumber;
+
+        public MappedSource(File file, String filename, NamePool names)
+                throws IOException
+        {
+            if (filename == null) {
+                throw new IOException("Invalid filename.");
+            }
+            FileInputStream input = new FileInputStream(file);
+            try {
+                FileChannel channel = input.getChannel();
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException("File too large to map: " + file);
+                }
+                // the mapping remains valid after the channel is closed
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                input.close();
+            }
+            cursor = buffer.duplicate();
+            this.filename = filename;
+            this.names = names;
+            line = new byte[256];
+            pos = 0;
+            lineNumber = 1;
+        }
+
+        /**
+         * Lex the next line (lines end at "\n", "\r", or "\r\n", as with
+         * {@link BufferedReader#readLine})
+         *
+         * @param tokens Queue that receives the tokens
+         * @return False if there are no more lines
+         * @throws InvalidTokenException Thrown if an invalid token is encountered
+         */
+        public boolean scanLine(Queue<Token> tokens) throws InvalidTokenException
+        {
+            int length = buffer.limit();
+            if (pos >= length) {
+                return false;
+            }
+            int start = pos;
+            boolean ascii = true;
+            byte b;
+            while (pos < length && (b = buffer.get(pos)) != '\n' && b != '\r') {
+                ascii &= (b >= 0);
+                pos++;
+            }
+
+            // copy the line's bytes into a reusable array (a bulk copy that
+            // stays in cache) rather than reading the buffer byte by byte
+            CharSequence text;
+            cursor.limit(pos);
+            cursor.position(start);
+            if (ascii) {
+                if (line.length < pos - start) {
+                    line = new byte[Math.max(pos - start, 2 * line.length)];
+                }
+                cursor.get(line, 0, pos - start);
+                text = new ByteText(line, pos - start);
+            } else {
+                text = Charset.defaultCharset().decode(cursor);
+            }
+            DecafScanner.scanLine(text, 0, text.length(),
+                    new SourceInfo(filename, lineNumber), names, tokens);
+
+            if (pos < length) {
+                if (buffer.get(pos) == '\r' && pos + 1 < length && buffer.get(pos + 1) == '\n') {
+                    pos++;
+                }
+                pos++;
+            }
+            lineNumber++;
+            return true;
+        }
+    }
+
+    /**
+     * View of ASCII bytes as characters (only token text is ever converted
+     * to a string)
+     */
+    private static class ByteText implements CharSequence
+    {
+        private final byte[] bytes;
+        private final int length;
+
+        public ByteText(byte[] bytes, int length)
+        {
+            this.bytes = bytes;
+            this.length = length;
+        }
+
+        public int length()
+        {
+            return length;
+        }
+
+        public char charAt(int index)
+        {
+            return (char)bytes[index];
+        }
+
+        public CharSequence subSequence(int from, int to)
+        {
+            return substring(from, to);
+        }
+
+        public String substring(int from, int to)
+        {
+            return new String(bytes, from, to - from, StandardCharsets.ISO_8859_1);
+        }
+
+        @Override
+        public String toString()
+        {
+            return substring(0, length);
+        }
+    }
+
+    private static void checkInput(BufferedReader input, String filename)
+            throws InvalidTokenException
+    {
+        if (input == null) {
+            throw new InvalidTokenException("Invalid token input stream.");
+        }
+        if (filename == null) {
+            throw new InvalidTokenException("Invalid filename.");
+        }
+    }
+
+    /**
+     * Lex a single line (text[pos, end), which contains no line breaks)
+     *
+     * @param source Source info shared by all tokens on the line
+     * @param names Pool for identifier, keyword, and symbol text
+     * @param tokens Queue that receives the tokens
+     * @throws InvalidTokenException Thrown if an invalid token is encountered
+     */
+    private static void scanLine(CharSequence text, int pos, int end,
+            SourceInfo source, NamePool names, Queue<Token> tokens)
+            throws InvalidTokenException
+    {
+        pos = skipIgnored(text, pos, end);
+        while (pos < end) {
+            Token.Type type = Token.Type.HEX;
+            int next = scanHex(text, pos, end);
+            if (next < 0) {
+                type = Token.Type.DEC;
+                next = scanDec(text, pos, end);
+            }
+            if (next < 0) {
+                type = Token.Type.STR;
+                next = scanStr(text, pos, end);
+            }
+            if (next < 0) {
+                type = Token.Type.SYM;
+                next = scanSym(text, pos, end);
+            }
+            if (next < 0) {
+                type = Token.Type.ID;
+                next = scanId(text, pos, end);
+            }
+            if (next < 0) {
+                throw new InvalidTokenException("Invalid text at " + source.toString());
+            }
+
+            // names, keywords, and symbols share pooled text and carry codes
+            String str;
+            int code = Token.NO_CODE;
+            if (type == Token.Type.ID || type == Token.Type.SYM) {
+                str = names.intern(text, pos, next);
+                code = Token.codeOf(str);
+                if (type == Token.Type.ID && Token.isKeywordCode(code)) {
+                    type = Token.Type.KEY;
+                } else if (type == Token.Type.ID && Token.isReservedCode(code)) {
+                    throw new InvalidTokenException("Invalid use of reserved word \"" +
+                            str + "\" at " + source.toString());
+                }
+            } else if (text instanceof ByteText) {
+                str = ((ByteText)text).substring(pos, next);
+            } else {
+                str = text.subSequence(pos, next).toString();
+            }
+            tokens.add(new Token(type, str, code, source));
+            pos = skipIgnored(text, next, end);
+        }
+    }
+
+    /**
+     * Skip whitespace and then a comment (once each, like {@link
+     * DecafLexer#discardIgnored})
+     * @return Position after the ignored text
+     */
+    private static int skipIgnored(CharSequence text, int pos, int end)
+    {
+        while (pos < end && isSpace(text.charAt(pos))) {
+            pos++;
+        }
+        if (pos + 1 < end && text.charAt(pos) == '/' && text.charAt(pos + 1) == '/') {
+            pos += 2;
+            while (pos < end && !isLineTerminator(text.charAt(pos))) {
+                pos++;
+            }
+        }
+        return pos;
+    }
+
+    /*
+     * Each of the following methods tries to match one token rule at pos,
+     * returning the position after the token or -1 if the rule does not match.
+     */
+
+    private static int scanHex(CharSequence text, int pos, int end)
+    {
+        if (pos + 2 >= end || text.charAt(pos) != '0' || text.charAt(pos + 1) != 'x') {
+            return -1;
+        }
+        char ch = text.charAt(pos + 2);
+        if (ch == '0') {
+            return pos + 3;
+        }
+        if (!isHexDigit(ch)) {
+            return -1;
+        }
+        pos += 3;
+        while (pos < end && isHexDigit(text.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int scanDec(CharSequence text, int pos, int end)
+    {
+        char ch = text.charAt(pos);
+        if (ch == '0') {
+            return pos + 1;
+        }
+        if (ch < '1' || ch > '9') {
+            return -1;
+        }
+        pos++;
+        while (pos < end && isDigit(text.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int scanStr(CharSequence text, int pos, int end)
+    {
+        if (text.charAt(pos) != '"') {
+            return -1;
+        }
+        pos++;
+        while (pos < end) {
+            char ch = text.charAt(pos);
+            if (ch == '"') {
+                return pos + 1;
+            } else if (ch == '\\') {
+                if (pos + 1 >= end) {
+                    return -1;
+                }
+                ch = text.charAt(pos + 1);
+                if (ch != 'n' && ch != 't' && ch != '"' && ch != '\\') {
+                    return -1;
+                }
+                pos += 2;
+            } else {
+                pos++;
+            }
+        }
+        return -1;
+    }
+
+    private static int scanSym(CharSequence text, int pos, int end)
+    {
+        char ch = text.charAt(pos);
+        if (pos + 1 < end) {
+            char next = text.charAt(pos + 1);
+            if ((next == '=' && (ch == '<' || ch == '>' || ch == '=' || ch == '!')) ||
+                    (ch == '&' && next == '&') || (ch == '|' && next == '|')) {
+                return pos + 2;
+            }
+        }
+        switch (ch) {
+            case '(': case ')': case '[': case ']': case '{': case '}':
+            case ',': case '.': case ';': case '=': case '+': case '-':
+            case '*': case '/': case '%': case '!': case '<': case '>':
+                return pos + 1;
+            default:
+                return -1;
+        }
+    }
+
+    private static int scanId(CharSequence text, int pos, int end)
+    {
+        if (!isLetter(text.charAt(pos))) {
+            return -1;
+        }
+        pos++;
+        while (pos < end && isWordChar(text.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    /*
+     * Character classes (all ASCII-only, like the default regex classes)
+     */
+
+    private static boolean isSpace(char ch)
+    {
+        return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\u000B' ||
+            ch == '\f' || ch == '\r';
+    }
+
+    private static boolean isLineTerminator(char ch)
+    {
+        return ch == '\n' || ch == '\r' || ch == '\u0085' ||
+            ch == '\u2028' || ch == '\u2029';
+    }
+
+    private static boolean isDigit(char ch)
+    {
+        return ch >= '0' && ch <= '9';
+    }
+
+    private static boolean isHexDigit(char ch)
+    {
+        return isDigit(ch) || (ch >= 'a' && ch <= 'f') || (ch >= 'A' && ch <= 'F');
+    }
+
+    private static boolean isLetter(char ch)
+    {
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z');
+    }
+
+    private static boolean isWordChar(char ch)
+    {
+        return isLetter(ch) || isDigit(ch) || ch == '_';
+    }
+}
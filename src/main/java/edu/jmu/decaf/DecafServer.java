@@ -0,0 +1,379 @@
+package edu.jmu.decaf;
+
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.security.*;
+import java.util.*;
+
+/**
+ * Long-lived compiler server. Starting a JVM and warming up its JIT compiler
+ * takes much longer than compiling a small Decaf program, so the server
+ * keeps one JVM (with the lexer, parser, analysis passes, and interpreter
+ * already loaded and compiled) running and accepts requests on a loopback
+ * port:
+ *
+ * <pre>
+ * ./decaf.sh --server &amp;
+ * ./decafc.sh [options] &lt;file&gt;
+ * ./decafc.sh --shutdown
+ * </pre>
+ *
+ * A request is a small text message; the response is everything the
+ * compiler would have printed, after which the server closes the connection:
+ *
+ * <pre>
+ * DECAF 2
+ * &lt;token&gt;
+ * &lt;client working directory&gt;
+ * &lt;argument 1&gt;
+ * ...
+ * &lt;argument n&gt;
+ * &lt;empty line&gt;
+ * </pre>
+ *
+ * The server only listens on the loopback interface, but other local users
+ * can connect to it too, and a request can read and write any file that the
+ * server can. At startup the server therefore writes a random token to a
+ * file that only its own user can read ({@code ~/.decaf/server-<port>.token}
+ * by default) and rejects requests that do not start with that token.
+ *
+ * Requests are handled one at a time because the compiler prints to {@code
+ * System.out}, which is redirected to the client during a request. So that
+ * a program that never terminates cannot block the server, interpretation is
+ * stopped after a time limit unless the request gives its own {@code
+ * --timeout}. The server logs the time taken by each request to standard
+ * error.
+ */
+class DecafServer
+{
+    /**
+     * Port used when none is given (also the default in {@code decafc.sh})
+     */
+    public static final int DEFAULT_PORT = 7381;
+
+    /**
+     * First line of every request
+     */
+    public static final String HEADER = "DECAF 2";
+
+    /**
+     * Request argument that stops the server
+     */
+    public static final String SHUTDOWN = "--shutdown";
+
+    /**
+     * Time to wait for a client to finish sending its request (in ms)
+     */
+    private static final int READ_TIMEOUT = 10000;
+
+    /**
+     * Default limit on the time spent interpreting for a request (in ms)
+     */
+    public static final long DEFAULT_REQUEST_TIMEOUT = 30000;
+
+    /**
+     * Program compiled and run at startup to load and warm up the compiler
+     */
+    private static final String WARMUP_PROGRAM =
+        "int a[100]; " +
+        "def int fib(int n) { if (n < 2) { return n; } " +
+        "  return fib(n - 1) + fib(n - 2); } " +
+        "def int main() { int i; int s; i = 0; s = 0; " +
+        "  while (i < 100) { a[i] = i * 2; i = i + 1; } " +
+        "  i = 0; while (i < 100) { s = s + a[i] / 2; i = i + 1; } " +
+        "  if (s != 4950) { print_str(\"bad sum\"); } " +
+        "  return fib(12); }";
+
+    private final ServerSocket socket;
+    private final PrintStream log;
+    private final File tokenFile;
+    private final byte[] token;
+    private long requestTimeout;
+
+    /**
+     * Create a server listening on a loopback port, with its token in the
+     * default file for the port (see {@link #getTokenFile(int)})
+     * @param port Port number (or 0 for any free port)
+     * @param log Stream for the request log (or null for no log)
+     * @throws IOException Thrown if the port or token file cannot be opened
+     */
+    public DecafServer(int port, PrintStream log) throws IOException
+    {
+        this(port, null, log);
+    }
+
+    /**
+     * Create a server listening on a loopback port
+     * @param port Port number (or 0 for any free port)
+     * @param tokenFile File to write the request token to (or null for the
+     *                  default file for the port)
+     * @param log Stream for the request log (or null for no log)
+     * @throws IOException Thrown if the port or token file cannot be opened
+     */
+    public DecafServer(int port, File tokenFile, PrintStream log) throws IOException
+    {
+        this.socket = new ServerSocket(port, 50, InetAddress.getByName(null));
+        this.log = log;
+        this.requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+        this.tokenFile = (tokenFile != null ? tokenFile : getTokenFile(getPort()));
+        try {
+            this.token = writeToken(this.tokenFile);
+        } catch (IOException ex) {
+            socket.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Retrieve the default token file for a port
+     * @param port Port number
+     * @return {@code ~/.decaf/server-<port>.token}
+     */
+    public static File getTokenFile(int port)
+    {
+        return new File(new File(System.getProperty("user.home"), ".decaf"),
+                "server-" + port + ".token");
+    }
+
+    /**
+     * Write a new random token to a file that only the current user can
+     * read (creating its directory, also private, if needed)
+     * @return Token
+     */
+    private static byte[] writeToken(File file) throws IOException
+    {
+        byte[] random = new byte[16];
+        (new SecureRandom()).nextBytes(random);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : random) {
+            hex.append(String.format("%02x", b & 0xff));
+        }
+        byte[] token = hex.toString().getBytes("UTF-8");
+
+        Path path = file.getAbsoluteFile().toPath();
+        Files.createDirectories(path.getParent(), PosixFilePermissions.asFileAttribute(
+                    PosixFilePermissions.fromString("rwx------")));
+        Files.deleteIfExists(path);
+        Files.createFile(path, PosixFilePermissions.asFileAttribute(
+                    PosixFilePermissions.fromString("rw-------")));
+        Files.write(path, token);
+        return token;
+    }
+
+    /**
+     * Retrieve the file that clients read the request token from
+     * @return Token file
+     */
+    public File getTokenFile()
+    {
+        return tokenFile;
+    }
+
+    /**
+     * Set the limit on the time spent interpreting for requests that do not
+     * give their own {@code --timeout}
+     * @param ms Time limit (in ms), or 0 for no limit
+     */
+    public void setRequestTimeout(long ms)
+    {
+        this.requestTimeout = ms;
+    }
+
+    /**
+     * Retrieve the port that the server is listening on
+     * @return Port number
+     */
+    public int getPort()
+    {
+        return socket.getLocalPort();
+    }
+
+    /**
+     * Compile and run a small built-in program several times so that the
+     * first real request does not pay for class loading and interpretation
+     * of the compiler itself
+     * @param iterations Number of compilations
+     */
+    public void warmUp(int iterations)
+    {
+        PrintStream discard = new PrintStream(new ByteArrayOutputStream());
+        for (int i = 0; i < iterations; i++) {
+            try {
+                ILOCProgram program = DecafCompiler.compile(new CompilationContext(),
+                        new BufferedReader(new StringReader(WARMUP_PROGRAM)), "warmup");
+                ILOCInterpreter interp = new ILOCInterpreter();
+                interp.setOutput(discard);
+                interp.process(program);
+            } catch (Exception ex) {
+                throw new RuntimeException("Warm-up failed", ex);
+            }
+        }
+    }
+
+    /**
+     * Handle requests until a shutdown request arrives or the server is
+     * closed
+     * @throws IOException Thrown if the server socket fails
+     */
+    public void serve() throws IOException
+    {
+        while (true) {
+            Socket client;
+            try {
+                client = socket.accept();
+            } catch (SocketException ex) {
+                if (socket.isClosed()) {
+                    return;
+                }
+                throw ex;
+            }
+            try {
+                if (!handle(client)) {
+                    close();
+                    return;
+                }
+            } catch (IOException ex) {
+                if (log != null) {
+                    log.println("request failed: " + ex.getMessage());
+                }
+            } finally {
+                client.close();
+            }
+        }
+    }
+
+    /**
+     * Stop accepting requests (and delete the token file)
+     * @throws IOException Thrown if the socket cannot be closed
+     */
+    public void close() throws IOException
+    {
+        tokenFile.delete();
+        socket.close();
+    }
+
+    /**
+     * Read and answer a single request
+     * @return False if the request asked the server to stop
+     */
+    private boolean handle(Socket client) throws IOException
+    {
+        long start = System.nanoTime();
+        client.setSoTimeout(READ_TIMEOUT);
+        BufferedReader input = new BufferedReader(
+                new InputStreamReader(client.getInputStream(), "UTF-8"));
+        PrintStream output = new PrintStream(
+                new BufferedOutputStream(client.getOutputStream()), false, "UTF-8");
+
+        String header = input.readLine();
+        String key = input.readLine();
+        String dir = input.readLine();
+        if (!HEADER.equals(header) || key == null || dir == null) {
+            output.println("Invalid request");
+            output.flush();
+            return true;
+        }
+        if (!MessageDigest.isEqual(token, key.getBytes("UTF-8"))) {
+            output.println("Invalid token (see " + tokenFile + ")");
+            output.flush();
+            if (log != null) {
+                log.println("rejected request with invalid token");
+            }
+            return true;
+        }
+        List<String> args = new ArrayList<String>();
+        String line;
+        while ((line = input.readLine()) != null && line.length() > 0) {
+            args.add(line);
+        }
+
+        if (args.size() == 1 && args.get(0).equals(SHUTDOWN)) {
+            output.println("Server stopped");
+            output.flush();
+            if (log != null) {
+                log.println("shutdown");
+            }
+            return false;
+        }
+
+        boolean timeout = false;
+        for (String arg : args) {
+            timeout |= arg.startsWith("--timeout=");
+        }
+        if (!timeout && requestTimeout > 0) {
+            args.add("--timeout=" + requestTimeout);
+        }
+
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        try {
+            System.setOut(output);
+            System.setErr(output);
+            DecafCompiler.execute(args.toArray(new String[args.size()]), new File(dir));
+        } catch (DecafCompiler.UsageException ex) {
+            // usage information has already been printed
+        } catch (Throwable ex) {
+            // keep serving after compiler bugs and errors such as a stack
+            // overflow in compiled code, as a fresh JVM would
+            ex.printStackTrace(output);
+        } finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+        output.flush();
+
+        if (log != null) {
+            log.println(String.format("%.1f ms: %s", (System.nanoTime() - start) / 1e6,
+                        join(args)));
+        }
+        return true;
+    }
+
+    private static String join(List<String> args)
+    {
+        StringBuilder str = new StringBuilder();
+        for (String arg : args) {
+            if (str.length() > 0) {
+                str.append(' ');
+            }
+            str.append(arg);
+        }
+        return str.toString();
+    }
+
+    /**
+     * Server entry point (usually reached through {@code decaf.sh --server})
+     * @param args {@code --server} or {@code --server=<port>}
+     */
+    public static void main(String[] args)
+    {
+        int port = DEFAULT_PORT;
+        if (args.length != 1 || !(args[0].equals("--server") ||
+                    args[0].startsWith("--server="))) {
+            System.out.println("Usage: ./decaf.sh --server[=<port>]");
+            System.exit(-1);
+        }
+        if (args[0].startsWith("--server=")) {
+            try {
+                port = Integer.parseInt(args[0].substring(args[0].indexOf('=') + 1));
+            } catch (NumberFormatException ex) {
+                System.out.println("Invalid port: " + args[0]);
+                System.exit(-1);
+            }
+        }
+        try {
+            DecafServer server = new DecafServer(port, System.err);
+            long start = System.nanoTime();
+            server.warmUp(50);
+            System.err.println(String.format("Decaf server listening on port %d " +
+                        "with token in %s (warm-up took %.1f ms)", server.getPort(),
+                        server.getTokenFile(), (System.nanoTime() - start) / 1e6));
+            server.serve();
+        } catch (IOException ex) {
+            System.out.println(ex.getMessage());
+            System.exit(-1);
+        }
+    }
+}
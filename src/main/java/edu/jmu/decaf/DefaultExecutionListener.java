@@ -0,0 +1,15 @@
+package edu.jmu.decaf;
+
+/**
+ * Basic "stub" implementation of the {@link ExecutionListener} interface.
+ * This allows subclasses to selectively implement any parts of the
+ * interface.
+ */
+public class DefaultExecutionListener implements ExecutionListener
+{
+    public void programLoaded(ILOCInterpreter interp)                { }
+    public void programStarted(ILOCInterpreter interp)               { }
+    public void beforeInstruction(ILOCInterpreter interp, int pc)    { }
+    public void afterInstruction(ILOCInterpreter interp, int pc)     { }
+    public void programFinished(ILOCInterpreter interp)              { }
+}
@@ -0,0 +1,50 @@
+package edu.jmu.decaf;
+
+/**
+ * Hooks for observing an {@link ILOCInterpreter} as it runs (see
+ * {@link ILOCInterpreter#setExecutionListener}). Tracing, profiling, and
+ * debugging are all implemented as listeners, so an interpreter without a
+ * listener runs a loop that contains no instrumentation at all.
+ *
+ * Listeners may inspect the interpreter (e.g., with
+ * {@link ILOCInterpreter#dumpSystemState}) but should not modify it. It is
+ * recommended that new listeners extend {@link DefaultExecutionListener}
+ * rather than implement this interface directly.
+ */
+public interface ExecutionListener
+{
+    /**
+     * Called after a program has been loaded, before {@code main} is called
+     * @param interp Interpreter running the program
+     */
+    public void programLoaded(ILOCInterpreter interp);
+
+    /**
+     * Called after {@code main} has been called, before its first
+     * instruction
+     * @param interp Interpreter running the program
+     */
+    public void programStarted(ILOCInterpreter interp);
+
+    /**
+     * Called before an instruction is executed (the instruction pointer has
+     * already been advanced past it)
+     * @param interp Interpreter running the program
+     * @param pc Code index of the instruction (see
+     *           {@link ILOCInterpreter#getImage})
+     */
+    public void beforeInstruction(ILOCInterpreter interp, int pc);
+
+    /**
+     * Called after an instruction has been executed
+     * @param interp Interpreter running the program
+     * @param pc Code index of the instruction
+     */
+    public void afterInstruction(ILOCInterpreter interp, int pc);
+
+    /**
+     * Called after {@code main} has returned
+     * @param interp Interpreter running the program
+     */
+    public void programFinished(ILOCInterpreter interp);
+}
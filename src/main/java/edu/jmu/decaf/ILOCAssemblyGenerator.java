@@ -0,0 +1,607 @@
+package edu.jmu.decaf;
+
+import java.io.*;
+
+/**
+ * Native backend that translates an {@link ILOCProgram} into x86-64 assembly
+ * (GNU/AT&amp;T syntax, System V ABI) for Linux. The output is a complete
+ * program that can be assembled and linked against the C library:
+ *
+ * <pre>
+ * gcc -o prog prog.s
+ * </pre>
+ *
+ * The program should normally have been through register allocation (see
+ * {@link LocalRegisterAllocator}): the virtual registers of each function
+ * are numbered from zero and the first eight are mapped to machine
+ * registers, so physical register {@code k} of the allocator is always the
+ * {@code k}-th entry of the table below. Any further registers live in the
+ * native stack frame, which keeps unallocated programs working too.
+ *
+ * <pre>
+ *   %ebx %r12d %r13d                  ILOC registers 0-2 (callee-saved)
+ *   %esi %edi %r8d %r9d %r10d         ILOC registers 3-7 (caller-saved)
+ *   %ebp                              ILOC base pointer
+ *   %eax                              ILOC return value register
+ *   %r14d                             ILOC stack pointer
+ *   %r15                              base address of ILOC memory
+ *   %ecx %edx %r11                    scratch
+ * </pre>
+ *
+ * ILOC addresses are offsets into a zero-filled memory region in
+ * {@code .bss} with the same layout as in the {@link ILOCInterpreter}
+ * (static data at the bottom, stack at the top), so ILOC stack frames are
+ * unchanged: {@code PARAM} pushes on the ILOC stack and the callee finds its
+ * parameters at {@code [bp+8]}, {@code [bp+12]}, etc. Each ILOC function is
+ * also an ordinary native function, called with {@code call} on a 16-byte
+ * aligned stack; it preserves the callee-saved registers it uses, and the
+ * caller saves its live caller-saved registers around calls and around
+ * {@code printf}. {@code %ebp}, {@code %r14}, and {@code %r15} are global to
+ * the generated code and are preserved for the C library by {@code main}.
+ *
+ * Stack overflow and falling off the end of a function print a message and
+ * exit with status 1. Unlike the interpreter, the native code does not check
+ * memory addresses, and division by zero raises {@code SIGFPE}.
+ */
+public class ILOCAssemblyGenerator implements ILOCProcessor
+{
+    /**
+     * ILOC registers that are mapped to machine registers
+     */
+    private static final String[] REGISTERS = {
+        "%ebx", "%r12d", "%r13d", "%esi", "%edi", "%r8d", "%r9d", "%r10d"
+    };
+
+    /**
+     * Number of leading {@link #REGISTERS} that are callee-saved
+     */
+    private static final int CALLEE_SAVED = 3;
+
+    private static final String[] CALLEE_SAVED_64 = { "%rbx", "%r12", "%r13" };
+
+    /**
+     * Size of the caller-saved register save area (RET plus five registers)
+     * at the bottom of each native frame
+     */
+    private static final int SAVE_AREA = 6 * 4;
+
+    private final int memSize;
+    private ILOCProgram currentProgram;
+    private ILOCImage image;
+    private StringBuilder text;
+    private StringBuilder data;
+    private int numStrings;
+
+    // state of the function being translated
+    private int func;
+    private int start, end;
+    private int regBase, regCount;
+    private int frameSize;
+
+    /**
+     * Create a new generator with the default memory size
+     */
+    public ILOCAssemblyGenerator()
+    {
+        this(ILOCInterpreter.DEFAULT_MEM_SIZE);
+    }
+
+    /**
+     * Create a new generator
+     * @param memSize Size of the ILOC memory region (in bytes); must be a
+     *                multiple of the word size
+     */
+    public ILOCAssemblyGenerator(int memSize)
+    {
+        if (memSize <= 0 || memSize % Symbol.WORD_SIZE != 0) {
+            throw new IllegalArgumentException("Invalid memory size: " + memSize);
+        }
+        this.memSize = memSize;
+        this.text = null;
+    }
+
+    /**
+     * Translate a program into assembly
+     * @param program Program to translate
+     * @throws UnsupportedOperationException If the program contains
+     *         instructions that cannot be translated
+     */
+    public void process(ILOCProgram program)
+    {
+        currentProgram = program;
+        image = ILOCImage.link(program);
+        if (image.getFunctionID("main") < 0) {
+            throw new UnsupportedOperationException("Undefined function: main");
+        }
+        text = new StringBuilder();
+        data = new StringBuilder();
+        numStrings = 0;
+
+        text.append("\t.text\n");
+        emitMain();
+        for (int f = 0; f < image.functionNames.length; f++) {
+            emitFunction(f);
+        }
+        emitFatal();
+
+        data.append("\t.section .rodata\n");
+        data.append(".Lfmt_int:\n\t.string \"%d\"\n");
+        data.append(".Lfmt_str:\n\t.string \"%s\"\n");
+        data.append(".Lfmt_result:\n\t.string \"\\nResult: %d\\n\"\n");
+        data.append(".Lmsg_overflow:\n\t.string \"Stack overflow\"\n");
+        data.append("\t.bss\n\t.p2align 4\n");
+        data.append("decaf_mem:\n\t.zero " + memSize + "\n");
+        data.append("\t.section .note.GNU-stack,\"\",@progbits\n");
+    }
+
+    /**
+     * Returns the generated assembly code
+     * @return Assembly source (or null if no program has been processed)
+     */
+    public String getAssembly()
+    {
+        return (text == null ? null : text.toString() + data.toString());
+    }
+
+    /**
+     * Write the generated assembly code to a file
+     * @param file Output file
+     * @throws IOException Thrown if the file cannot be written
+     */
+    public void writeAssembly(File file) throws IOException
+    {
+        Writer out = new FileWriter(file);
+        try {
+            out.write(getAssembly());
+        } finally {
+            out.close();
+        }
+    }
+
+    private void emit(String insn)
+    {
+        text.append('\t').append(insn).append('\n');
+    }
+
+    private void emitLabel(String label)
+    {
+        text.append(label).append(":\n");
+    }
+
+    /**
+     * C entry point: set up the ILOC machine state, call {@code main}, and
+     * print the result
+     */
+    private void emitMain()
+    {
+        text.append("\t.globl main\n\t.type main, @function\n");
+        emitLabel("main");
+        emit("pushq %rbx");
+        emit("pushq %rbp");
+        emit("pushq %r12");
+        emit("pushq %r13");
+        emit("pushq %r14");
+        emit("pushq %r15");
+        emit("subq $8, %rsp");
+        emit("leaq decaf_mem(%rip), %r15");
+        emit("movl $" + memSize + ", %r14d");
+        emit("movl %r14d, %ebp");
+        emit("movl $-1, %eax");
+        emit("call " + symbol(image.getFunctionID("main")));
+        emit("movl %eax, %esi");
+        emit("leaq .Lfmt_result(%rip), %rdi");
+        emit("xorl %eax, %eax");
+        emit("call printf@PLT");
+        emit("xorl %eax, %eax");
+        emit("addq $8, %rsp");
+        emit("popq %r15");
+        emit("popq %r14");
+        emit("popq %r13");
+        emit("popq %r12");
+        emit("popq %rbp");
+        emit("popq %rbx");
+        emit("ret");
+    }
+
+    /**
+     * Shared error exit; expects the message in {@code %rdi}
+     */
+    private void emitFatal()
+    {
+        emitLabel(".Lstack_overflow");
+        emit("leaq .Lmsg_overflow(%rip), %rdi");
+        emitLabel(".Lfatal");
+        emit("andq $-16, %rsp");
+        emit("call puts@PLT");
+        emit("movl $1, %edi");
+        emit("call exit@PLT");
+    }
+
+    private String symbol(int f)
+    {
+        return "decaf_" + f + "_" + image.functionNames[f];
+    }
+
+    private static String label(int target)
+    {
+        return ".L" + target;
+    }
+
+    private void emitFunction(int f)
+    {
+        func = f;
+        start = image.functionEntries[f] + 1;
+        end = (f + 1 < image.functionEntries.length ?
+                image.functionEntries[f+1] : image.size());
+        regBase = image.functionRegBases[f];
+        regCount = image.functionRegCounts[f];
+
+        // native frame: callee-saved registers, then spilled ILOC registers
+        // and the save area, padded so that calls are 16-byte aligned
+        int pushed = Math.min(regCount, CALLEE_SAVED);
+        int spilled = Math.max(regCount - REGISTERS.length, 0);
+        frameSize = SAVE_AREA + spilled * 4;
+        while ((8 + 8 * pushed + frameSize) % 16 != 0) {
+            frameSize += 4;
+        }
+
+        boolean[] targets = new boolean[end - start + 1];
+        for (int pc = start; pc < end; pc++) {
+            for (int k = 0; k < ILOCImage.SLOTS; k++) {
+                int slot = pc * ILOCImage.SLOTS + k;
+                if (image.kinds[slot] == ILOCImage.JUMP_TARGET) {
+                    int target = image.values[slot];
+                    if (target < start || target > end) {
+                        throw new UnsupportedOperationException("jump out of function");
+                    }
+                    targets[target - start] = true;
+                }
+            }
+        }
+
+        text.append("\n\t.type " + symbol(f) + ", @function\n");
+        emitLabel(symbol(f));
+        for (int i = 0; i < pushed; i++) {
+            emit("pushq " + CALLEE_SAVED_64[i]);
+        }
+        emit("subq $" + frameSize + ", %rsp");
+
+        // ILOC prologue: push dummy return address and BP, set BP, and
+        // allocate locals
+        emit("subl $8, %r14d");
+        checkStack();
+        emit("movl $0, 4(%r15,%r14)");
+        emit("movl %ebp, (%r15,%r14)");
+        emit("movl %r14d, %ebp");
+        if (image.functionLocalSizes[f] != 0) {
+            emit("subl $" + image.functionLocalSizes[f] + ", %r14d");
+            checkStack();
+        }
+
+        for (int pc = start; pc < end; pc++) {
+            if (targets[pc - start]) {
+                emitLabel(label(pc));
+            }
+            translate(pc);
+        }
+        if (targets[end - start]) {
+            emitLabel(label(end));
+        }
+        String msg = string("Reached end of function without return: " +
+                image.functionNames[f]);
+        emit("leaq " + msg + "(%rip), %rdi");
+        emit("jmp .Lfatal");
+
+        // epilogue (shared by all returns)
+        emitLabel(".Lreturn_" + f);
+        emit("movl %ebp, %r14d");
+        emit("movl (%r15,%r14), %ebp");
+        emit("addl $" + (2 * Symbol.WORD_SIZE + image.functionParamSizes[f]) + ", %r14d");
+        emit("addq $" + frameSize + ", %rsp");
+        for (int i = pushed - 1; i >= 0; i--) {
+            emit("popq " + CALLEE_SAVED_64[i]);
+        }
+        emit("ret");
+    }
+
+    private void checkStack()
+    {
+        emit("cmpl $" + currentProgram.staticSize + ", %r14d");
+        emit("jl .Lstack_overflow");
+    }
+
+    /**
+     * Add a string constant to the data section
+     * @param value String value
+     * @return Assembly label of the string
+     */
+    private String string(String value)
+    {
+        String name = ".Lstr" + (numStrings++);
+        data.append(name).append(":\n\t.string \"");
+        byte[] bytes;
+        try {
+            bytes = value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+        for (byte b : bytes) {
+            int ch = b & 0xFF;
+            if (ch == '"' || ch == '\\') {
+                data.append('\\').append((char)ch);
+            } else if (ch < 0x20 || ch >= 0x7f) {
+                data.append(String.format("\\%03o", ch));
+            } else {
+                data.append((char)ch);
+            }
+        }
+        data.append("\"\n");
+        return name;
+    }
+
+    /**
+     * Emit code for a single instruction
+     * @param pc Code index
+     */
+    private void translate(int pc)
+    {
+        int s = pc * ILOCImage.SLOTS;
+        switch (image.opcodes[pc]) {
+
+        case ILOCImage.OP_NOP:
+            break;
+
+        case ILOCImage.OP_MOVE:
+            if (isMemory(s) && isMemory(s+1)) {
+                emit("movl " + operand(s) + ", %ecx");
+                emit("movl %ecx, " + destination(s+1));
+            } else {
+                emit("movl " + operand(s) + ", " + destination(s+1));
+            }
+            break;
+
+        case ILOCImage.OP_LOAD:
+            emit("movl " + operand(s) + ", %ecx");
+            emit("movl (%r15,%rcx), %ecx");
+            emit("movl %ecx, " + destination(s+1));
+            break;
+        case ILOCImage.OP_LOAD_AO:
+            emit("movl " + operand(s) + ", %ecx");
+            emit("movl " + address(s+1) + ", %ecx");
+            emit("movl %ecx, " + destination(s+2));
+            break;
+
+        case ILOCImage.OP_STORE:
+            emit("movl " + operand(s+1) + ", %ecx");
+            store(s, "(%r15,%rcx)");
+            break;
+        case ILOCImage.OP_STORE_AO:
+            emit("movl " + operand(s+1) + ", %ecx");
+            store(s, address(s+2));
+            break;
+
+        case ILOCImage.OP_ADD:  arithmetic(s, "addl"); break;
+        case ILOCImage.OP_SUB:  arithmetic(s, "subl"); break;
+        case ILOCImage.OP_MULT: arithmetic(s, "imull"); break;
+
+        case ILOCImage.OP_DIV:
+            // idiv needs %eax (RET) and %edx
+            emit("movl " + operand(s+1) + ", %ecx");
+            emit("movl %eax, %r11d");
+            emit("movl " + operand(s) + ", %eax");
+            emit("cltd");
+            emit("idivl %ecx");
+            emit("movl %eax, %ecx");
+            emit("movl %r11d, %eax");
+            emit("movl %ecx, " + destination(s+2));
+            break;
+
+        case ILOCImage.OP_AND:
+        case ILOCImage.OP_OR:
+            emit("movl " + operand(s) + ", %ecx");
+            emit("testl %ecx, %ecx");
+            emit("setne %cl");
+            emit("movl " + operand(s+1) + ", %edx");
+            emit("testl %edx, %edx");
+            emit("setne %dl");
+            emit((image.opcodes[pc] == ILOCImage.OP_AND ? "andb" : "orb") + " %dl, %cl");
+            emit("movzbl %cl, %ecx");
+            emit("movl %ecx, " + destination(s+2));
+            break;
+
+        case ILOCImage.OP_NOT:
+            emit("movl " + operand(s) + ", %ecx");
+            emit("testl %ecx, %ecx");
+            emit("sete %cl");
+            emit("movzbl %cl, %ecx");
+            emit("movl %ecx, " + destination(s+1));
+            break;
+        case ILOCImage.OP_NEG:
+            emit("movl " + operand(s) + ", %ecx");
+            emit("negl %ecx");
+            emit("movl %ecx, " + destination(s+1));
+            break;
+
+        case ILOCImage.OP_JUMP:
+            if (image.values[s] != pc + 1) {
+                emit("jmp " + label(image.values[s]));
+            }
+            break;
+        case ILOCImage.OP_CBR:
+            emit("movl " + operand(s) + ", %ecx");
+            emit("testl %ecx, %ecx");
+            emit("jne " + label(image.values[s+1]));
+            if (image.values[s+2] != pc + 1) {
+                emit("jmp " + label(image.values[s+2]));
+            }
+            break;
+
+        case ILOCImage.OP_CMP_LT: compare(s, "setl"); break;
+        case ILOCImage.OP_CMP_LE: compare(s, "setle"); break;
+        case ILOCImage.OP_CMP_EQ: compare(s, "sete"); break;
+        case ILOCImage.OP_CMP_GE: compare(s, "setge"); break;
+        case ILOCImage.OP_CMP_GT: compare(s, "setg"); break;
+        case ILOCImage.OP_CMP_NE: compare(s, "setne"); break;
+
+        case ILOCImage.OP_PARAM:
+            emit("subl $" + Symbol.WORD_SIZE + ", %r14d");
+            checkStack();
+            emit("movl " + operand(s) + ", %ecx");
+            emit("movl %ecx, (%r15,%r14)");
+            break;
+
+        case ILOCImage.OP_CALL:
+            if (image.kinds[s] != ILOCImage.CALL_TARGET || image.values[s] < 0) {
+                throw new UnsupportedOperationException("unresolved call");
+            }
+            saveRegisters(false);
+            emit("call " + symbol(image.values[s]));
+            restoreRegisters(false);
+            break;
+
+        case ILOCImage.OP_RETURN:
+            emit("jmp .Lreturn_" + func);
+            break;
+
+        case ILOCImage.OP_PRINT_INT:
+            emit("movl " + operand(s) + ", %ecx");
+            saveRegisters(true);
+            emit("movl %ecx, %esi");
+            emit("leaq .Lfmt_int(%rip), %rdi");
+            emit("xorl %eax, %eax");
+            emit("call printf@PLT");
+            restoreRegisters(true);
+            break;
+        case ILOCImage.OP_PRINT_STR:
+            saveRegisters(true);
+            emit("leaq " + string(image.strings[image.values[s]]) + "(%rip), %rsi");
+            emit("leaq .Lfmt_str(%rip), %rdi");
+            emit("xorl %eax, %eax");
+            emit("call printf@PLT");
+            restoreRegisters(true);
+            break;
+
+        default:
+            throw new UnsupportedOperationException("unsupported instruction: " +
+                    image.code[pc].toString());
+        }
+    }
+
+    private void arithmetic(int s, String insn)
+    {
+        emit("movl " + operand(s) + ", %ecx");
+        emit(insn + " " + operand(s+1) + ", %ecx");
+        emit("movl %ecx, " + destination(s+2));
+    }
+
+    private void compare(int s, String set)
+    {
+        emit("movl " + operand(s) + ", %ecx");
+        emit("cmpl " + operand(s+1) + ", %ecx");
+        emit(set + " %cl");
+        emit("movzbl %cl, %ecx");
+        emit("movl %ecx, " + destination(s+2));
+    }
+
+    /**
+     * Store the value of an operand slot to an address expression (which may
+     * use {@code %rcx})
+     */
+    private void store(int slot, String address)
+    {
+        if (isMemory(slot)) {
+            emit("movl " + operand(slot) + ", %edx");
+            emit("movl %edx, " + address);
+        } else {
+            emit("movl " + operand(slot) + ", " + address);
+        }
+    }
+
+    /**
+     * Address expression for {@code %ecx} plus an offset operand slot
+     */
+    private String address(int slot)
+    {
+        if (image.kinds[slot] == ILOCImage.INT_CONST) {
+            return image.values[slot] + "(%r15,%rcx)";
+        }
+        emit("addl " + operand(slot) + ", %ecx");
+        return "(%r15,%rcx)";
+    }
+
+    /**
+     * Save (or restore) the caller-saved ILOC registers of the current
+     * function, and RET if it is about to be clobbered by the C library
+     */
+    private void saveRegisters(boolean ret)
+    {
+        if (ret) {
+            emit("movl %eax, 0(%rsp)");
+        }
+        for (int i = CALLEE_SAVED; i < regCount && i < REGISTERS.length; i++) {
+            emit("movl " + REGISTERS[i] + ", " + (4 * (i - CALLEE_SAVED + 1)) + "(%rsp)");
+        }
+    }
+
+    private void restoreRegisters(boolean ret)
+    {
+        if (ret) {
+            emit("movl 0(%rsp), %eax");
+        }
+        for (int i = CALLEE_SAVED; i < regCount && i < REGISTERS.length; i++) {
+            emit("movl " + (4 * (i - CALLEE_SAVED + 1)) + "(%rsp), " + REGISTERS[i]);
+        }
+    }
+
+    private int register(int slot)
+    {
+        int idx = image.values[slot] - regBase;
+        if (idx < 0 || idx >= regCount) {
+            throw new UnsupportedOperationException("register out of range");
+        }
+        return idx;
+    }
+
+    /**
+     * True if an operand slot is a register that lives in the native frame
+     */
+    private boolean isMemory(int slot)
+    {
+        return image.kinds[slot] == ILOCImage.VIRTUAL_REG &&
+            register(slot) >= REGISTERS.length;
+    }
+
+    /**
+     * Assembly operand for a source operand slot
+     */
+    private String operand(int slot)
+    {
+        switch (image.kinds[slot]) {
+        case ILOCImage.VIRTUAL_REG:
+            int idx = register(slot);
+            if (idx < REGISTERS.length) {
+                return REGISTERS[idx];
+            }
+            return (SAVE_AREA + 4 * (idx - REGISTERS.length)) + "(%rsp)";
+        case ILOCImage.INT_CONST:
+            return "$" + image.values[slot];
+        case ILOCImage.BASE_REG:
+            return "%ebp";
+        case ILOCImage.RETURN_REG:
+            return "%eax";
+        default:
+            throw new UnsupportedOperationException("invalid source operand");
+        }
+    }
+
+    /**
+     * Assembly operand for a destination operand slot
+     */
+    private String destination(int slot)
+    {
+        if (image.kinds[slot] == ILOCImage.INT_CONST) {
+            throw new UnsupportedOperationException("invalid destination operand");
+        }
+        return operand(slot);
+    }
+}
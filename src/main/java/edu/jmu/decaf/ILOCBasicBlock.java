@@ -4,7 +4,6 @@ import java.util.*;
 
 public class ILOCBasicBlock
 {
-    public static int nextID = 1;
     public int id;
 
     public List<ILOCBasicBlock> sources;
@@ -14,7 +13,7 @@ public class ILOCBasicBlock
 
     public static ILOCBasicBlock newBasicBlock()
     {
-        return new ILOCBasicBlock(nextID++);
+        return new ILOCBasicBlock(CompilationContext.current().newBasicBlockID());
     }
     
     private ILOCBasicBlock(int id)
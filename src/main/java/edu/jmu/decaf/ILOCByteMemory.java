@@ -0,0 +1,51 @@
+package edu.jmu.decaf;
+
+import java.util.*;
+
+/**
+ * Simple byte-array implementation of {@link ILOCMemory}. Every word access
+ * is assembled one byte at a time.
+ */
+public class ILOCByteMemory implements ILOCMemory
+{
+    private byte memory[];
+
+    /**
+     * Create a new zero-filled memory
+     * @param size Size (in bytes)
+     */
+    public ILOCByteMemory(int size)
+    {
+        this.memory = new byte[size];
+    }
+
+    public int size()
+    {
+        return memory.length;
+    }
+
+    public void clear()
+    {
+        Arrays.fill(memory, (byte)0);
+    }
+
+    public void storeInt(int address, int value)
+    {
+        int offset = (Symbol.WORD_SIZE-1) * 8;
+        for (int i = 0; i < Symbol.WORD_SIZE; i++) {
+            memory[address+i] = (byte)(value >> offset);
+            offset -= 8;
+        }
+    }
+
+    public int loadInt(int address)
+    {
+        int offset = (Symbol.WORD_SIZE-1) * 8;
+        int value = 0;
+        for (int i = 0; i < Symbol.WORD_SIZE; i++) {
+            value |= (memory[address+i] & 0xFF) << offset;
+            offset -= 8;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,450 @@
+package edu.jmu.decaf;
+
+import java.util.*;
+
+/**
+ * Translates the body of a single function in a linked {@link ILOCImage} into
+ * JVM bytecode. Virtual registers become int locals and jumps become JVM
+ * branches; everything that touches machine state outside the function
+ * (memory, the RET register, parameter passing, calls, returns, and output)
+ * is delegated to subclasses, so the same translation can target either the
+ * {@link ILOCInterpreter} runtime ({@link ILOCJITCompiler}) or a standalone
+ * class ({@link ILOCClassGenerator}).
+ *
+ * Translation fails with an {@link UnsupportedOperationException} if the
+ * function uses anything that cannot be compiled (e.g., writes to BP, jumps
+ * into other functions, or unresolved call targets).
+ */
+abstract class ILOCBytecodeTranslator
+{
+    /**
+     * Upper bound on the operand stack depth of translated code (assuming
+     * that no hook pushes more than two extra values)
+     */
+    public static final int MAX_STACK = 6;
+
+    protected final ILOCImage image;
+    protected final int func;
+    protected final ClassFileEmitter.Code c;
+    protected final int start, end;
+    protected final int regBase, regCount;
+    protected final int bpLocal, firstRegLocal;
+
+    private final int[] labels;
+    private final List<Integer> jumpTargets;
+
+    /**
+     * Prepare to translate a function
+     * @param image Linked program image
+     * @param func Function index
+     * @param c Method body to emit into
+     * @param bpLocal Local that holds the function's base pointer
+     * @param firstRegLocal Local for the function's lowest virtual register
+     */
+    protected ILOCBytecodeTranslator(ILOCImage image, int func,
+            ClassFileEmitter.Code c, int bpLocal, int firstRegLocal)
+    {
+        this.image = image;
+        this.func = func;
+        this.c = c;
+        this.start = image.functionEntries[func] + 1;
+        this.end = (func + 1 < image.functionEntries.length ?
+                image.functionEntries[func+1] : image.size());
+        this.regBase = image.functionRegBases[func];
+        this.regCount = image.functionRegCounts[func];
+        this.bpLocal = bpLocal;
+        this.firstRegLocal = firstRegLocal;
+        if (firstRegLocal + regCount > 0xFFFF) {
+            throw new UnsupportedOperationException("too many registers");
+        }
+
+        // find jump targets
+        this.labels = new int[end - start + 1];
+        this.jumpTargets = new ArrayList<Integer>();
+        Arrays.fill(labels, -1);
+        for (int pc = start; pc < end; pc++) {
+            for (int k = 0; k < ILOCImage.SLOTS; k++) {
+                int slot = pc * ILOCImage.SLOTS + k;
+                if (image.kinds[slot] != ILOCImage.JUMP_TARGET) {
+                    continue;
+                }
+                int target = image.values[slot];
+                if (target < start || target > end) {
+                    throw new UnsupportedOperationException("jump out of function");
+                }
+                if (labels[target - start] < 0) {
+                    labels[target - start] = c.newLabel();
+                    jumpTargets.add(Integer.valueOf(target));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the code indices of all jump targets in the function
+     * @return Jump targets (in order of first use)
+     */
+    public List<Integer> getJumpTargets()
+    {
+        return jumpTargets;
+    }
+
+    /**
+     * Returns the bytecode label for a jump target
+     * @param target Code index
+     * @return Label ID
+     */
+    public int getLabel(int target)
+    {
+        return labels[target - start];
+    }
+
+    /**
+     * Returns the number of locals used by translated code
+     * @return Local variable slot count
+     */
+    public int getMaxLocals()
+    {
+        return firstRegLocal + regCount;
+    }
+
+    /**
+     * Emit code that sets every virtual register local to zero (so that all
+     * of them are definitely assigned for the verifier)
+     */
+    public void clearRegisters()
+    {
+        for (int r = 0; r < regCount; r++) {
+            c.op(ClassFileEmitter.ICONST_0);
+            c.istore(firstRegLocal + r);
+        }
+    }
+
+    /**
+     * Translate all instructions of the function. Falling off the end of the
+     * function throws an exception of the given class.
+     * @param errorClass Internal name of an exception class with a
+     *                   {@code (String)} constructor
+     */
+    public void translateBody(String errorClass)
+    {
+        for (int pc = start; pc < end; pc++) {
+            if (labels[pc - start] >= 0) {
+                c.bind(labels[pc - start]);
+            }
+            translate(pc);
+        }
+        if (labels[end - start] >= 0) {
+            c.bind(labels[end - start]);
+        }
+        c.type(ClassFileEmitter.NEW, errorClass);
+        c.op(ClassFileEmitter.DUP);
+        c.pushString("Reached end of function without return: " +
+                image.functionNames[func]);
+        c.invoke(ClassFileEmitter.INVOKESPECIAL, errorClass, "<init>",
+                "(Ljava/lang/String;)V");
+        c.op(ClassFileEmitter.ATHROW);
+    }
+
+    // hooks for machine state outside the function
+
+    /** Push the RET register */
+    protected abstract void loadReturn();
+
+    /** Emit anything that must precede the value stored to RET */
+    protected abstract void beginStoreReturn();
+
+    /** Pop a value into RET */
+    protected abstract void endStoreReturn();
+
+    /** Emit anything that must precede the address of a memory load */
+    protected abstract void beginLoadMemory();
+
+    /** Replace the address on the stack by the word loaded from it */
+    protected abstract void endLoadMemory();
+
+    /** Emit anything that must precede the address of a memory store */
+    protected abstract void beginStoreMemory();
+
+    /** Emit anything that must follow the address of a memory store */
+    protected abstract void storeMemoryAddress();
+
+    /** Pop a value and store it to the address below it */
+    protected abstract void endStoreMemory();
+
+    /** Emit anything that must precede a pushed parameter */
+    protected abstract void beginPush();
+
+    /** Pop a value and push it on the ILOC stack */
+    protected abstract void endPush();
+
+    /**
+     * Call a function
+     * @param callee Function index
+     */
+    protected abstract void call(int callee);
+
+    /** Tear down the activation and return */
+    protected abstract void returnFromFunction();
+
+    /** Emit anything that must precede a printed integer */
+    protected abstract void beginPrintInt();
+
+    /** Pop a value and print it */
+    protected abstract void endPrintInt();
+
+    /**
+     * Print a string constant
+     * @param value String to print
+     */
+    protected abstract void printString(String value);
+
+    /**
+     * Emit anything that must run before a backward jump (e.g., fuel
+     * accounting); does nothing by default
+     * @param length Number of instructions in the loop body
+     */
+    protected void backEdge(int length)
+    {
+    }
+
+    /**
+     * Emit bytecode for a single instruction
+     * @param pc Code index
+     */
+    protected void translate(int pc)
+    {
+        int s = pc * ILOCImage.SLOTS;
+        switch (image.opcodes[pc]) {
+
+        case ILOCImage.OP_NOP:
+            break;
+
+        case ILOCImage.OP_MOVE:
+            beginStore(s+1);
+            load(s);
+            endStore(s+1);
+            break;
+
+        case ILOCImage.OP_LOAD:
+            beginStore(s+1);
+            beginLoadMemory();
+            load(s);
+            endLoadMemory();
+            endStore(s+1);
+            break;
+        case ILOCImage.OP_LOAD_AO:
+            beginStore(s+2);
+            beginLoadMemory();
+            load(s);
+            load(s+1);
+            c.op(ClassFileEmitter.IADD);
+            endLoadMemory();
+            endStore(s+2);
+            break;
+
+        case ILOCImage.OP_STORE:
+            beginStoreMemory();
+            load(s+1);
+            storeMemoryAddress();
+            load(s);
+            endStoreMemory();
+            break;
+        case ILOCImage.OP_STORE_AO:
+            beginStoreMemory();
+            load(s+1);
+            load(s+2);
+            c.op(ClassFileEmitter.IADD);
+            storeMemoryAddress();
+            load(s);
+            endStoreMemory();
+            break;
+
+        case ILOCImage.OP_ADD:  arithmetic(s, ClassFileEmitter.IADD); break;
+        case ILOCImage.OP_SUB:  arithmetic(s, ClassFileEmitter.ISUB); break;
+        case ILOCImage.OP_MULT: arithmetic(s, ClassFileEmitter.IMUL); break;
+        case ILOCImage.OP_DIV:  arithmetic(s, ClassFileEmitter.IDIV); break;
+
+        case ILOCImage.OP_AND:
+        case ILOCImage.OP_OR: {
+            boolean and = (image.opcodes[pc] == ILOCImage.OP_AND);
+            int shortCircuit = c.newLabel();
+            int done = c.newLabel();
+            beginStore(s+2);
+            load(s);
+            c.jump(and ? ClassFileEmitter.IFEQ : ClassFileEmitter.IFNE, shortCircuit);
+            load(s+1);
+            c.jump(and ? ClassFileEmitter.IFEQ : ClassFileEmitter.IFNE, shortCircuit);
+            c.op(and ? ClassFileEmitter.ICONST_1 : ClassFileEmitter.ICONST_0);
+            c.jump(ClassFileEmitter.GOTO, done);
+            c.bind(shortCircuit);
+            c.op(and ? ClassFileEmitter.ICONST_0 : ClassFileEmitter.ICONST_1);
+            c.bind(done);
+            endStore(s+2);
+            break;
+        }
+
+        case ILOCImage.OP_NOT:
+            beginStore(s+1);
+            load(s);
+            bool(ClassFileEmitter.IFEQ);
+            endStore(s+1);
+            break;
+        case ILOCImage.OP_NEG:
+            beginStore(s+1);
+            load(s);
+            c.op(ClassFileEmitter.INEG);
+            endStore(s+1);
+            break;
+
+        case ILOCImage.OP_JUMP:
+            if (image.values[s] <= pc) {
+                backEdge(pc - image.values[s] + 1);
+            }
+            c.jump(ClassFileEmitter.GOTO, label(s));
+            break;
+        case ILOCImage.OP_CBR:
+            if (Math.min(image.values[s+1], image.values[s+2]) <= pc) {
+                backEdge(pc - Math.min(image.values[s+1], image.values[s+2]) + 1);
+            }
+            load(s);
+            c.jump(ClassFileEmitter.IFNE, label(s+1));
+            c.jump(ClassFileEmitter.GOTO, label(s+2));
+            break;
+
+        case ILOCImage.OP_CMP_LT: compare(s, ClassFileEmitter.IF_ICMPLT); break;
+        case ILOCImage.OP_CMP_LE: compare(s, ClassFileEmitter.IF_ICMPLE); break;
+        case ILOCImage.OP_CMP_EQ: compare(s, ClassFileEmitter.IF_ICMPEQ); break;
+        case ILOCImage.OP_CMP_GE: compare(s, ClassFileEmitter.IF_ICMPGE); break;
+        case ILOCImage.OP_CMP_GT: compare(s, ClassFileEmitter.IF_ICMPGT); break;
+        case ILOCImage.OP_CMP_NE: compare(s, ClassFileEmitter.IF_ICMPNE); break;
+
+        case ILOCImage.OP_PARAM:
+            beginPush();
+            load(s);
+            endPush();
+            break;
+
+        case ILOCImage.OP_CALL:
+            if (image.kinds[s] != ILOCImage.CALL_TARGET || image.values[s] < 0) {
+                throw new UnsupportedOperationException("unresolved call");
+            }
+            call(image.values[s]);
+            break;
+
+        case ILOCImage.OP_RETURN:
+            returnFromFunction();
+            break;
+
+        case ILOCImage.OP_PRINT_INT:
+            beginPrintInt();
+            load(s);
+            endPrintInt();
+            break;
+        case ILOCImage.OP_PRINT_STR:
+            printString(image.strings[image.values[s]]);
+            break;
+
+        default:
+            throw new UnsupportedOperationException("unsupported instruction");
+        }
+    }
+
+    private void arithmetic(int s, int opcode)
+    {
+        beginStore(s+2);
+        load(s);
+        load(s+1);
+        c.op(opcode);
+        endStore(s+2);
+    }
+
+    private void compare(int s, int opcode)
+    {
+        beginStore(s+2);
+        load(s);
+        load(s+1);
+        bool(opcode);
+        endStore(s+2);
+    }
+
+    /**
+     * Convert the result of a conditional branch instruction into 1/0
+     * @param opcode Branch opcode that is taken if the result is true
+     */
+    private void bool(int opcode)
+    {
+        int isTrue = c.newLabel();
+        int done = c.newLabel();
+        c.jump(opcode, isTrue);
+        c.op(ClassFileEmitter.ICONST_0);
+        c.jump(ClassFileEmitter.GOTO, done);
+        c.bind(isTrue);
+        c.op(ClassFileEmitter.ICONST_1);
+        c.bind(done);
+    }
+
+    private int label(int slot)
+    {
+        return labels[image.values[slot] - start];
+    }
+
+    private int local(int slot)
+    {
+        int idx = image.values[slot] - regBase;
+        if (idx < 0 || idx >= regCount) {
+            throw new UnsupportedOperationException("register out of range");
+        }
+        return firstRegLocal + idx;
+    }
+
+    /**
+     * Push the value of an operand slot
+     */
+    private void load(int slot)
+    {
+        switch (image.kinds[slot]) {
+        case ILOCImage.VIRTUAL_REG:
+            c.iload(local(slot));
+            break;
+        case ILOCImage.INT_CONST:
+            c.pushInt(image.values[slot]);
+            break;
+        case ILOCImage.BASE_REG:
+            c.iload(bpLocal);
+            break;
+        case ILOCImage.RETURN_REG:
+            loadReturn();
+            break;
+        default:
+            throw new UnsupportedOperationException("invalid source operand");
+        }
+    }
+
+    /**
+     * Emit anything that must precede the value stored to an operand slot
+     */
+    private void beginStore(int slot)
+    {
+        if (image.kinds[slot] == ILOCImage.RETURN_REG) {
+            beginStoreReturn();
+        }
+    }
+
+    /**
+     * Pop a value and store it to an operand slot
+     */
+    private void endStore(int slot)
+    {
+        switch (image.kinds[slot]) {
+        case ILOCImage.VIRTUAL_REG:
+            c.istore(local(slot));
+            break;
+        case ILOCImage.RETURN_REG:
+            endStoreReturn();
+            break;
+        default:
+            throw new UnsupportedOperationException("invalid destination operand");
+        }
+    }
+}
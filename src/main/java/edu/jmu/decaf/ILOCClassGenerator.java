@@ -0,0 +1,373 @@
+package edu.jmu.decaf;
+
+import java.io.*;
+import java.util.jar.*;
+
+/**
+ * Ahead-of-time backend that translates an entire {@link ILOCProgram} into a
+ * single standalone JVM class (which depends only on the JDK). Running the
+ * class's {@code main} method runs the program and then prints its result in
+ * the same format as {@link DecafCompiler}:
+ *
+ * <pre>
+ * java -cp &lt;dir or jar&gt; &lt;ClassName&gt;
+ * java -jar &lt;jar&gt;
+ * </pre>
+ *
+ * The generated class contains:
+ * <ul>
+ * <li>{@code static int[] mem} - the data/stack region (one element per
+ *     word; all memory accesses must be word-aligned)</li>
+ * <li>{@code static int sp, ret} - the SP and RET registers</li>
+ * <li>one {@code static void <name>(int callerBP)} method per ILOC function;
+ *     the base pointer and all virtual registers are JVM locals</li>
+ * <li>{@code public static int run()} - reset memory and registers, call
+ *     {@code main}, and return RET</li>
+ * <li>{@code $push} and {@code $checkStack} helpers (the '$' keeps them from
+ *     clashing with Decaf function names)</li>
+ * <li>{@code public static void main(String[])}</li>
+ * </ul>
+ *
+ * Stack frames have the same layout as in the {@link ILOCInterpreter} (a
+ * dummy return address is pushed below the saved BP), so parameters and
+ * locals live at the same offsets. Stack overflow throws a
+ * {@code RuntimeException}.
+ */
+public class ILOCClassGenerator implements ILOCProcessor
+{
+    private static final String ERROR = "java/lang/RuntimeException";
+    private static final String OUT_CLASS = "java/io/PrintStream";
+
+    // local variable slots of function methods
+    private static final int CALLER_BP_LOCAL = 0;
+    private static final int BP_LOCAL = 1;
+    private static final int FIRST_REG_LOCAL = 2;
+
+    private final String className;
+    private final int memSize;
+    private ILOCProgram currentProgram;
+    private ILOCImage image;
+    private byte[] classBytes;
+
+    /**
+     * Create a new generator with the default memory size
+     * @param className Binary name of the class to generate (e.g.,
+     *                  {@code Main} or {@code com.example.Main})
+     */
+    public ILOCClassGenerator(String className)
+    {
+        this(className, ILOCInterpreter.DEFAULT_MEM_SIZE);
+    }
+
+    /**
+     * Create a new generator
+     * @param className Binary name of the class to generate
+     * @param memSize Size of the data/stack region (in bytes); must be a
+     *                multiple of the word size
+     */
+    public ILOCClassGenerator(String className, int memSize)
+    {
+        if (memSize <= 0 || memSize % Symbol.WORD_SIZE != 0) {
+            throw new IllegalArgumentException("Invalid memory size: " + memSize);
+        }
+        this.className = className;
+        this.memSize = memSize;
+        this.classBytes = null;
+    }
+
+    /**
+     * Translate a program into a class
+     * @param program Program to translate
+     * @throws UnsupportedOperationException If the program contains
+     *         instructions that cannot be translated
+     * @throws IllegalStateException If a function is too large for a JVM
+     *         method
+     */
+    public void process(ILOCProgram program)
+    {
+        currentProgram = program;
+        image = ILOCImage.link(program);
+        if (image.getFunctionID("main") < 0) {
+            throw new UnsupportedOperationException("Undefined function: main");
+        }
+
+        String name = internalName();
+        ClassFileEmitter cf = new ClassFileEmitter(name, "java/lang/Object");
+        cf.addField(ClassFileEmitter.ACC_STATIC, "mem", "[I");
+        cf.addField(ClassFileEmitter.ACC_STATIC, "sp", "I");
+        cf.addField(ClassFileEmitter.ACC_STATIC, "ret", "I");
+        cf.addDefaultConstructor();
+        emitMain(cf);
+        emitRun(cf);
+        emitPush(cf);
+        emitCheckStack(cf);
+        for (int f = 0; f < image.functionNames.length; f++) {
+            emitFunction(cf, f);
+        }
+        classBytes = cf.toByteArray();
+    }
+
+    /**
+     * Returns the generated class file
+     * @return Class file contents (or null if no program has been processed)
+     */
+    public byte[] getClassBytes()
+    {
+        return classBytes;
+    }
+
+    /**
+     * Returns the binary name of the generated class
+     * @return Class name
+     */
+    public String getClassName()
+    {
+        return className;
+    }
+
+    /**
+     * Write the generated class into a class path directory (creating
+     * package subdirectories as necessary)
+     * @param dir Class path root
+     * @return Class file that was written
+     * @throws IOException Thrown if the file cannot be written
+     */
+    public File writeClassFile(File dir) throws IOException
+    {
+        File file = new File(dir, internalName() + ".class");
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(classBytes);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * Write the generated class into an executable jar file
+     * @param file Jar file
+     * @throws IOException Thrown if the file cannot be written
+     */
+    public void writeJar(File file) throws IOException
+    {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, className);
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(file), manifest);
+        try {
+            out.putNextEntry(new JarEntry(internalName() + ".class"));
+            out.write(classBytes);
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+    }
+
+    private String internalName()
+    {
+        return className.replace('.', '/');
+    }
+
+    /**
+     * {@code main(String[])}: run the program and print the result
+     */
+    private void emitMain(ClassFileEmitter cf)
+    {
+        ClassFileEmitter.Code c = cf.addMethod(
+                ClassFileEmitter.ACC_PUBLIC | ClassFileEmitter.ACC_STATIC,
+                "main", "([Ljava/lang/String;)V");
+        c.invoke(ClassFileEmitter.INVOKESTATIC, internalName(), "run", "()I");
+        c.istore(1);
+        c.field(ClassFileEmitter.GETSTATIC, "java/lang/System", "out", "L" + OUT_CLASS + ";");
+        c.pushString("\nResult: ");
+        c.invoke(ClassFileEmitter.INVOKEVIRTUAL, OUT_CLASS, "print", "(Ljava/lang/String;)V");
+        c.field(ClassFileEmitter.GETSTATIC, "java/lang/System", "out", "L" + OUT_CLASS + ";");
+        c.iload(1);
+        c.invoke(ClassFileEmitter.INVOKEVIRTUAL, OUT_CLASS, "println", "(I)V");
+        c.op(ClassFileEmitter.RETURN);
+        c.finish(2, 2);
+    }
+
+    /**
+     * {@code run()}: reset the machine state, call main, and return RET
+     */
+    private void emitRun(ClassFileEmitter cf)
+    {
+        String name = internalName();
+        ClassFileEmitter.Code c = cf.addMethod(
+                ClassFileEmitter.ACC_PUBLIC | ClassFileEmitter.ACC_STATIC,
+                "run", "()I");
+        c.pushInt(memSize / Symbol.WORD_SIZE);
+        c.newIntArray();
+        c.field(ClassFileEmitter.PUTSTATIC, name, "mem", "[I");
+        c.pushInt(memSize);
+        c.field(ClassFileEmitter.PUTSTATIC, name, "sp", "I");
+        c.pushInt(-1);
+        c.field(ClassFileEmitter.PUTSTATIC, name, "ret", "I");
+        c.field(ClassFileEmitter.GETSTATIC, name, "sp", "I");
+        c.invoke(ClassFileEmitter.INVOKESTATIC, name, "main", "(I)V");
+        c.field(ClassFileEmitter.GETSTATIC, name, "ret", "I");
+        c.op(ClassFileEmitter.IRETURN);
+        c.finish(2, 0);
+    }
+
+    /**
+     * {@code $push(int)}: push a word on the ILOC stack
+     */
+    private void emitPush(ClassFileEmitter cf)
+    {
+        String name = internalName();
+        ClassFileEmitter.Code c = cf.addMethod(ClassFileEmitter.ACC_STATIC, "$push", "(I)V");
+        c.field(ClassFileEmitter.GETSTATIC, name, "sp", "I");
+        c.pushInt(Symbol.WORD_SIZE);
+        c.op(ClassFileEmitter.ISUB);
+        c.field(ClassFileEmitter.PUTSTATIC, name, "sp", "I");
+        c.invoke(ClassFileEmitter.INVOKESTATIC, name, "$checkStack", "()V");
+        c.field(ClassFileEmitter.GETSTATIC, name, "mem", "[I");
+        c.field(ClassFileEmitter.GETSTATIC, name, "sp", "I");
+        c.op(ClassFileEmitter.ICONST_2);
+        c.op(ClassFileEmitter.ISHR);
+        c.iload(0);
+        c.op(ClassFileEmitter.IASTORE);
+        c.op(ClassFileEmitter.RETURN);
+        c.finish(3, 1);
+    }
+
+    /**
+     * {@code $checkStack()}: trap if the stack has grown into static data
+     */
+    private void emitCheckStack(ClassFileEmitter cf)
+    {
+        ClassFileEmitter.Code c = cf.addMethod(ClassFileEmitter.ACC_STATIC, "$checkStack", "()V");
+        int ok = c.newLabel();
+        c.field(ClassFileEmitter.GETSTATIC, internalName(), "sp", "I");
+        c.pushInt(currentProgram.staticSize);
+        c.jump(ClassFileEmitter.IF_ICMPGE, ok);
+        c.type(ClassFileEmitter.NEW, ERROR);
+        c.op(ClassFileEmitter.DUP);
+        c.pushString("Stack overflow");
+        c.invoke(ClassFileEmitter.INVOKESPECIAL, ERROR, "<init>", "(Ljava/lang/String;)V");
+        c.op(ClassFileEmitter.ATHROW);
+        c.bind(ok);
+        c.op(ClassFileEmitter.RETURN);
+        c.finish(3, 0);
+    }
+
+    /**
+     * {@code <name>(int callerBP)}: a single ILOC function
+     */
+    private void emitFunction(ClassFileEmitter cf, int func)
+    {
+        String name = internalName();
+        ClassFileEmitter.Code c = cf.addMethod(ClassFileEmitter.ACC_STATIC,
+                image.functionNames[func], "(I)V");
+        Translator t = new Translator(image, func, c);
+
+        // prologue: push dummy return address and caller's BP, set BP, and
+        // allocate locals
+        c.op(ClassFileEmitter.ICONST_0);
+        c.invoke(ClassFileEmitter.INVOKESTATIC, name, "$push", "(I)V");
+        c.iload(CALLER_BP_LOCAL);
+        c.invoke(ClassFileEmitter.INVOKESTATIC, name, "$push", "(I)V");
+        c.field(ClassFileEmitter.GETSTATIC, name, "sp", "I");
+        c.op(ClassFileEmitter.DUP);
+        c.istore(BP_LOCAL);
+        if (image.functionLocalSizes[func] != 0) {
+            c.pushInt(image.functionLocalSizes[func]);
+            c.op(ClassFileEmitter.ISUB);
+            c.field(ClassFileEmitter.PUTSTATIC, name, "sp", "I");
+            c.invoke(ClassFileEmitter.INVOKESTATIC, name, "$checkStack", "()V");
+        } else {
+            c.op(ClassFileEmitter.POP);
+        }
+        t.clearRegisters();
+
+        t.translateBody(ERROR);
+        c.finish(ILOCBytecodeTranslator.MAX_STACK, t.getMaxLocals());
+    }
+
+    /**
+     * Translator that runs against the static state of the generated class
+     */
+    private class Translator extends ILOCBytecodeTranslator
+    {
+        public Translator(ILOCImage image, int func, ClassFileEmitter.Code c)
+        {
+            super(image, func, c, BP_LOCAL, FIRST_REG_LOCAL);
+        }
+
+        private void getStatic(String field, String desc)
+        {
+            c.field(ClassFileEmitter.GETSTATIC, internalName(), field, desc);
+        }
+
+        private void wordIndex()
+        {
+            c.op(ClassFileEmitter.ICONST_2);
+            c.op(ClassFileEmitter.ISHR);
+        }
+
+        private void getOut()
+        {
+            c.field(ClassFileEmitter.GETSTATIC, "java/lang/System", "out", "L" + OUT_CLASS + ";");
+        }
+
+        protected void loadReturn()         { getStatic("ret", "I"); }
+        protected void beginStoreReturn()   { }
+        protected void endStoreReturn()
+        {
+            c.field(ClassFileEmitter.PUTSTATIC, internalName(), "ret", "I");
+        }
+
+        protected void beginLoadMemory()    { getStatic("mem", "[I"); }
+        protected void endLoadMemory()
+        {
+            wordIndex();
+            c.op(ClassFileEmitter.IALOAD);
+        }
+
+        protected void beginStoreMemory()   { getStatic("mem", "[I"); }
+        protected void storeMemoryAddress() { wordIndex(); }
+        protected void endStoreMemory()     { c.op(ClassFileEmitter.IASTORE); }
+
+        protected void beginPush()          { }
+        protected void endPush()
+        {
+            c.invoke(ClassFileEmitter.INVOKESTATIC, internalName(), "$push", "(I)V");
+        }
+
+        protected void call(int callee)
+        {
+            c.iload(BP_LOCAL);
+            c.invoke(ClassFileEmitter.INVOKESTATIC, internalName(),
+                    image.functionNames[callee], "(I)V");
+        }
+
+        protected void returnFromFunction()
+        {
+            // pop locals, saved BP, return address, and parameters
+            c.iload(BP_LOCAL);
+            c.pushInt(2 * Symbol.WORD_SIZE + image.functionParamSizes[func]);
+            c.op(ClassFileEmitter.IADD);
+            c.field(ClassFileEmitter.PUTSTATIC, internalName(), "sp", "I");
+            c.op(ClassFileEmitter.RETURN);
+        }
+
+        protected void beginPrintInt()      { getOut(); }
+        protected void endPrintInt()
+        {
+            c.invoke(ClassFileEmitter.INVOKEVIRTUAL, OUT_CLASS, "print", "(I)V");
+        }
+
+        protected void printString(String value)
+        {
+            getOut();
+            c.pushString(value);
+            c.invoke(ClassFileEmitter.INVOKEVIRTUAL, OUT_CLASS, "print", "(Ljava/lang/String;)V");
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package edu.jmu.decaf;
+
+/**
+ * Superclass of all ILOC functions that have been compiled to JVM bytecode by
+ * {@link ILOCJITCompiler}. Compiled code runs inside an activation that has
+ * already been set up by the {@link ILOCInterpreter} (and the interpreter
+ * tears it down again afterwards); it only implements the function body.
+ */
+public abstract class ILOCCompiledFunction
+{
+    /**
+     * Run the function body until it returns
+     * @param m Interpreter that owns the activation (used for memory
+     *          accesses, calls, and output)
+     * @param regs Register window of the activation
+     * @param entry Zero to start at the beginning of the function; otherwise,
+     *              the code index of a jump target at which to resume an
+     *              activation that was started by the interpreter (its
+     *              registers are loaded from {@code regs})
+     */
+    public abstract void invoke(ILOCInterpreter m, int[] regs, int entry);
+}
@@ -34,7 +34,7 @@ public abstract class ILOCGenerator extends DefaultASTVisitor
     @Override
     public void postVisit(ASTProgram node)
     {
-        SymbolTable table = (SymbolTable)node.attributes.get("symbolTable");
+        SymbolTable table = node.getSymbolTable();
         for (Symbol s : table.getSymbols()) {
             try {
                 program.staticSymbols.insert(s.name, s);
@@ -45,12 +45,12 @@ public abstract class ILOCGenerator extends DefaultASTVisitor
                                 // generation pass
             }
         }
-        program.staticSize = ((Integer)node.attributes.get("staticSize")).intValue();
+        program.staticSize = node.getStaticSize();
 
         for (ASTFunction func : node.functions)
         {
             ILOCFunction ilocFunc = new ILOCFunction(DecafAnalysis.lookupSymbol(node, func.name));
-            ilocFunc.localSize = ((Integer)func.attributes.get("localSize")).intValue();
+            ilocFunc.localSize = func.getLocalSize();
             program.functions.add(ilocFunc);
             for (ILOCInstruction insn : getCode(func)) {
                 ilocFunc.getInstructions().add(insn);
@@ -66,13 +66,12 @@ public abstract class ILOCGenerator extends DefaultASTVisitor
      */
     protected List<ILOCInstruction> getCode(ASTNode node)
     {
-        if (node.attributes.containsKey("code")) {
-            return (ArrayList)(node.attributes.get("code"));
-        } else {
-            List<ILOCInstruction> code = new ArrayList<ILOCInstruction>();
-            node.attributes.put("code", code);
-            return code;
+        List<ILOCInstruction> code = node.getCode();
+        if (code == null) {
+            code = new ArrayList<ILOCInstruction>();
+            node.setCode(code);
         }
+        return code;
     }
 
     /**
@@ -83,9 +82,6 @@ public abstract class ILOCGenerator extends DefaultASTVisitor
      */
     protected void emit(ASTNode node, ILOCInstruction insn)
     {
-        if (!node.attributes.containsKey("code")) {
-            node.attributes.put("code", new ArrayList<ILOCInstruction>());
-        }
         getCode(node).add(insn);
     }
 
@@ -172,7 +168,7 @@ public abstract class ILOCGenerator extends DefaultASTVisitor
      */
     protected void setTempReg(ASTNode node, ILOCOperand reg)
     {
-        node.attributes.put("reg", reg);
+        node.setReg(reg);
     }
 
     /**
@@ -183,8 +179,8 @@ public abstract class ILOCGenerator extends DefaultASTVisitor
      */
     protected ILOCOperand getTempReg(ASTNode node)
     {
-        assert(node.attributes.containsKey("reg"));
-        return (ILOCOperand)node.attributes.get("reg");
+        assert(node.getReg() != null);
+        return node.getReg();
     }
 
     /**
@@ -309,7 +305,7 @@ public abstract class ILOCGenerator extends DefaultASTVisitor
      */
     protected void addComment(ASTNode node, String text)
     {
-        assert(node.attributes.containsKey("code"));
+        assert(node.getCode() != null);
         List<ILOCInstruction> code = getCode(node);
         code.get(code.size()-1).comment = text;
     }
@@ -0,0 +1,357 @@
+package edu.jmu.decaf;
+
+import java.util.*;
+
+/**
+ * Linked, pre-decoded form of an {@link ILOCProgram} suitable for direct
+ * execution. All functions are collapsed into a single code array; every jump
+ * target is resolved to a code index and every call target is resolved to a
+ * function index, so executing the image never requires hashing, boxing, or
+ * string comparisons.
+ *
+ * Each instruction is decoded into an integer opcode (several ILOC forms with
+ * identical semantics share an opcode) and three operand slots. Operand slot
+ * {@code k} of the instruction at index {@code i} is stored at index
+ * {@code i*SLOTS+k} of the {@code kinds} and {@code values} arrays. The
+ * meaning of each value depends on the operand kind:
+ *
+ * <ul>
+ * <li>{@code VIRTUAL_REG} - register ID</li>
+ * <li>{@code INT_CONST} - constant value</li>
+ * <li>{@code JUMP_TARGET} - index of the first instruction after the label</li>
+ * <li>{@code CALL_TARGET} - function index (or -1 if undefined)</li>
+ * <li>{@code STR_CONST} - index into the {@code strings} table</li>
+ * </ul>
+ *
+ * Images are never modified after linking.
+ */
+public class ILOCImage
+{
+    /**
+     * Operand slots per instruction
+     */
+    public static final int SLOTS = 3;
+
+    // opcodes
+    public static final int OP_NOP          = 0;
+    public static final int OP_MOVE         = 1;
+    public static final int OP_LOAD         = 2;
+    public static final int OP_LOAD_AO      = 3;
+    public static final int OP_STORE        = 4;
+    public static final int OP_STORE_AO     = 5;
+    public static final int OP_ADD          = 6;
+    public static final int OP_SUB          = 7;
+    public static final int OP_MULT         = 8;
+    public static final int OP_DIV          = 9;
+    public static final int OP_AND          = 10;
+    public static final int OP_OR           = 11;
+    public static final int OP_NOT          = 12;
+    public static final int OP_NEG          = 13;
+    public static final int OP_JUMP         = 14;
+    public static final int OP_CBR          = 15;
+    public static final int OP_CMP_LT       = 16;
+    public static final int OP_CMP_LE       = 17;
+    public static final int OP_CMP_EQ       = 18;
+    public static final int OP_CMP_GE       = 19;
+    public static final int OP_CMP_GT       = 20;
+    public static final int OP_CMP_NE       = 21;
+    public static final int OP_PARAM        = 22;
+    public static final int OP_CALL         = 23;
+    public static final int OP_RETURN       = 24;
+    public static final int OP_PRINT_INT    = 25;
+    public static final int OP_PRINT_STR    = 26;
+    public static final int OP_BAD_PRINT    = 27;
+    public static final int OP_UNHANDLED    = 28;
+
+    // operand kinds
+    public static final int NONE            = 0;
+    public static final int BASE_REG        = 1;
+    public static final int RETURN_REG      = 2;
+    public static final int VIRTUAL_REG     = 3;
+    public static final int INT_CONST       = 4;
+    public static final int JUMP_TARGET     = 5;
+    public static final int CALL_TARGET     = 6;
+    public static final int STR_CONST       = 7;
+
+    /**
+     * Program that this image was linked from
+     */
+    public final ILOCProgram program;
+
+    /**
+     * Original instructions (including a synthesized label at the start of
+     * each function); used only for debug output
+     */
+    public final ILOCInstruction[] code;
+
+    /**
+     * Decoded opcode for each instruction
+     */
+    public final int[] opcodes;
+
+    /**
+     * Operand kinds ({@code SLOTS} per instruction)
+     */
+    public final int[] kinds;
+
+    /**
+     * Operand values ({@code SLOTS} per instruction)
+     */
+    public final int[] values;
+
+    /**
+     * String constant table
+     */
+    public final String[] strings;
+
+    /**
+     * Function names, indexed by function index
+     */
+    public final String[] functionNames;
+
+    /**
+     * Code index of each function's entry label
+     */
+    public final int[] functionEntries;
+
+    /**
+     * Stack frame size (in bytes) for local variables of each function
+     */
+    public final int[] functionLocalSizes;
+
+    /**
+     * Size (in bytes) of the parameters passed to each function
+     */
+    public final int[] functionParamSizes;
+
+    /**
+     * Lowest virtual register ID used by each function
+     */
+    public final int[] functionRegBases;
+
+    /**
+     * Number of virtual register IDs spanned by each function (from its
+     * lowest to its highest register ID, inclusive)
+     */
+    public final int[] functionRegCounts;
+
+    /**
+     * One more than the highest virtual register ID used in the program
+     */
+    public final int numRegisters;
+
+    private final Map<String, Integer> functionIDs;
+
+    private ILOCImage(ILOCProgram program, int size, int numFunctions)
+    {
+        this.program = program;
+        this.code = new ILOCInstruction[size];
+        this.opcodes = new int[size];
+        this.kinds = new int[size * SLOTS];
+        this.values = new int[size * SLOTS];
+        this.functionNames = new String[numFunctions];
+        this.functionEntries = new int[numFunctions];
+        this.functionLocalSizes = new int[numFunctions];
+        this.functionParamSizes = new int[numFunctions];
+        this.functionRegBases = new int[numFunctions];
+        this.functionRegCounts = new int[numFunctions];
+        this.functionIDs = new HashMap<String, Integer>();
+        this.strings = decode(program);
+        this.numRegisters = countRegisters();
+    }
+
+    /**
+     * Link an ILOC program. The program should not be modified while the
+     * image is in use.
+     * @param program Program to link
+     * @return Linked program image
+     */
+    public static ILOCImage link(ILOCProgram program)
+    {
+        int size = 0;
+        for (ILOCFunction func : program.functions) {
+            size += func.getInstructions().size() + 1;
+        }
+        return new ILOCImage(program, size, program.functions.size());
+    }
+
+    /**
+     * Look up a function index by name
+     * @param name Function name
+     * @return Function index, or -1 if there is no such function
+     */
+    public int getFunctionID(String name)
+    {
+        Integer id = functionIDs.get(name);
+        return (id == null ? -1 : id.intValue());
+    }
+
+    /**
+     * Returns the number of instructions in the image
+     * @return Code size
+     */
+    public int size()
+    {
+        return opcodes.length;
+    }
+
+    /**
+     * Collapse code into a single instruction array, resolve targets, and
+     * decode all instructions.
+     * @param program Program to link
+     * @return String constant table
+     */
+    private String[] decode(ILOCProgram program)
+    {
+        Map<Integer, Integer> jumpTargets = new HashMap<Integer, Integer>();
+        List<String> stringTable = new ArrayList<String>();
+
+        // pass 1: lay out code and record label and function locations
+        int idx = 0;
+        int fid = 0;
+        for (ILOCFunction func : program.functions) {
+            String name = func.functionSymbol.name;
+            ILOCOperand[] ops = new ILOCOperand[4];
+            ops[0] = ILOCOperand.newCallLabel(name);
+            functionNames[fid] = name;
+            functionEntries[fid] = idx;
+            functionLocalSizes[fid] = func.localSize;
+            functionParamSizes[fid] = func.functionSymbol.paramTypes.size()
+                * Symbol.WORD_SIZE;
+            if (!functionIDs.containsKey(name)) {
+                functionIDs.put(name, Integer.valueOf(fid));
+            }
+            code[idx++] = new ILOCInstruction(ILOCInstruction.Form.LABEL, ops);
+            for (ILOCInstruction insn : func.getInstructions()) {
+                if (insn.form == ILOCInstruction.Form.LABEL) {
+                    jumpTargets.put(Integer.valueOf(insn.operands[0].id),
+                            Integer.valueOf(idx));
+                }
+                code[idx++] = insn;
+            }
+            fid++;
+        }
+
+        // pass 2: decode
+        for (int i = 0; i < code.length; i++) {
+            ILOCInstruction insn = code[i];
+            opcodes[i] = decode(insn);
+            for (int k = 0; k < SLOTS && k < insn.operands.length; k++) {
+                ILOCOperand op = insn.operands[k];
+                if (op == null) {
+                    continue;
+                }
+                int slot = i * SLOTS + k;
+                switch (op.type) {
+                case BASE_REG:
+                    kinds[slot] = BASE_REG;
+                    break;
+                case RETURN_REG:
+                    kinds[slot] = RETURN_REG;
+                    break;
+                case VIRTUAL_REG:
+                    kinds[slot] = VIRTUAL_REG;
+                    values[slot] = op.id;
+                    break;
+                case INT_CONST:
+                    kinds[slot] = INT_CONST;
+                    values[slot] = op.intConstant;
+                    break;
+                case JUMP_LABEL:
+                    kinds[slot] = JUMP_TARGET;
+                    Integer target = jumpTargets.get(Integer.valueOf(op.id));
+                    values[slot] = (target == null ? -1 : target.intValue() + 1);
+                    break;
+                case CALL_LABEL:
+                    kinds[slot] = CALL_TARGET;
+                    values[slot] = getFunctionID(op.strConstant);
+                    break;
+                case STR_CONST:
+                    kinds[slot] = STR_CONST;
+                    values[slot] = stringTable.size();
+                    stringTable.add(op.strConstant);
+                    break;
+                default:
+                    kinds[slot] = NONE;
+                    break;
+                }
+            }
+        }
+        return stringTable.toArray(new String[stringTable.size()]);
+    }
+
+    /**
+     * Map an ILOC instruction to its (shared) opcode
+     * @param insn Instruction to decode
+     * @return Opcode
+     */
+    static int decode(ILOCInstruction insn)
+    {
+        switch (insn.form) {
+        case LOAD_I:
+        case LOAD_S:
+        case I2I:       return OP_MOVE;
+        case LOAD:      return OP_LOAD;
+        case LOAD_AI:
+        case LOAD_AO:   return OP_LOAD_AO;
+        case STORE:     return OP_STORE;
+        case STORE_AI:
+        case STORE_AO:  return OP_STORE_AO;
+        case ADD:
+        case ADD_I:     return OP_ADD;
+        case SUB:       return OP_SUB;
+        case MULT:
+        case MULT_I:    return OP_MULT;
+        case DIV:       return OP_DIV;
+        case AND:       return OP_AND;
+        case OR:        return OP_OR;
+        case NOT:       return OP_NOT;
+        case NEG:       return OP_NEG;
+        case JUMP:      return OP_JUMP;
+        case CBR:       return OP_CBR;
+        case CMP_LT:    return OP_CMP_LT;
+        case CMP_LE:    return OP_CMP_LE;
+        case CMP_EQ:    return OP_CMP_EQ;
+        case CMP_GE:    return OP_CMP_GE;
+        case CMP_GT:    return OP_CMP_GT;
+        case CMP_NE:    return OP_CMP_NE;
+        case PARAM:     return OP_PARAM;
+        case CALL:      return OP_CALL;
+        case RETURN:    return OP_RETURN;
+        case PRINT:
+            switch (insn.operands[0].type) {
+            case VIRTUAL_REG:   return OP_PRINT_INT;
+            case STR_CONST:     return OP_PRINT_STR;
+            default:            return OP_BAD_PRINT;
+            }
+        case LABEL:
+        case NOP:       return OP_NOP;
+        default:        return OP_UNHANDLED;
+        }
+    }
+
+    /**
+     * Find the range of virtual register IDs used by each function as well as
+     * the highest virtual register ID in the image
+     * @return Number of registers needed to run the image
+     */
+    private int countRegisters()
+    {
+        int maxID = -1;
+        for (int f = 0; f < functionEntries.length; f++) {
+            int end = (f + 1 < functionEntries.length ?
+                    functionEntries[f+1] : opcodes.length);
+            int lo = Integer.MAX_VALUE, hi = -1;
+            for (int slot = functionEntries[f] * SLOTS; slot < end * SLOTS; slot++) {
+                if (kinds[slot] == VIRTUAL_REG) {
+                    lo = Math.min(lo, values[slot]);
+                    hi = Math.max(hi, values[slot]);
+                }
+            }
+            functionRegBases[f] = (hi < 0 ? 0 : lo);
+            functionRegCounts[f] = (hi < 0 ? 0 : hi - lo + 1);
+            maxID = Math.max(maxID, hi);
+        }
+        return maxID + 1;
+    }
+}
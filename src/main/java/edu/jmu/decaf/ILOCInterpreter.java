@@ -1,5 +1,6 @@
 package edu.jmu.decaf;
 
+import java.io.*;
 import java.util.*;
 
 /**
@@ -8,21 +9,23 @@ import java.util.*;
  * Features:
  * <ul>
  * <li>32-bit word</li>
- * <li>Unlimited 32-bit integer virtual registers</li>
+ * <li>Unlimited 32-bit integer virtual registers (stored in a dense bank
+ *     that grows on demand)</li>
  * <li>Four special-purpose 32-bit integer registers:<ul>
  *   <li>IP - instruction pointer</li>
  *   <li>SP - stack pointer</li>
  *   <li>BP - base pointer</li>
  *   <li>RET - function return value</li>
  *   </ul></li>
- * <li>64KB stack, heap, and data region</li>
+ * <li>Stack, heap, and data region (64KB by default; word-addressed
+ *     internally; see {@link ILOCMemory})</li>
  * <li>Fixed-size, read-only code region indexed by instruction</li>
  * </ul>
  *
  * Memory layout diagram:
  *
  * <pre>
- * ---------------  2^16-1
+ * ---------------  size-1 (2^16-1 by default)
  * |    Stack    |
  * |      |      |
  * |      v      |
@@ -46,310 +49,677 @@ import java.util.*;
  * points to the index of the next {@link ILOCInstruction} in the
  * currently-executing {@link ILOCFunction}.
  *
- * The heap region is currently unused.
+ * The heap region is currently unused. The memory size can be changed per
+ * interpreter with {@link #setMemorySize}; for very large memories, an
+ * {@link ILOCPagedMemory} only allocates the pages that a program actually
+ * touches. If the stack grows down into the static data region, execution
+ * stops with an {@link ILOCRuntimeException}.
+ *
+ * By default, each function activation gets its own window of virtual
+ * registers, so a recursive call cannot clobber its caller's registers. The
+ * windows are recycled from a pool, so calls do not allocate once the pool
+ * has grown to the maximum call depth. Calling {@link #setSharedRegisters}
+ * restores the original model in which all activations share a single
+ * register file (as a real machine with a register allocator would).
+ *
+ * Runs can be limited with an instruction budget ({@link #setFuel}) and
+ * stopped from another thread with a {@link CancellationToken} or by
+ * interrupting the interpreting thread. Fuel is charged whenever a basic
+ * block ends (at jumps, calls, and returns), and cancellation is polled at
+ * backward jumps and calls, so a stopped program may run slightly past its
+ * budget but never loops forever. {@link #getStatus} tells how the last run
+ * ended.
+ *
+ * Interpreters are reusable: every run starts from zeroed memory and fresh
+ * registers, but keeps the memory and register window buffers of earlier
+ * runs, and {@link #process(ILOCImage)} runs an already-linked image (images
+ * are immutable and can be shared between interpreters on different
+ * threads; see {@link InterpreterPool}). A single interpreter must only be
+ * used by one thread at a time.
+ *
+ * Tracing and other instrumentation are attached with
+ * {@link #setExecutionListener}. Without a listener, instructions are
+ * executed by a separate loop that makes no instrumentation checks.
  */
 public class ILOCInterpreter implements ILOCProcessor
 {
-    private Map<Integer, Integer> virtualRegs;
+    /**
+     * How a run ended
+     */
+    public enum Status {
+        HALTED,         // main returned
+        OUT_OF_FUEL,    // instruction budget exhausted
+        CANCELLED       // token cancelled or thread interrupted
+    }
+
+    private int virtualRegs[];
+    private boolean validRegs[];
+    private int regBase;
+    private boolean sharedRegs;
     private int ip, sp, bp, ret;
-    private byte memory[];
-    private static final int MEM_SIZE = 65536;
+    private ILOCMemory memory;
+    private PrintStream output;
+    public static final int DEFAULT_MEM_SIZE = 65536;
 
     private ILOCProgram currentProgram;
-    private List<ILOCInstruction> allCode;
-    private Map<Integer, Integer> jumpTargets;
-    private Map<String, Integer> callTargets;
+    private ILOCImage image;
+    private int opcodes[];
+    private int kinds[];
+    private int values[];
+
+    private int callDepth;
+    private int callStack[];
+    private int windowPool[][];
+    private boolean validPool[][];
+
     private int returnValue;
-    private boolean trace;
+    private ExecutionListener listener;
+    private Status status;
+
+    // execution limits
+    public static final long UNLIMITED_FUEL = Long.MAX_VALUE;
+    private static final int POLL_INTERVAL = 1024;
+    private long fuelLimit;
+    private long fuel;
+    private int blockStart;
+    private int pollCountdown;
+    private CancellationToken token;
+
+    // tiered compilation
+    public static final int DEFAULT_CALL_THRESHOLD = 1000;
+    public static final int DEFAULT_LOOP_THRESHOLD = 10000;
+    private static final int NATIVE_RETURN = -2;
+    private boolean tiered;
+    private boolean jitEnabled;
+    private int callThreshold;
+    private int loopThreshold;
+    private int callCounts[];
+    private int loopCounts[];
+    private ILOCCompiledFunction compiled[];
+    private ILOCJITCompiler jit;
 
     public ILOCInterpreter()
     {
         this(false);
     }
 
+    /**
+     * Create a new interpreter
+     * @param trace If true, print every instruction and the system state
+     *              after it (see {@link ILOCTracer})
+     */
     public ILOCInterpreter(boolean trace)
     {
-        this.virtualRegs = new TreeMap<Integer, Integer>();
-        this.memory = new byte[MEM_SIZE];
+        this.virtualRegs = new int[0];
+        this.validRegs = new boolean[0];
+        this.regBase = 0;
+        this.sharedRegs = false;
+        this.callDepth = 0;
+        this.callStack = new int[16];
+        this.windowPool = new int[16][];
+        this.validPool = new boolean[16][];
+        this.memory = null;                 // allocated by the first run
+        this.output = null;
         this.currentProgram = null;
-        this.allCode = new ArrayList<ILOCInstruction>();
-        this.jumpTargets = new HashMap<Integer, Integer>();
-        this.callTargets = new HashMap<String, Integer>();
+        this.image = null;
         this.returnValue = -1;
-        this.trace = trace;
+        this.listener = (trace ? new ILOCTracer() : null);
+        this.status = null;
+        this.fuelLimit = UNLIMITED_FUEL;
+        this.token = null;
+        this.tiered = false;
+        this.callThreshold = DEFAULT_CALL_THRESHOLD;
+        this.loopThreshold = DEFAULT_LOOP_THRESHOLD;
+    }
+
+    /**
+     * Limit the number of instructions that each run may execute. Compiled
+     * code (see {@link #setTieredCompilation}) is charged the length of a
+     * loop body per iteration, so its count is approximate.
+     * @param instructions Instruction budget (or {@link #UNLIMITED_FUEL})
+     */
+    public void setFuel(long instructions)
+    {
+        this.fuelLimit = instructions;
+    }
+
+    /**
+     * Returns the number of instructions charged during the last run
+     * @return Instruction count (approximate for compiled code)
+     */
+    public long getFuelUsed()
+    {
+        return fuelLimit - fuel;
+    }
+
+    /**
+     * Set the token that is polled for cancellation during runs
+     * @param token Cancellation token (or null)
+     */
+    public void setCancellationToken(CancellationToken token)
+    {
+        this.token = token;
+    }
+
+    /**
+     * Returns how the last run ended
+     * @return Run status (or null if nothing has been run)
+     */
+    public Status getStatus()
+    {
+        return status;
+    }
+
+    /**
+     * Attach a listener that observes execution, replacing any previous
+     * listener (including the tracer)
+     * @param listener New listener, or null to run without instrumentation
+     */
+    public void setExecutionListener(ExecutionListener listener)
+    {
+        this.listener = listener;
+    }
+
+    /**
+     * Returns the linked image of the current (or last) program
+     * @return Program image
+     */
+    public ILOCImage getImage()
+    {
+        return image;
+    }
+
+    /**
+     * Select the virtual register model. If true, all activations share a
+     * single register file; otherwise, each activation gets its own register
+     * window (the default).
+     * @param shared Use a single shared register file
+     */
+    public void setSharedRegisters(boolean shared)
+    {
+        this.sharedRegs = shared;
+    }
+
+    /**
+     * Enable or disable tiered execution. If enabled, the interpreter counts
+     * calls and loop back-edges per function, and once either count reaches
+     * its threshold, it compiles the function to JVM bytecode (see
+     * {@link ILOCJITCompiler}) and runs all later activations of it (as well
+     * as the current one, if it was triggered by a loop) as compiled code.
+     * Tiered execution is ignored when a listener is attached or when
+     * registers are shared,
+     * since compiled code keeps its registers in JVM locals.
+     * @param enabled Compile hot functions
+     */
+    public void setTieredCompilation(boolean enabled)
+    {
+        this.tiered = enabled;
+    }
+
+    /**
+     * Set the counts at which tiered execution compiles a function
+     * @param calls Number of calls
+     * @param backEdges Number of backward jumps within a single function
+     */
+    public void setCompileThresholds(int calls, int backEdges)
+    {
+        this.callThreshold = calls;
+        this.loopThreshold = backEdges;
+    }
+
+    /**
+     * Check whether a function has been compiled during the last run
+     * @param name Function name
+     * @return True if calls to the function run as compiled code
+     */
+    public boolean isCompiled(String name)
+    {
+        int func = (image == null ? -1 : image.getFunctionID(name));
+        return (func >= 0 && compiled != null && compiled[func] != null);
+    }
+
+    /**
+     * Replace the data memory with a new zero-filled memory of the given size
+     * @param size Size (in bytes); must be a multiple of the word size
+     */
+    public void setMemorySize(int size)
+    {
+        this.memory = new ILOCWordMemory(size);
+    }
+
+    /**
+     * Replace the data memory backend. The default is a zero-filled
+     * {@link ILOCWordMemory}; {@link ILOCByteMemory} is also available.
+     * @param memory New data memory
+     */
+    public void setMemory(ILOCMemory memory)
+    {
+        this.memory = memory;
+    }
+
+    /**
+     * Redirect program output
+     * @param output Stream for {@code print} instructions, or null to use
+     *               whatever {@code System.out} is at the time of printing
+     *               (the default)
+     */
+    public void setOutput(PrintStream output)
+    {
+        this.output = output;
+    }
+
+    /**
+     * Drop all references to the last program (and any code compiled for
+     * it), keeping the memory and register buffers for the next run
+     */
+    public void reset()
+    {
+        currentProgram = null;
+        image = null;
+        opcodes = null;
+        kinds = null;
+        values = null;
+        compiled = null;
+        jit = null;
+        callCounts = null;
+        loopCounts = null;
+        Arrays.fill(callStack, 0);
     }
 
     public void process(ILOCProgram program)
+    {
+        process(ILOCImage.link(program));
+    }
+
+    /**
+     * Run a linked program image
+     * @param image Image to run
+     */
+    public void process(ILOCImage image)
     {
         // initialize system state
         //   - set registers ip, sp, bp, ret
-        //   - collapse code into a single instruction list
-        //   - build call and jump target maps
-        currentProgram = program;
-        ip = -1; sp = MEM_SIZE; bp = sp; ret = -1;
-        for (ILOCFunction func : program.functions) {
-            String name = func.functionSymbol.name;
-            ILOCOperand[] ops = new ILOCOperand[4];
-            ops[0] = ILOCOperand.newCallLabel(name);
-            callTargets.put(name, Integer.valueOf(allCode.size()));
-            allCode.add(new ILOCInstruction(ILOCInstruction.Form.LABEL, ops));
-            for (ILOCInstruction insn: func.getInstructions()) {
-                if (insn.form == ILOCInstruction.Form.LABEL) {
-                    Integer id = Integer.valueOf(insn.operands[0].id);
-                    jumpTargets.put(id, Integer.valueOf(allCode.size()));
-                }
-                allCode.add(insn);
-            }
+        //   - clear memory
+        this.currentProgram = image.program;
+        this.image = image;
+        if (memory == null) {
+            memory = new ILOCWordMemory(DEFAULT_MEM_SIZE);
+        } else {
+            memory.clear();
         }
-        if (trace) {
-            System.out.println();
-            if (trace) System.out.println("All code:");
-            for (int i=0; i<allCode.size(); i++) {
-                System.out.print(String.format("%4d", i) + ": ");
-                System.out.println(allCode.get(i).toString());
-            }
-            System.out.println();
+        opcodes = image.opcodes;
+        kinds = image.kinds;
+        values = image.values;
+        ip = -1; sp = memory.size(); bp = sp; ret = -1;
+        callDepth = 0;
+        regBase = 0;
+        if (sharedRegs) {
+            virtualRegs = new int[image.numRegisters];
+            validRegs = new boolean[image.numRegisters];
+        } else {
+            virtualRegs = new int[0];
+            validRegs = new boolean[0];
         }
+        windowPool[0] = virtualRegs;
+        validPool[0] = validRegs;
+        jitEnabled = tiered && listener == null && !sharedRegs;
+        int numFunctions = image.functionNames.length;
+        callCounts = new int[numFunctions];
+        loopCounts = new int[numFunctions];
+        compiled = new ILOCCompiledFunction[numFunctions];
+        jit = (jitEnabled ? new ILOCJITCompiler() : null);
+        fuel = fuelLimit;
+        pollCountdown = POLL_INTERVAL;
+        status = null;
+        if (listener != null) {
+            listener.programLoaded(this);
+        }
+
+        try {
+            // goto program entry point
+            callFunction("main");
+            if (listener != null) {
+                listener.programStarted(this);
+            }
 
-        if (trace) dumpSystemState();
+            run();
+            status = Status.HALTED;
+        } catch (Stop ex) {
+            status = ex.status;
+        }
 
-        // goto program entry point
-        if (trace) System.out.println("Calling main()\n");
-        callFunction("main");
+        // set return value
+        returnValue = ret;
+        if (listener != null) {
+            listener.programFinished(this);
+        }
+    }
 
-        // debug info
-        if (trace) dumpSystemState();
+    /**
+     * Execute instructions until the current activation returns, using the
+     * instrumented loop only if there is a listener
+     */
+    private void run()
+    {
+        if (listener == null) {
+            interpret();
+        } else {
+            interpretObserved(listener);
+        }
+    }
 
+    /**
+     * Execute instructions until the current activation returns to a
+     * negative address (i.e., until main returns or a function called from
+     * compiled code returns)
+     */
+    private void interpret()
+    {
         boolean done = false;
         while (!done) {
-
-            // fetch & execute
-            ILOCInstruction insn = allCode.get(Integer.valueOf(ip));
-            if (trace) System.out.println("Executing: " + insn.toString());
-
-            // increment instruction pointer
-            ip++;
-
-            // execute
-            done = handle(insn);
-
-            // debug info
-            if (trace) dumpSystemState();
+            int pc = ip++;
+            done = execute(pc);
         }
+    }
 
-        // set return value
-        returnValue = ret;
+    /**
+     * Same as {@link #interpret}, but report every instruction to a listener
+     * @param listener Listener to notify
+     */
+    private void interpretObserved(ExecutionListener listener)
+    {
+        boolean done = false;
+        while (!done) {
+            int pc = ip++;
+            listener.beforeInstruction(this, pc);
+            done = execute(pc);
+            listener.afterInstruction(this, pc);
+        }
     }
 
-    public boolean handle(ILOCInstruction insn)
+    /**
+     * Execute a single pre-decoded instruction. The instruction pointer
+     * should already have been advanced past the instruction.
+     * @param pc Code index of instruction
+     * @return True if the program has finished
+     */
+    private boolean execute(int pc)
     {
-        switch (insn.form) {
+        int s = pc * ILOCImage.SLOTS;
+        switch (opcodes[pc]) {
 
-        case LOAD_I:
-        case LOAD_S:
-        case I2I:
-            setInt(insn.operands[1], getInt(insn.operands[0]));
+        case ILOCImage.OP_MOVE:
+            write(s+1, read(s));
             break;
 
-        case LOAD:
-            setInt(insn.operands[1], loadInt(getInt(insn.operands[0])));
+        case ILOCImage.OP_LOAD:
+            write(s+1, loadInt(read(s)));
             break;
-        case LOAD_AI:
-        case LOAD_AO:
-            setInt(insn.operands[2],
-                   loadInt(getInt(insn.operands[0]) + getInt(insn.operands[1])));
+        case ILOCImage.OP_LOAD_AO:
+            write(s+2, loadInt(read(s) + read(s+1)));
             break;
 
-        case STORE:
-            storeInt(getInt(insn.operands[1]), getInt(insn.operands[0]));
+        case ILOCImage.OP_STORE:
+            storeInt(read(s+1), read(s));
             break;
-
-        case STORE_AI:
-        case STORE_AO:
-            storeInt(getInt(insn.operands[1]) + getInt(insn.operands[2]),
-                     getInt(insn.operands[0]));
+        case ILOCImage.OP_STORE_AO:
+            storeInt(read(s+1) + read(s+2), read(s));
             break;
 
-        case ADD:
-        case ADD_I:
-            setInt(insn.operands[2],
-                    getInt(insn.operands[0]) + getInt(insn.operands[1]));
+        case ILOCImage.OP_ADD:
+            write(s+2, read(s) + read(s+1));
             break;
-        case SUB:
-            setInt(insn.operands[2],
-                    getInt(insn.operands[0]) - getInt(insn.operands[1]));
+        case ILOCImage.OP_SUB:
+            write(s+2, read(s) - read(s+1));
             break;
-        case MULT:
-        case MULT_I:
-            setInt(insn.operands[2],
-                    getInt(insn.operands[0]) * getInt(insn.operands[1]));
+        case ILOCImage.OP_MULT:
+            write(s+2, read(s) * read(s+1));
             break;
-        case DIV:
-            setInt(insn.operands[2],
-                    getInt(insn.operands[0]) / getInt(insn.operands[1]));
+        case ILOCImage.OP_DIV:
+            write(s+2, read(s) / read(s+1));
             break;
 
-        case AND:
-            setBool(insn.operands[2],
-                    getBool(insn.operands[0]) && getBool(insn.operands[1]));
+        case ILOCImage.OP_AND:
+            writeBool(s+2, read(s) != 0 && read(s+1) != 0);
             break;
-        case OR:
-            setBool(insn.operands[2],
-                    getBool(insn.operands[0]) || getBool(insn.operands[1]));
+        case ILOCImage.OP_OR:
+            writeBool(s+2, read(s) != 0 || read(s+1) != 0);
             break;
 
-        case NOT:
-            setBool(insn.operands[1], !getBool(insn.operands[0]));
+        case ILOCImage.OP_NOT:
+            writeBool(s+1, read(s) == 0);
             break;
-        case NEG:
-            setInt(insn.operands[1], -getInt(insn.operands[0]));
+        case ILOCImage.OP_NEG:
+            write(s+1, -read(s));
             break;
 
-        case JUMP:
-            ip = findJumpTarget(insn.operands[0]) + 1;
+        case ILOCImage.OP_JUMP:
+            charge(pc);
+            ip = blockStart = jumpTarget(s);
+            if (ip <= pc) {
+                poll();
+                if (jitEnabled && resumeCompiled(ip)) {
+                    return ip < 0;
+                }
+            }
             break;
-        case CBR:
-            if (getBool(insn.operands[0])) {
-                ip = findJumpTarget(insn.operands[1]) + 1;
-            } else {
-                ip = findJumpTarget(insn.operands[2]) + 1;
+        case ILOCImage.OP_CBR:
+            charge(pc);
+            ip = blockStart = (read(s) != 0 ? jumpTarget(s+1) : jumpTarget(s+2));
+            if (ip <= pc) {
+                poll();
+                if (jitEnabled && resumeCompiled(ip)) {
+                    return ip < 0;
+                }
             }
             break;
 
-        case CMP_LT:
-            setBool(insn.operands[2],
-                    getInt(insn.operands[0]) < getInt(insn.operands[1]));
+        case ILOCImage.OP_CMP_LT:
+            writeBool(s+2, read(s) < read(s+1));
             break;
-        case CMP_LE:
-            setBool(insn.operands[2],
-                    getInt(insn.operands[0]) <= getInt(insn.operands[1]));
+        case ILOCImage.OP_CMP_LE:
+            writeBool(s+2, read(s) <= read(s+1));
             break;
-        case CMP_EQ:
-            setBool(insn.operands[2],
-                    getInt(insn.operands[0]) == getInt(insn.operands[1]));
+        case ILOCImage.OP_CMP_EQ:
+            writeBool(s+2, read(s) == read(s+1));
             break;
-        case CMP_GE:
-            setBool(insn.operands[2],
-                    getInt(insn.operands[0]) >= getInt(insn.operands[1]));
+        case ILOCImage.OP_CMP_GE:
+            writeBool(s+2, read(s) >= read(s+1));
             break;
-        case CMP_GT:
-            setBool(insn.operands[2],
-                    getInt(insn.operands[0]) > getInt(insn.operands[1]));
+        case ILOCImage.OP_CMP_GT:
+            writeBool(s+2, read(s) > read(s+1));
             break;
-        case CMP_NE:
-            setBool(insn.operands[2],
-                    getInt(insn.operands[0]) != getInt(insn.operands[1]));
+        case ILOCImage.OP_CMP_NE:
+            writeBool(s+2, read(s) != read(s+1));
             break;
 
-        case PARAM:
-            push(getInt(insn.operands[0]));
+        case ILOCImage.OP_PARAM:
+            push(read(s));
             break;
 
-        case CALL:
-            callFunction(insn.operands[0].strConstant);
+        case ILOCImage.OP_CALL:
+            assert(values[s] >= 0);
+            charge(pc);
+            poll();
+            callFunction(values[s]);
+            if (jitEnabled) {
+                ILOCCompiledFunction code = getCompiledCode(values[s]);
+                if (code != null) {
+                    code.invoke(this, virtualRegs, 0);
+                    leaveFunction();
+                }
+            }
             break;
 
-        case RETURN:
+        case ILOCImage.OP_RETURN:
+            charge(pc);
             leaveFunction();
-            ip = pop();
-            if (ip == -1) {
+            if (ip < 0) {
                 return true;
             }
-            // TODO: pop parameters
             break;
 
-        case PRINT:
-            switch (insn.operands[0].type) {
-            case VIRTUAL_REG:
-                System.out.print(getInt(insn.operands[0]));
-                break;
-            case STR_CONST:
-                System.out.print(insn.operands[0].strConstant);
-                break;
-            default:
-                System.out.println("WARNING: Invalid PRINT operand: " + insn.toString());
-            }
+        case ILOCImage.OP_PRINT_INT:
+            out().print(read(s));
+            break;
+        case ILOCImage.OP_PRINT_STR:
+            out().print(image.strings[values[s]]);
+            break;
+        case ILOCImage.OP_BAD_PRINT:
+            out().println("WARNING: Invalid PRINT operand: " + image.code[pc].toString());
+            break;
 
-        case LABEL:
-        case NOP:
+        case ILOCImage.OP_NOP:
             break;
 
         default:
-            System.out.println("WARNING: Unhandled instruction: " + insn.toString());
+            out().println("WARNING: Unhandled instruction: " + image.code[pc].toString());
             break;
         }
         return false;
     }
 
-    public int getInt(ILOCOperand src)
+    /**
+     * Charge the instructions of the basic block that ends at the given
+     * instruction and stop if the budget is exhausted
+     * @param pc Code index of the last instruction of the block
+     */
+    private void charge(int pc)
     {
-        int rval = -1;
-        switch (src.type) {
-        case BASE_REG:      rval = bp; break;
-        case RETURN_REG:    rval = ret; break;
-        case VIRTUAL_REG:   Integer id = Integer.valueOf(src.id);
-                            assert(virtualRegs.containsKey(id));
-                            rval = virtualRegs.get(id).intValue();
-                            break;
-        case INT_CONST:     rval = src.intConstant; break;
-        default:            assert(false);      // invalid operand
+        fuel -= pc - blockStart + 1;
+        if (fuel < 0) {
+            throw new Stop(Status.OUT_OF_FUEL);
         }
-        return rval;
     }
 
-    public void setInt(ILOCOperand dst, int value)
+    /**
+     * Stop if cancellation has been requested (only checked every
+     * {@code POLL_INTERVAL} calls)
+     */
+    private void poll()
     {
-        switch(dst.type) {
-        case BASE_REG:      bp = value; break;
-        case RETURN_REG:    ret = value; break;
-        case VIRTUAL_REG:   Integer id = Integer.valueOf(dst.id);
-                            virtualRegs.put(id, Integer.valueOf(value));
-                            break;
-        default:            assert(false);      // invalid operand
+        if (--pollCountdown == 0) {
+            pollCountdown = POLL_INTERVAL;
+            if ((token != null && token.isCancelled()) ||
+                    Thread.currentThread().isInterrupted()) {
+                throw new Stop(Status.CANCELLED);
+            }
         }
     }
 
-    public boolean getBool(ILOCOperand src)
+    /**
+     * Unwinds a stopped run (through interpreted and compiled activations)
+     */
+    private static class Stop extends RuntimeException
     {
-        return getInt(src) != 0;
+        private static final long serialVersionUID = 1L;
+
+        public final Status status;
+
+        public Stop(Status status)
+        {
+            super(status.name(), null, false, false);
+            this.status = status;
+        }
     }
 
-    public void setBool(ILOCOperand dst, int value)
+    /**
+     * Read the integer value of an operand slot
+     * @param slot Operand slot in the current image
+     * @return Operand value
+     */
+    private int read(int slot)
     {
-        setBool(dst, value != 0);
+        switch (kinds[slot]) {
+        case ILOCImage.VIRTUAL_REG: int id = values[slot] - regBase;
+                                    assert(id < validRegs.length && validRegs[id]);
+                                    return virtualRegs[id];
+        case ILOCImage.INT_CONST:   return values[slot];
+        case ILOCImage.BASE_REG:    return bp;
+        case ILOCImage.RETURN_REG:  return ret;
+        default:                    assert(false);      // invalid operand
+                                    return -1;
+        }
     }
 
-    public void setBool(ILOCOperand dst, boolean value)
+    /**
+     * Write an integer value to an operand slot
+     * @param slot Operand slot in the current image
+     * @param value New value
+     */
+    private void write(int slot, int value)
     {
-        setInt(dst, value ? 1 : 0);
+        switch (kinds[slot]) {
+        case ILOCImage.VIRTUAL_REG: int id = values[slot] - regBase;
+                                    if (id >= virtualRegs.length) {
+                                        growRegisters(id);
+                                    }
+                                    virtualRegs[id] = value;
+                                    validRegs[id] = true;
+                                    break;
+        case ILOCImage.BASE_REG:    bp = value; break;
+        case ILOCImage.RETURN_REG:  ret = value; break;
+        default:                    assert(false);      // invalid operand
+        }
     }
 
-    public int findJumpTarget(ILOCOperand targ)
+    private void writeBool(int slot, boolean value)
     {
-        assert(targ.type == ILOCOperand.Type.JUMP_LABEL);
-        Integer id = Integer.valueOf(targ.id);
-        assert(jumpTargets.containsKey(id));
-        return jumpTargets.get(id).intValue();
+        write(slot, value ? 1 : 0);
     }
 
-    public void storeInt(int address, int value)
+    /**
+     * Retrieve the resolved destination of a jump operand
+     * @param slot Operand slot in the current image
+     * @return Code index of the instruction following the target label
+     */
+    private int jumpTarget(int slot)
+    {
+        assert(kinds[slot] == ILOCImage.JUMP_TARGET && values[slot] >= 0);
+        return values[slot];
+    }
+
+    /**
+     * Expand the current register window so that it includes the given index.
+     * @param index Window index that must be addressable
+     */
+    private void growRegisters(int index)
+    {
+        int newSize = Math.max(index + 1, virtualRegs.length * 2);
+        virtualRegs = Arrays.copyOf(virtualRegs, newSize);
+        validRegs = Arrays.copyOf(validRegs, newSize);
+        windowPool[callDepth] = virtualRegs;
+        validPool[callDepth] = validRegs;
+    }
+
+    /**
+     * Switch to a fresh register window for a new activation of the given
+     * function. Windows are reused across calls at the same depth.
+     * @param func Function index
+     */
+    private void enterWindow(int func)
     {
-        int offset = (Symbol.WORD_SIZE-1) * 8;
-        for (int i = 0; i < Symbol.WORD_SIZE; i++) {
-            memory[address+i] = (byte)(value >> offset);
-            offset -= 8;
+        int count = image.functionRegCounts[func];
+        int[] window = windowPool[callDepth];
+        if (window == null || window.length < count) {
+            windowPool[callDepth] = new int[count];
+            validPool[callDepth] = new boolean[count];
+        } else {
+            Arrays.fill(validPool[callDepth], false);
         }
+        virtualRegs = windowPool[callDepth];
+        validRegs = validPool[callDepth];
+        regBase = image.functionRegBases[func];
+    }
+
+    public void storeInt(int address, int value)
+    {
+        memory.storeInt(address, value);
     }
 
     public int loadInt(int address)
     {
-        int offset = (Symbol.WORD_SIZE-1) * 8;
-        int value = 0;
-        for (int i = 0; i < Symbol.WORD_SIZE; i++) {
-            value |= (memory[address+i] & 0xFF) << offset;
-            offset -= 8;
-        }
-        return value;
+        return memory.loadInt(address);
     }
 
     public void push(int value)
@@ -368,20 +738,35 @@ public class ILOCInterpreter implements ILOCProcessor
 
     public void callFunction(String name)
     {
-        assert callTargets.containsKey(name);
-        ILOCFunction func = currentProgram.getFunction(name);
+        assert(image.getFunctionID(name) >= 0);
+        callFunction(image.getFunctionID(name));
+    }
 
+    public void callFunction(int func)
+    {
         // save return address
         push(ip);
 
         // enter (prologue)
         push(bp);                           // push ebp
         bp = sp;                            // mov esp, ebp
-        sp -= func.localSize;               // sub <size>, esp
+        sp -= image.functionLocalSizes[func];   // sub <size>, esp
         checkStack();
 
+        // track activation (and switch register windows if necessary)
+        callDepth++;
+        if (callDepth == callStack.length) {
+            callStack = Arrays.copyOf(callStack, callDepth * 2);
+            windowPool = Arrays.copyOf(windowPool, callDepth * 2);
+            validPool = Arrays.copyOf(validPool, callDepth * 2);
+        }
+        callStack[callDepth] = func;
+        if (!sharedRegs) {
+            enterWindow(func);
+        }
+
         // transfer control flow
-        ip = callTargets.get(name).intValue() + 1;
+        ip = blockStart = image.functionEntries[func] + 1;
     }
 
     public void leaveFunction()
@@ -389,6 +774,19 @@ public class ILOCInterpreter implements ILOCProcessor
         // leave (epilogue)
         sp = bp;                            // mov ebp, esp
         bp = pop();                         // pop ebp
+
+        // restore caller's register window (when main returns, its window
+        // stays in place so that the final state can still be dumped)
+        int func = callStack[callDepth--];
+        if (!sharedRegs && callDepth > 0) {
+            virtualRegs = windowPool[callDepth];
+            validRegs = validPool[callDepth];
+            regBase = image.functionRegBases[callStack[callDepth]];
+        }
+
+        // pop return address and parameters (callee cleans up)
+        ip = blockStart = pop();
+        sp += image.functionParamSizes[func];
     }
 
     public int getReturnValue()
@@ -396,12 +794,130 @@ public class ILOCInterpreter implements ILOCProcessor
         return returnValue;
     }
 
+    /**
+     * Count a call to a function and compile it if it has become hot
+     * @param func Function index
+     * @return Compiled code for the function (or null if it should be
+     *         interpreted)
+     */
+    private ILOCCompiledFunction getCompiledCode(int func)
+    {
+        ILOCCompiledFunction code = compiled[func];
+        if (code == null && ++callCounts[func] == callThreshold) {
+            code = jit.compile(image, func);
+            compiled[func] = code;
+        }
+        return code;
+    }
+
+    /**
+     * Count a loop back-edge in the current function; if the function is (or
+     * has just become) compiled, finish the current activation in compiled
+     * code
+     * @param target Code index of the jump target
+     * @return True if the activation was finished (and has been torn down)
+     */
+    private boolean resumeCompiled(int target)
+    {
+        int func = callStack[callDepth];
+        ILOCCompiledFunction code = compiled[func];
+        if (code == null) {
+            if (++loopCounts[func] != loopThreshold) {
+                return false;
+            }
+            code = jit.compile(image, func);
+            compiled[func] = code;
+            if (code == null) {
+                return false;
+            }
+        }
+        code.invoke(this, virtualRegs, target);
+        leaveFunction();
+        return true;
+    }
+
+    // runtime support for compiled code (see ILOCJITCompiler)
+
+    /**
+     * Call a function from compiled code, running it as compiled code if
+     * possible and interpreting it otherwise
+     * @param func Function index
+     */
+    public void invokeFunction(int func)
+    {
+        checkpoint(1);
+        int savedIP = ip;
+        ip = NATIVE_RETURN;
+        callFunction(func);
+        ILOCCompiledFunction code = getCompiledCode(func);
+        if (code != null) {
+            code.invoke(this, virtualRegs, 0);
+            leaveFunction();
+        } else {
+            run();
+        }
+        ip = savedIP;
+    }
+
+    /**
+     * Charge instructions run by compiled code and poll for cancellation
+     * (called at loop back-edges and calls)
+     * @param instructions Number of instructions to charge
+     */
+    public void checkpoint(int instructions)
+    {
+        fuel -= instructions;
+        if (fuel < 0) {
+            throw new Stop(Status.OUT_OF_FUEL);
+        }
+        poll();
+    }
+
+    public int getBasePointer()
+    {
+        return bp;
+    }
+
+    public int getReturnRegister()
+    {
+        return ret;
+    }
+
+    public void setReturnRegister(int value)
+    {
+        ret = value;
+    }
+
+    public void printInt(int value)
+    {
+        out().print(value);
+    }
+
+    public void printString(String value)
+    {
+        out().print(value);
+    }
+
+    private PrintStream out()
+    {
+        return (output != null ? output : System.out);
+    }
+
     public void checkStack()
     {
-        assert (sp >= 0);
-        //assert (sp > currentProgram.totalStaticSize);
+        if (sp < currentProgram.staticSize) {
+            throw new ILOCRuntimeException("Stack overflow (sp=" + sp +
+                    ", static data size=" + currentProgram.staticSize +
+                    ", memory size=" + memory.size() + ")");
+        }
     }
 
+    /**
+     * Print the static data, the registers, and the stack. Virtual registers
+     * are printed under the IDs they have in the ILOC code, so with register
+     * windows the output lists the registers of the current activation in
+     * the same form as the shared register file.
+     */
     public void dumpSystemState()
     {
         // global static variables
@@ -432,20 +948,25 @@ public class ILOCInterpreter implements ILOCProcessor
                 " ret=" + ret);
         System.out.print("  virtualRegs: { ");
         boolean comma = false;
-        for (Map.Entry<Integer, Integer> pair : virtualRegs.entrySet()) {
+        for (int id = 0; id < virtualRegs.length; id++) {
+            if (!validRegs[id]) {
+                continue;
+            }
             if (comma) {
                 System.out.print(", ");
             } else {
                 comma = true;
             }
-            System.out.print("r" + pair.getKey() + "=" + pair.getValue());
+            // window slots are offset by the function's lowest register ID
+            System.out.print("r" + (regBase + id) + "=" + virtualRegs[id]);
         }
         System.out.println(" }");
 
         // stack
         System.out.println("  stack:");
-        for (int i = MEM_SIZE - Symbol.WORD_SIZE; i >= sp; i -= Symbol.WORD_SIZE) {
-            if (i < MEM_SIZE) {
+        int memSize = memory.size();
+        for (int i = memSize - Symbol.WORD_SIZE; i >= sp; i -= Symbol.WORD_SIZE) {
+            if (i < memSize) {
                 System.out.println("    " + i + ": " + loadInt(i));
             }
         }
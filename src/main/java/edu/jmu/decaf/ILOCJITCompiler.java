@@ -0,0 +1,199 @@
+package edu.jmu.decaf;
+
+import java.util.*;
+
+/**
+ * Translates individual functions of a linked {@link ILOCImage} into JVM
+ * classes at run time (see {@link ILOCInterpreter#setTieredCompilation}).
+ *
+ * Each function becomes a subclass of {@link ILOCCompiledFunction} whose
+ * {@code invoke} method contains the whole function body. Virtual registers
+ * are mapped to JVM locals and jumps become JVM branches; memory accesses,
+ * calls, and output go through public methods of the {@link ILOCInterpreter}
+ * that owns the activation, so compiled and interpreted functions can call
+ * each other freely. Every jump target is also an entry point, which lets the
+ * interpreter switch a running activation over to compiled code in the middle
+ * of a hot loop. Backward jumps call {@link ILOCInterpreter#checkpoint}, so
+ * instruction budgets and cancellation also stop compiled loops.
+ *
+ * Classes are written with {@link ClassFileEmitter} (using
+ * {@link ILOCBytecodeTranslator} for function bodies) and defined by a
+ * private class loader. Functions that use anything the compiler does not handle
+ * (e.g., writes to BP or unresolved call targets) are left to the
+ * interpreter.
+ */
+public class ILOCJITCompiler
+{
+    private static final String RUNTIME = "edu/jmu/decaf/ILOCInterpreter";
+    private static final String SUPER = "edu/jmu/decaf/ILOCCompiledFunction";
+    private static final String ERROR = "edu/jmu/decaf/ILOCRuntimeException";
+
+    // local variable slots (0 is "this")
+    private static final int M_LOCAL = 1;
+    private static final int REGS_LOCAL = 2;
+    private static final int ENTRY_LOCAL = 3;
+    private static final int BP_LOCAL = 4;
+    private static final int FIRST_REG_LOCAL = 5;
+
+    private final JITClassLoader loader;
+    private int numClasses;
+
+    public ILOCJITCompiler()
+    {
+        this.loader = new JITClassLoader(ILOCCompiledFunction.class.getClassLoader());
+        this.numClasses = 0;
+    }
+
+    /**
+     * Compile a single function
+     * @param image Linked program image
+     * @param func Function index
+     * @return Compiled function, or null if the function cannot be compiled
+     */
+    public ILOCCompiledFunction compile(ILOCImage image, int func)
+    {
+        String name = "edu/jmu/decaf/jit/" + image.functionNames[func] + "_" + (numClasses++);
+        try {
+            byte[] bytes = generate(image, func, name);
+            Class<?> cls = loader.define(name.replace('/', '.'), bytes);
+            return (ILOCCompiledFunction)cls.getDeclaredConstructor().newInstance();
+        } catch (UnsupportedOperationException ex) {
+            return null;
+        } catch (IllegalStateException ex) {
+            return null;
+        } catch (LinkageError ex) {
+            return null;
+        } catch (ReflectiveOperationException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Generate a class file for a single function
+     * @param image Linked program image
+     * @param func Function index
+     * @param className Internal name of the new class
+     * @return Class file contents
+     * @throws UnsupportedOperationException If the function cannot be compiled
+     */
+    public byte[] generate(ILOCImage image, int func, String className)
+    {
+        ClassFileEmitter cf = new ClassFileEmitter(className, SUPER);
+        cf.addDefaultConstructor();
+        ClassFileEmitter.Code c = cf.addMethod(ClassFileEmitter.ACC_PUBLIC,
+                "invoke", "(L" + RUNTIME + ";[II)V");
+        Translator t = new Translator(image, func, c);
+
+        // prologue: cache BP, then either clear all registers or load them
+        // from the window and jump to the requested resume point
+        int begin = c.newLabel();
+        int resume = c.newLabel();
+        c.aload(M_LOCAL);
+        c.invoke(ClassFileEmitter.INVOKEVIRTUAL, RUNTIME, "getBasePointer", "()I");
+        c.istore(BP_LOCAL);
+        c.iload(ENTRY_LOCAL);
+        c.jump(ClassFileEmitter.IFNE, resume);
+        t.clearRegisters();
+        c.jump(ClassFileEmitter.GOTO, begin);
+        c.bind(resume);
+        for (int r = 0; r < image.functionRegCounts[func]; r++) {
+            c.aload(REGS_LOCAL);
+            c.pushInt(r);
+            c.op(ClassFileEmitter.IALOAD);
+            c.istore(FIRST_REG_LOCAL + r);
+        }
+        List<Integer> entries = t.getJumpTargets();
+        int[] keys = new int[entries.size()];
+        int[] targets = new int[entries.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = entries.get(i).intValue();
+            targets[i] = t.getLabel(keys[i]);
+        }
+        c.iload(ENTRY_LOCAL);
+        c.lookupSwitch(keys, targets, begin);
+        c.bind(begin);
+
+        t.translateBody(ERROR);
+        c.finish(ILOCBytecodeTranslator.MAX_STACK, t.getMaxLocals());
+        return cf.toByteArray();
+    }
+
+    /**
+     * Translator that runs against the interpreter passed to
+     * {@link ILOCCompiledFunction#invoke}
+     */
+    private static class Translator extends ILOCBytecodeTranslator
+    {
+        public Translator(ILOCImage image, int func, ClassFileEmitter.Code c)
+        {
+            super(image, func, c, BP_LOCAL, FIRST_REG_LOCAL);
+        }
+
+        private void runtime(String name, String desc)
+        {
+            c.invoke(ClassFileEmitter.INVOKEVIRTUAL, RUNTIME, name, desc);
+        }
+
+        protected void loadReturn()
+        {
+            c.aload(M_LOCAL);
+            runtime("getReturnRegister", "()I");
+        }
+
+        protected void beginStoreReturn()   { c.aload(M_LOCAL); }
+        protected void endStoreReturn()     { runtime("setReturnRegister", "(I)V"); }
+        protected void beginLoadMemory()    { c.aload(M_LOCAL); }
+        protected void endLoadMemory()      { runtime("loadInt", "(I)I"); }
+        protected void beginStoreMemory()   { c.aload(M_LOCAL); }
+        protected void storeMemoryAddress() { }
+        protected void endStoreMemory()     { runtime("storeInt", "(II)V"); }
+        protected void beginPush()          { c.aload(M_LOCAL); }
+        protected void endPush()            { runtime("push", "(I)V"); }
+        protected void beginPrintInt()      { c.aload(M_LOCAL); }
+        protected void endPrintInt()        { runtime("printInt", "(I)V"); }
+
+        protected void call(int callee)
+        {
+            c.aload(M_LOCAL);
+            c.pushInt(callee);
+            runtime("invokeFunction", "(I)V");
+        }
+
+        protected void returnFromFunction()
+        {
+            // the interpreter tears down the activation
+            c.op(ClassFileEmitter.RETURN);
+        }
+
+        protected void backEdge(int length)
+        {
+            c.aload(M_LOCAL);
+            c.pushInt(length);
+            runtime("checkpoint", "(I)V");
+        }
+
+        protected void printString(String value)
+        {
+            c.aload(M_LOCAL);
+            c.pushString(value);
+            runtime("printString", "(Ljava/lang/String;)V");
+        }
+    }
+
+    /**
+     * Class loader for generated code; every compiler gets its own, so
+     * compiled code can be unloaded along with the interpreter that uses it
+     */
+    private static class JITClassLoader extends ClassLoader
+    {
+        public JITClassLoader(ClassLoader parent)
+        {
+            super(parent);
+        }
+
+        public Class<?> define(String name, byte[] bytes)
+        {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package edu.jmu.decaf;
+
+/**
+ * Data memory for the {@link ILOCInterpreter}. Memory is byte-addressed and
+ * stores 32-bit words in big-endian order; implementations may choose any
+ * internal representation as long as they preserve those semantics.
+ */
+public interface ILOCMemory
+{
+    /**
+     * Returns the size of the memory
+     * @return Size (in bytes)
+     */
+    public int size();
+
+    /**
+     * Load a 32-bit word
+     * @param address Byte address of the most significant byte
+     * @return Loaded value
+     */
+    public int loadInt(int address);
+
+    /**
+     * Store a 32-bit word
+     * @param address Byte address of the most significant byte
+     * @param value Value to store
+     */
+    public void storeInt(int address, int value);
+
+    /**
+     * Reset every word to zero (keeping any storage that has already been
+     * allocated, so that the memory can be reused for another run)
+     */
+    public void clear();
+}
@@ -21,9 +21,6 @@ public class ILOCOperand implements Cloneable
         STR_CONST
     }
 
-    private static int numTempRegisters = 0;
-    private static int numAnonLabels = 0;
-
     /**
      * Operand type
      */
@@ -74,7 +71,8 @@ public class ILOCOperand implements Cloneable
      */
     public static ILOCOperand newVirtualReg()
     {
-        return new ILOCOperand(Type.VIRTUAL_REG, ++numTempRegisters, "", 0);
+        return new ILOCOperand(Type.VIRTUAL_REG,
+                CompilationContext.current().newVirtualRegID(), "", 0);
     }
 
     /**
@@ -83,7 +81,8 @@ public class ILOCOperand implements Cloneable
      */
     public static ILOCOperand newAnonymousLabel()
     {
-        return new ILOCOperand(Type.JUMP_LABEL, ++numAnonLabels, "", 0);
+        return new ILOCOperand(Type.JUMP_LABEL,
+                CompilationContext.current().newAnonymousLabelID(), "", 0);
     }
 
     /**
@@ -0,0 +1,134 @@
+package edu.jmu.decaf;
+
+import java.util.*;
+
+/**
+ * Lazily-allocated implementation of {@link ILOCMemory}. Memory is divided
+ * into fixed-size pages of words that are only allocated the first time they
+ * are written; reading from a page that has never been written returns zero.
+ * This makes very large memories cheap for programs that only touch a small
+ * part of them (typically the static data region at the bottom and the stack
+ * at the top).
+ */
+public class ILOCPagedMemory implements ILOCMemory
+{
+    /**
+     * Page size (in bytes)
+     */
+    public static final int PAGE_SIZE = 4096;
+
+    private static final int PAGE_WORDS = PAGE_SIZE / Symbol.WORD_SIZE;
+    private static final int PAGE_SHIFT = 10;   // log2(PAGE_WORDS)
+
+    private int pages[][];
+    private int size;
+    private int committed;
+
+    /**
+     * Create a new zero-filled memory
+     * @param size Size (in bytes); must be a multiple of the word size
+     */
+    public ILOCPagedMemory(int size)
+    {
+        if (size <= 0 || size % Symbol.WORD_SIZE != 0) {
+            throw new IllegalArgumentException("Invalid memory size: " + size);
+        }
+        this.pages = new int[(size + PAGE_SIZE - 1) / PAGE_SIZE][];
+        this.size = size;
+        this.committed = 0;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the number of pages that have been allocated so far
+     * @return Committed page count
+     */
+    public int getCommittedPages()
+    {
+        return committed;
+    }
+
+    /**
+     * Zero all committed pages (they stay committed)
+     */
+    public void clear()
+    {
+        for (int page[] : pages) {
+            if (page != null) {
+                Arrays.fill(page, 0);
+            }
+        }
+    }
+
+    public int loadInt(int address)
+    {
+        if ((address & 3) == 0 && address >= 0 && address <= size - Symbol.WORD_SIZE) {
+            int word = address >> 2;
+            int page[] = pages[word >> PAGE_SHIFT];
+            return (page == null ? 0 : page[word & (PAGE_WORDS-1)]);
+        }
+        int value = 0;
+        for (int i = 0; i < Symbol.WORD_SIZE; i++) {
+            value = (value << 8) | loadByte(address + i);
+        }
+        return value;
+    }
+
+    public void storeInt(int address, int value)
+    {
+        if ((address & 3) == 0 && address >= 0 && address <= size - Symbol.WORD_SIZE) {
+            int word = address >> 2;
+            commit(word >> PAGE_SHIFT)[word & (PAGE_WORDS-1)] = value;
+            return;
+        }
+        int offset = (Symbol.WORD_SIZE-1) * 8;
+        for (int i = 0; i < Symbol.WORD_SIZE; i++) {
+            storeByte(address + i, value >> offset);
+            offset -= 8;
+        }
+    }
+
+    private int[] commit(int index)
+    {
+        int page[] = pages[index];
+        if (page == null) {
+            page = new int[PAGE_WORDS];
+            pages[index] = page;
+            committed++;
+        }
+        return page;
+    }
+
+    private int loadByte(int address)
+    {
+        checkAddress(address);
+        int word = address >> 2;
+        int page[] = pages[word >> PAGE_SHIFT];
+        if (page == null) {
+            return 0;
+        }
+        int shift = (3 - (address & 3)) * 8;
+        return (page[word & (PAGE_WORDS-1)] >>> shift) & 0xFF;
+    }
+
+    private void storeByte(int address, int value)
+    {
+        checkAddress(address);
+        int word = address >> 2;
+        int page[] = commit(word >> PAGE_SHIFT);
+        int shift = (3 - (address & 3)) * 8;
+        int old = page[word & (PAGE_WORDS-1)] & ~(0xFF << shift);
+        page[word & (PAGE_WORDS-1)] = old | ((value & 0xFF) << shift);
+    }
+
+    private void checkAddress(int address)
+    {
+        if (address < 0 || address >= size) {
+            throw new ArrayIndexOutOfBoundsException(address);
+        }
+    }
+}
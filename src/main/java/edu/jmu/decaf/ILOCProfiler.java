@@ -0,0 +1,488 @@
+package edu.jmu.decaf;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Instruction-level execution profiler for the {@link ILOCInterpreter}:
+ *
+ * <pre>
+ * ILOCProfiler profiler = new ILOCProfiler();
+ * interp.setExecutionListener(profiler);
+ * interp.process(program);
+ * profiler.printFlatProfile(System.out);
+ * </pre>
+ *
+ * While the program runs, the profiler only increments a counter per
+ * instruction index and, at calls and returns, tracks the dynamic call graph
+ * and the number of instructions executed inside each function (including
+ * its callees). Counts per instruction form, basic block, and function are
+ * derived from the per-instruction counts when a report is written.
+ *
+ * Reports are sorted by decreasing count and are available as a
+ * human-readable flat profile, as CSV (one row per item, see
+ * {@link #writeCSV}), or as JSON.
+ */
+public class ILOCProfiler extends DefaultExecutionListener
+{
+    /**
+     * Name used for the caller of {@code main}
+     */
+    public static final String START = "<start>";
+
+    private ILOCImage image;
+    private int opcodes[];
+    private int values[];
+
+    private long counts[];          // per instruction
+    private long total;
+    private long calls[];           // per function
+    private long inclusive[];       // per function
+    private long edges[][];         // [caller][callee]; caller START is last
+
+    private int stack[];            // active functions
+    private long entryTotals[];     // value of total at each activation
+    private int depth;
+    private int active[];           // number of activations per function
+
+    private int functionOf[];       // per instruction
+    private int blockOf[];          // per instruction (block ID or -1)
+
+    /**
+     * Returns the total number of instructions executed
+     * @return Instruction count
+     */
+    public long getTotalInstructions()
+    {
+        return total;
+    }
+
+    /**
+     * Returns the number of times an instruction was executed
+     * @param pc Code index in the interpreter's image
+     * @return Execution count
+     */
+    public long getInstructionCount(int pc)
+    {
+        return counts[pc];
+    }
+
+    /**
+     * Returns the number of times a function was called
+     * @param name Function name
+     * @return Call count
+     */
+    public long getCallCount(String name)
+    {
+        int func = image.getFunctionID(name);
+        return (func < 0 ? 0 : calls[func]);
+    }
+
+    /**
+     * Returns the number of instructions executed by a function, excluding
+     * its callees
+     * @param name Function name
+     * @return Instruction count
+     */
+    public long getSelfCount(String name)
+    {
+        int func = image.getFunctionID(name);
+        return (func < 0 ? 0 : getFunctionCounts()[func]);
+    }
+
+    /**
+     * Returns the number of instructions executed by a function, including
+     * its callees (recursive activations are only counted once)
+     * @param name Function name
+     * @return Instruction count
+     */
+    public long getInclusiveCount(String name)
+    {
+        int func = image.getFunctionID(name);
+        return (func < 0 ? 0 : inclusive[func]);
+    }
+
+    /**
+     * Returns the number of calls from one function to another
+     * @param caller Calling function name (or {@link #START})
+     * @param callee Called function name
+     * @return Call count
+     */
+    public long getCallCount(String caller, String callee)
+    {
+        int from = (caller.equals(START) ? edges.length - 1 : image.getFunctionID(caller));
+        int to = image.getFunctionID(callee);
+        return (from < 0 || to < 0 ? 0 : edges[from][to]);
+    }
+
+    // ExecutionListener
+
+    @Override
+    public void programLoaded(ILOCInterpreter interp)
+    {
+        image = interp.getImage();
+        opcodes = image.opcodes;
+        values = image.values;
+        int numFunctions = image.functionNames.length;
+        counts = new long[image.size()];
+        total = 0;
+        calls = new long[numFunctions];
+        inclusive = new long[numFunctions];
+        edges = new long[numFunctions + 1][numFunctions];
+        stack = new int[16];
+        entryTotals = new long[16];
+        depth = 0;
+        active = new int[numFunctions];
+        mapInstructions();
+    }
+
+    @Override
+    public void programStarted(ILOCInterpreter interp)
+    {
+        enter(edges.length - 1, image.getFunctionID("main"));
+    }
+
+    @Override
+    public void beforeInstruction(ILOCInterpreter interp, int pc)
+    {
+        counts[pc]++;
+        total++;
+        switch (opcodes[pc]) {
+        case ILOCImage.OP_CALL:
+            if (values[pc * ILOCImage.SLOTS] >= 0) {
+                enter(stack[depth - 1], values[pc * ILOCImage.SLOTS]);
+            }
+            break;
+        case ILOCImage.OP_RETURN:
+            leave();
+            break;
+        }
+    }
+
+    private void enter(int caller, int callee)
+    {
+        calls[callee]++;
+        edges[caller][callee]++;
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+            entryTotals = Arrays.copyOf(entryTotals, depth * 2);
+        }
+        stack[depth] = callee;
+        entryTotals[depth] = total;
+        depth++;
+        active[callee]++;
+    }
+
+    private void leave()
+    {
+        depth--;
+        int func = stack[depth];
+        if (--active[func] == 0) {
+            inclusive[func] += total - entryTotals[depth];
+        }
+    }
+
+    /**
+     * Find the function and basic block of every instruction in the image
+     */
+    private void mapInstructions()
+    {
+        functionOf = new int[image.size()];
+        blockOf = new int[image.size()];
+        Map<ILOCInstruction, Integer> blocks =
+            new IdentityHashMap<ILOCInstruction, Integer>();
+        for (ILOCFunction func : image.program.functions) {
+            func.getEntryBlock();       // builds allBlocks if necessary
+            for (ILOCBasicBlock bb : func.allBlocks) {
+                for (ILOCInstruction insn : bb.instructions) {
+                    blocks.put(insn, Integer.valueOf(bb.id));
+                }
+            }
+        }
+        for (int f = 0; f < image.functionNames.length; f++) {
+            int start = image.functionEntries[f];
+            int end = (f + 1 < image.functionEntries.length ?
+                    image.functionEntries[f+1] : image.size());
+            int block = -1;
+            for (int pc = start; pc < end; pc++) {
+                // instructions outside the CFG (e.g., jumps added when it was
+                // flattened) belong to the preceding block
+                Integer id = blocks.get(image.code[pc]);
+                if (id != null) {
+                    block = id.intValue();
+                }
+                functionOf[pc] = f;
+                blockOf[pc] = block;
+            }
+        }
+    }
+
+    // aggregation
+
+    /**
+     * Profile entry: a name and a count
+     */
+    private static class Entry implements Comparable<Entry>
+    {
+        public final String function;
+        public final String name;
+        public final long count;
+
+        public Entry(String function, String name, long count)
+        {
+            this.function = function;
+            this.name = name;
+            this.count = count;
+        }
+
+        public int compareTo(Entry other)
+        {
+            return (count != other.count ? (count > other.count ? -1 : 1) : 0);
+        }
+    }
+
+    private long[] getFunctionCounts()
+    {
+        long[] self = new long[image.functionNames.length];
+        for (int pc = 0; pc < counts.length; pc++) {
+            self[functionOf[pc]] += counts[pc];
+        }
+        return self;
+    }
+
+    private List<Entry> getInstructionEntries()
+    {
+        List<Entry> entries = new ArrayList<Entry>();
+        for (int pc = 0; pc < counts.length; pc++) {
+            if (counts[pc] > 0) {
+                entries.add(new Entry(image.functionNames[functionOf[pc]],
+                        pc + ": " + image.code[pc].toString(false).trim(), counts[pc]));
+            }
+        }
+        Collections.sort(entries);
+        return entries;
+    }
+
+    private List<Entry> getFormEntries()
+    {
+        Map<ILOCInstruction.Form, Long> forms =
+            new EnumMap<ILOCInstruction.Form, Long>(ILOCInstruction.Form.class);
+        for (int pc = 0; pc < counts.length; pc++) {
+            if (counts[pc] > 0) {
+                Long count = forms.get(image.code[pc].form);
+                forms.put(image.code[pc].form,
+                        Long.valueOf((count == null ? 0 : count.longValue()) + counts[pc]));
+            }
+        }
+        List<Entry> entries = new ArrayList<Entry>();
+        for (Map.Entry<ILOCInstruction.Form, Long> e : forms.entrySet()) {
+            entries.add(new Entry("", e.getKey().name(), e.getValue().longValue()));
+        }
+        Collections.sort(entries);
+        return entries;
+    }
+
+    private List<Entry> getBlockEntries()
+    {
+        List<Entry> entries = new ArrayList<Entry>();
+        long count = 0;
+        for (int pc = 0; pc < counts.length; pc++) {
+            count += counts[pc];
+            if (pc + 1 == counts.length || blockOf[pc+1] != blockOf[pc] ||
+                    functionOf[pc+1] != functionOf[pc]) {
+                if (count > 0) {
+                    entries.add(new Entry(image.functionNames[functionOf[pc]],
+                            "B" + blockOf[pc], count));
+                }
+                count = 0;
+            }
+        }
+        Collections.sort(entries);
+        return entries;
+    }
+
+    private List<Entry> getFunctionEntries()
+    {
+        long[] self = getFunctionCounts();
+        List<Entry> entries = new ArrayList<Entry>();
+        for (int f = 0; f < self.length; f++) {
+            if (calls[f] > 0) {
+                entries.add(new Entry(image.functionNames[f], image.functionNames[f], self[f]));
+            }
+        }
+        Collections.sort(entries);
+        return entries;
+    }
+
+    private List<Entry> getCallEntries()
+    {
+        List<Entry> entries = new ArrayList<Entry>();
+        for (int from = 0; from < edges.length; from++) {
+            for (int to = 0; to < edges[from].length; to++) {
+                if (edges[from][to] > 0) {
+                    entries.add(new Entry(from < image.functionNames.length ?
+                                image.functionNames[from] : START,
+                            image.functionNames[to], edges[from][to]));
+                }
+            }
+        }
+        Collections.sort(entries);
+        return entries;
+    }
+
+    private double percent(long count)
+    {
+        return (total == 0 ? 0.0 : 100.0 * count / total);
+    }
+
+    // reports
+
+    /**
+     * Print a flat profile: functions, instruction forms, the hottest basic
+     * blocks and instructions, and the call graph
+     * @param out Output stream
+     */
+    public void printFlatProfile(PrintStream out)
+    {
+        out.println("Flat profile (" + total + " instructions executed):");
+        out.println();
+        out.println(String.format("%7s %12s %12s %10s %10s %12s  %s",
+                    "%self", "cumulative", "self", "calls", "self/call",
+                    "inclusive", "function"));
+        long cumulative = 0;
+        for (Entry e : getFunctionEntries()) {
+            int f = image.getFunctionID(e.name);
+            cumulative += e.count;
+            out.println(String.format("%7.2f %12d %12d %10d %10.1f %12d  %s",
+                        percent(e.count), cumulative, e.count, calls[f],
+                        (double)e.count / calls[f], inclusive[f], e.name));
+        }
+
+        out.println();
+        out.println(String.format("%7s %12s  %s", "%", "count", "form"));
+        for (Entry e : getFormEntries()) {
+            out.println(String.format("%7.2f %12d  %s",
+                        percent(e.count), e.count, e.name));
+        }
+
+        out.println();
+        out.println(String.format("%7s %12s  %s", "%", "count", "block"));
+        for (Entry e : limit(getBlockEntries())) {
+            out.println(String.format("%7.2f %12d  %s:%s",
+                        percent(e.count), e.count, e.function, e.name));
+        }
+
+        out.println();
+        out.println(String.format("%7s %12s  %s", "%", "count", "instruction"));
+        for (Entry e : limit(getInstructionEntries())) {
+            out.println(String.format("%7.2f %12d  %s:%s",
+                        percent(e.count), e.count, e.function, e.name));
+        }
+
+        out.println();
+        out.println(String.format("%12s  %s", "calls", "caller -> callee"));
+        for (Entry e : getCallEntries()) {
+            out.println(String.format("%12d  %s -> %s", e.count, e.function, e.name));
+        }
+    }
+
+    private static List<Entry> limit(List<Entry> entries)
+    {
+        return entries.subList(0, Math.min(entries.size(), 10));
+    }
+
+    /**
+     * Write the profile as CSV with the columns {@code kind,function,item,count}.
+     * The kinds are {@code instruction}, {@code form}, {@code block},
+     * {@code function} (self count; rows of kind {@code calls} and
+     * {@code inclusive} give the call count and inclusive count), and
+     * {@code edge} (item is the callee).
+     * @param out Output stream
+     */
+    public void writeCSV(PrintStream out)
+    {
+        out.println("kind,function,item,count");
+        for (Entry e : getFunctionEntries()) {
+            int f = image.getFunctionID(e.name);
+            out.println("function," + csv(e.function) + ",self," + e.count);
+            out.println("calls," + csv(e.function) + ",calls," + calls[f]);
+            out.println("inclusive," + csv(e.function) + ",inclusive," + inclusive[f]);
+        }
+        writeCSV(out, "edge", getCallEntries());
+        writeCSV(out, "form", getFormEntries());
+        writeCSV(out, "block", getBlockEntries());
+        writeCSV(out, "instruction", getInstructionEntries());
+    }
+
+    private static void writeCSV(PrintStream out, String kind, List<Entry> entries)
+    {
+        for (Entry e : entries) {
+            out.println(kind + "," + csv(e.function) + "," + csv(e.name) + "," + e.count);
+        }
+    }
+
+    private static String csv(String value)
+    {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Write the profile as a single JSON object
+     * @param out Output stream
+     */
+    public void writeJSON(PrintStream out)
+    {
+        out.println("{");
+        out.println("  \"total\": " + total + ",");
+        out.println("  \"functions\": [");
+        List<Entry> functions = getFunctionEntries();
+        for (int i = 0; i < functions.size(); i++) {
+            Entry e = functions.get(i);
+            int f = image.getFunctionID(e.name);
+            out.print("    {\"name\": " + json(e.name) + ", \"calls\": " + calls[f] +
+                    ", \"self\": " + e.count + ", \"inclusive\": " + inclusive[f] + "}");
+            out.println(i + 1 < functions.size() ? "," : "");
+        }
+        out.println("  ],");
+        writeJSON(out, "calls", "caller", "callee", getCallEntries(), true);
+        writeJSON(out, "forms", null, "form", getFormEntries(), true);
+        writeJSON(out, "blocks", "function", "block", getBlockEntries(), true);
+        writeJSON(out, "instructions", "function", "instruction", getInstructionEntries(), false);
+        out.println("}");
+    }
+
+    private static void writeJSON(PrintStream out, String key, String functionKey,
+            String nameKey, List<Entry> entries, boolean comma)
+    {
+        out.println("  " + json(key) + ": [");
+        for (int i = 0; i < entries.size(); i++) {
+            Entry e = entries.get(i);
+            out.print("    {");
+            if (functionKey != null) {
+                out.print(json(functionKey) + ": " + json(e.function) + ", ");
+            }
+            out.print(json(nameKey) + ": " + json(e.name) + ", \"count\": " + e.count + "}");
+            out.println(i + 1 < entries.size() ? "," : "");
+        }
+        out.println(comma ? "  ]," : "  ]");
+    }
+
+    private static String json(String value)
+    {
+        StringBuilder str = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '"' || ch == '\\') {
+                str.append('\\').append(ch);
+            } else if (ch < 0x20) {
+                str.append(String.format("\\u%04x", (int)ch));
+            } else {
+                str.append(ch);
+            }
+        }
+        return str.append('"').toString();
+    }
+}
@@ -0,0 +1,14 @@
+package edu.jmu.decaf;
+
+/**
+ * Error encountered while executing an ILOC program (e.g., stack overflow).
+ */
+public class ILOCRuntimeException extends RuntimeException
+{
+    public static final long serialVersionUID = 1L;
+
+    public ILOCRuntimeException(String msg)
+    {
+        super(msg);
+    }
+}
@@ -0,0 +1,773 @@
+package edu.jmu.decaf;
+
+import java.io.PrintStream;
+import java.util.*;
+
+/**
+ * Alternative execution engine for ILOC programs. Semantically equivalent to
+ * {@link ILOCInterpreter} (same memory layout, calling convention, and
+ * register windows), but instead of decoding every instruction each time it
+ * executes, it translates each function's basic blocks (as built by
+ * {@link ILOCFunction#buildCFG}) once into arrays of small handler objects.
+ *
+ * Each handler is specialized on the shapes of its operands (e.g., there are
+ * separate handlers for "add reg, reg => reg" and "addI reg, const => reg"),
+ * and register operands are resolved to indices in the current register
+ * window ahead of time. Blocks are split after every call and return, so each
+ * compiled block ends with exactly one control transfer (jump, branch,
+ * fall-through, call, or return) that selects the next block to run. Return
+ * addresses pushed on the stack are compiled block indices rather than
+ * instruction indices.
+ *
+ * Tracing and instruction budgets are not supported; use {@link
+ * ILOCInterpreter} for debugging. A run can be stopped from another thread
+ * with a {@link CancellationToken} or by interrupting the interpreting
+ * thread; cancellation is polled every {@code POLL_INTERVAL} blocks.
+ */
+public class ILOCThreadedInterpreter implements ILOCProcessor
+{
+    /**
+     * Number of blocks executed between cancellation checks
+     */
+    private static final int POLL_INTERVAL = 1024;
+
+    private ILOCMemory memory;
+    private PrintStream output;
+    private boolean sharedRegs;
+    private int sp, bp, ret;
+    private int returnValue;
+    private CancellationToken token;
+    private ILOCInterpreter.Status status;
+
+    // current register window
+    private int regs[];
+
+    // call stack (function index and register window of each activation)
+    private int callDepth;
+    private int callStack[];
+    private int windowPool[][];
+
+    // compiled program
+    private ILOCProgram currentProgram;
+    private ILOCImage image;
+    private Block blocks[];
+    private int functionBlocks[];
+    private int functionWindowSizes[];
+
+    public ILOCThreadedInterpreter()
+    {
+        this.memory = new ILOCWordMemory(ILOCInterpreter.DEFAULT_MEM_SIZE);
+        this.output = null;
+        this.sharedRegs = false;
+        this.callStack = new int[16];
+        this.windowPool = new int[16][];
+        this.returnValue = -1;
+    }
+
+    /**
+     * Select the virtual register model (see
+     * {@link ILOCInterpreter#setSharedRegisters})
+     * @param shared Use a single shared register file
+     */
+    public void setSharedRegisters(boolean shared)
+    {
+        this.sharedRegs = shared;
+    }
+
+    /**
+     * Replace the data memory with a new zero-filled memory of the given size
+     * @param size Size (in bytes); must be a multiple of the word size
+     */
+    public void setMemorySize(int size)
+    {
+        this.memory = new ILOCWordMemory(size);
+    }
+
+    /**
+     * Set the token that is polled for cancellation during runs
+     * @param token Cancellation token (or null)
+     */
+    public void setCancellationToken(CancellationToken token)
+    {
+        this.token = token;
+    }
+
+    /**
+     * Returns how the last run ended ({@code HALTED} or {@code CANCELLED})
+     * @return Status of the last run (or null if the last run failed)
+     */
+    public ILOCInterpreter.Status getStatus()
+    {
+        return status;
+    }
+
+    /**
+     * Replace the data memory backend
+     * @param memory New data memory
+     */
+    public void setMemory(ILOCMemory memory)
+    {
+        this.memory = memory;
+    }
+
+    /**
+     * Redirect program output (see {@link ILOCInterpreter#setOutput})
+     * @param output Stream for {@code print} instructions, or null to use
+     *               whatever {@code System.out} is at the time of printing
+     *               (the default)
+     */
+    public void setOutput(PrintStream output)
+    {
+        this.output = output;
+    }
+
+    private PrintStream out()
+    {
+        return (output != null ? output : System.out);
+    }
+
+    public void process(ILOCProgram program)
+    {
+        // compile
+        currentProgram = program;
+        image = ILOCImage.link(program);
+        compile(program);
+
+        // initialize system state (and clear memory left over from any
+        // previous run)
+        memory.clear();
+        sp = memory.size(); bp = sp; ret = -1;
+        callDepth = 0;
+        regs = new int[sharedRegs ? image.numRegisters : 0];
+        windowPool[0] = regs;
+        status = null;
+
+        // goto program entry point
+        int main = image.getFunctionID("main");
+        if (main < 0) {
+            throw new ILOCRuntimeException("Undefined function: main");
+        }
+        int b = enterFunction(main, -1);
+
+        // run until main returns (or the run is cancelled)
+        int pollCountdown = POLL_INTERVAL;
+        while (b >= 0) {
+            if (--pollCountdown == 0) {
+                pollCountdown = POLL_INTERVAL;
+                if ((token != null && token.isCancelled()) ||
+                        Thread.currentThread().isInterrupted()) {
+                    status = ILOCInterpreter.Status.CANCELLED;
+                    returnValue = ret;
+                    return;
+                }
+            }
+            Block block = blocks[b];
+            Op ops[] = block.ops;
+            for (int i = 0; i < ops.length; i++) {
+                ops[i].exec(this);
+            }
+            b = block.exit.next(this);
+        }
+
+        status = ILOCInterpreter.Status.HALTED;
+        returnValue = ret;
+    }
+
+    /**
+     * Returns the return value of the last program run
+     * @return Value in the RET register when {@code main} returned
+     */
+    public int getReturnValue()
+    {
+        return returnValue;
+    }
+
+    public void storeInt(int address, int value)
+    {
+        memory.storeInt(address, value);
+    }
+
+    public int loadInt(int address)
+    {
+        return memory.loadInt(address);
+    }
+
+    public void push(int value)
+    {
+        sp -= Symbol.WORD_SIZE;
+        checkStack();
+        storeInt(sp, value);
+    }
+
+    public int pop()
+    {
+        int value = loadInt(sp);
+        sp += Symbol.WORD_SIZE;
+        return value;
+    }
+
+    public void checkStack()
+    {
+        if (sp < currentProgram.staticSize) {
+            throw new ILOCRuntimeException("Stack overflow (sp=" + sp +
+                    ", static data size=" + currentProgram.staticSize +
+                    ", memory size=" + memory.size() + ")");
+        }
+    }
+
+    /**
+     * Set up a new activation
+     * @param func Function index
+     * @param returnBlock Block to resume when the function returns
+     * @return First block of the function
+     */
+    private int enterFunction(int func, int returnBlock)
+    {
+        push(returnBlock);
+        push(bp);
+        bp = sp;
+        sp -= image.functionLocalSizes[func];
+        checkStack();
+
+        callDepth++;
+        if (callDepth == callStack.length) {
+            callStack = Arrays.copyOf(callStack, callDepth * 2);
+            windowPool = Arrays.copyOf(windowPool, callDepth * 2);
+        }
+        callStack[callDepth] = func;
+        if (!sharedRegs) {
+            int size = functionWindowSizes[func];
+            int window[] = windowPool[callDepth];
+            if (window == null || window.length < size) {
+                window = new int[size];
+                windowPool[callDepth] = window;
+            }
+            regs = window;
+        }
+        return functionBlocks[func];
+    }
+
+    /**
+     * Tear down the current activation
+     * @return Block to resume (or -1 if {@code main} returned)
+     */
+    private int leaveFunction()
+    {
+        sp = bp;
+        bp = pop();
+        int func = callStack[callDepth--];
+        if (!sharedRegs) {
+            regs = windowPool[callDepth];
+        }
+        int returnBlock = pop();
+        sp += image.functionParamSizes[func];
+        return returnBlock;
+    }
+
+    /**
+     * Translate all functions into compiled blocks
+     * @param program Program to compile
+     */
+    private void compile(ILOCProgram program)
+    {
+        int numFunctions = program.functions.size();
+        functionBlocks = new int[numFunctions];
+        functionWindowSizes = new int[numFunctions];
+
+        // pass 1: split CFG blocks into pieces that end with at most one
+        // control transfer, and record where each label and block starts
+        List<Piece> pieces = new ArrayList<Piece>();
+        Map<Integer, Integer> labelBlocks = new HashMap<Integer, Integer>();
+        Map<ILOCBasicBlock, Integer> cfgBlocks =
+            new IdentityHashMap<ILOCBasicBlock, Integer>();
+        int fid = 0;
+        for (ILOCFunction func : program.functions) {
+            functionBlocks[fid] = pieces.size();
+            functionWindowSizes[fid] = (sharedRegs ?
+                    image.numRegisters : image.functionRegCounts[fid]);
+            func.getEntryBlock();       // builds allBlocks if necessary
+            for (ILOCBasicBlock bb : func.allBlocks) {
+                cfgBlocks.put(bb, Integer.valueOf(pieces.size()));
+                Piece piece = new Piece(fid, bb);
+                pieces.add(piece);
+                for (ILOCInstruction insn : bb.instructions) {
+                    if (insn.form == ILOCInstruction.Form.LABEL) {
+                        labelBlocks.put(Integer.valueOf(insn.operands[0].id),
+                                Integer.valueOf(pieces.size() - 1));
+                    }
+                    piece.instructions.add(insn);
+                    if (insn.form == ILOCInstruction.Form.CALL ||
+                        insn.form == ILOCInstruction.Form.RETURN) {
+                        piece = new Piece(fid, bb);
+                        pieces.add(piece);
+                    }
+                }
+                piece.last = true;
+            }
+            fid++;
+        }
+
+        // pass 2: compile each piece
+        blocks = new Block[pieces.size()];
+        for (int i = 0; i < blocks.length; i++) {
+            Piece piece = pieces.get(i);
+            int base = (sharedRegs ? 0 : image.functionRegBases[piece.function]);
+            List<Op> ops = new ArrayList<Op>();
+            Exit exit = null;
+            for (ILOCInstruction insn : piece.instructions) {
+                switch (insn.form) {
+                case JUMP:
+                    exit = new Jump(target(labelBlocks, insn.operands[0]));
+                    break;
+                case CBR:
+                    exit = new Branch(operand(insn.operands[0], base),
+                            target(labelBlocks, insn.operands[1]),
+                            target(labelBlocks, insn.operands[2]));
+                    break;
+                case CALL:
+                    int callee = image.getFunctionID(insn.operands[0].strConstant);
+                    if (callee < 0) {
+                        throw new ILOCRuntimeException("Undefined function: " +
+                                insn.operands[0].strConstant);
+                    }
+                    exit = new Call(callee, i + 1);
+                    break;
+                case RETURN:
+                    exit = new Return();
+                    break;
+                default:
+                    Op op = compile(insn, base);
+                    if (op != null) {
+                        ops.add(op);
+                    }
+                    break;
+                }
+            }
+            if (exit == null) {
+                // fall through to the CFG successor (or the next piece of
+                // the same CFG block)
+                int next = i + 1;
+                if (piece.last && piece.block.targets.size() > 0) {
+                    next = cfgBlocks.get(piece.block.targets.get(0)).intValue();
+                }
+                exit = new Jump(next);
+            }
+            blocks[i] = new Block(ops.toArray(new Op[ops.size()]), exit);
+        }
+    }
+
+    /**
+     * Look up the compiled block for a jump label
+     */
+    private static int target(Map<Integer, Integer> labelBlocks, ILOCOperand label)
+    {
+        Integer b = labelBlocks.get(Integer.valueOf(label.id));
+        if (b == null) {
+            throw new ILOCRuntimeException("Undefined label: " + label.toString());
+        }
+        return b.intValue();
+    }
+
+    /**
+     * Resolve an operand into a generic (kind, value) pair; virtual register
+     * IDs are translated to register window indices
+     */
+    private static int[] operand(ILOCOperand op, int base)
+    {
+        if (op == null) {
+            return new int[] { ILOCImage.NONE, 0 };
+        }
+        switch (op.type) {
+        case VIRTUAL_REG:   return new int[] { ILOCImage.VIRTUAL_REG, op.id - base };
+        case INT_CONST:     return new int[] { ILOCImage.INT_CONST, op.intConstant };
+        case BASE_REG:      return new int[] { ILOCImage.BASE_REG, 0 };
+        case RETURN_REG:    return new int[] { ILOCImage.RETURN_REG, 0 };
+        default:            return new int[] { ILOCImage.NONE, 0 };
+        }
+    }
+
+    private static boolean isReg(int[] op)
+    {
+        return op[0] == ILOCImage.VIRTUAL_REG;
+    }
+
+    private static boolean isConst(int[] op)
+    {
+        return op[0] == ILOCImage.INT_CONST;
+    }
+
+    private static boolean isBase(int[] op)
+    {
+        return op[0] == ILOCImage.BASE_REG;
+    }
+
+    /**
+     * Select a specialized handler for a single non-branching instruction
+     * @param insn Instruction to compile
+     * @param base Register ID that maps to window index zero
+     * @return Handler (or null if the instruction has no effect)
+     */
+    private Op compile(ILOCInstruction insn, int base)
+    {
+        int opcode = ILOCImage.decode(insn);
+        int n = insn.operands.length;
+        int[] a = operand(n > 0 ? insn.operands[0] : null, base);
+        int[] b = operand(n > 1 ? insn.operands[1] : null, base);
+        int[] c = operand(n > 2 ? insn.operands[2] : null, base);
+
+        switch (opcode) {
+        case ILOCImage.OP_NOP:
+            return null;
+
+        case ILOCImage.OP_MOVE:
+            if (isConst(a) && isReg(b)) return new MoveConst(a[1], b[1]);
+            if (isReg(a) && isReg(b))   return new MoveReg(a[1], b[1]);
+            break;
+
+        case ILOCImage.OP_LOAD_AO:
+            if (isBase(a) && isConst(b) && isReg(c)) return new LoadFrame(b[1], c[1]);
+            if (isReg(a) && isReg(b) && isReg(c))    return new LoadIndexed(a[1], b[1], c[1]);
+            break;
+
+        case ILOCImage.OP_STORE_AO:
+            if (isReg(a) && isBase(b) && isConst(c)) return new StoreFrame(a[1], c[1]);
+            if (isReg(a) && isReg(b) && isReg(c))    return new StoreIndexed(a[1], b[1], c[1]);
+            break;
+
+        case ILOCImage.OP_ADD:
+            if (isReg(a) && isReg(b) && isReg(c))   return new AddRR(a[1], b[1], c[1]);
+            if (isReg(a) && isConst(b) && isReg(c)) return new AddRC(a[1], b[1], c[1]);
+            break;
+        case ILOCImage.OP_SUB:
+            if (isReg(a) && isReg(b) && isReg(c))   return new SubRR(a[1], b[1], c[1]);
+            break;
+        case ILOCImage.OP_MULT:
+            if (isReg(a) && isReg(b) && isReg(c))   return new MultRR(a[1], b[1], c[1]);
+            if (isReg(a) && isConst(b) && isReg(c)) return new MultRC(a[1], b[1], c[1]);
+            break;
+
+        case ILOCImage.OP_CMP_LT:
+        case ILOCImage.OP_CMP_LE:
+        case ILOCImage.OP_CMP_EQ:
+        case ILOCImage.OP_CMP_GE:
+        case ILOCImage.OP_CMP_GT:
+        case ILOCImage.OP_CMP_NE:
+            if (isReg(a) && isReg(b) && isReg(c)) return new CompareRR(opcode, a[1], b[1], c[1]);
+            break;
+
+        case ILOCImage.OP_PARAM:
+            if (isReg(a)) return new ParamReg(a[1]);
+            break;
+
+        case ILOCImage.OP_PRINT_STR:
+            return new PrintString(insn.operands[0].strConstant);
+        case ILOCImage.OP_BAD_PRINT:
+            return new Warning("WARNING: Invalid PRINT operand: " + insn.toString());
+        case ILOCImage.OP_UNHANDLED:
+            return new Warning("WARNING: Unhandled instruction: " + insn.toString());
+
+        default:
+            break;
+        }
+        return new Generic(opcode, a, b, c);
+    }
+
+    /**
+     * Split of a CFG block that ends with at most one control transfer
+     */
+    private static class Piece
+    {
+        public int function;
+        public ILOCBasicBlock block;
+        public List<ILOCInstruction> instructions;
+        public boolean last;
+
+        public Piece(int function, ILOCBasicBlock block)
+        {
+            this.function = function;
+            this.block = block;
+            this.instructions = new ArrayList<ILOCInstruction>();
+            this.last = false;
+        }
+    }
+
+    /**
+     * Compiled straight-line code followed by a single control transfer
+     */
+    private static class Block
+    {
+        public final Op ops[];
+        public final Exit exit;
+
+        public Block(Op ops[], Exit exit)
+        {
+            this.ops = ops;
+            this.exit = exit;
+        }
+    }
+
+    /**
+     * Straight-line instruction handler
+     */
+    private static abstract class Op
+    {
+        public abstract void exec(ILOCThreadedInterpreter m);
+    }
+
+    /**
+     * Control transfer at the end of a block
+     */
+    private static abstract class Exit
+    {
+        /**
+         * Perform the transfer
+         * @return Next block index (or -1 to halt)
+         */
+        public abstract int next(ILOCThreadedInterpreter m);
+    }
+
+    private static class Jump extends Exit
+    {
+        private final int target;
+        public Jump(int target) { this.target = target; }
+        public int next(ILOCThreadedInterpreter m) { return target; }
+    }
+
+    private static class Branch extends Exit
+    {
+        private final int cond[], onTrue, onFalse;
+        public Branch(int[] cond, int onTrue, int onFalse)
+        {
+            this.cond = cond; this.onTrue = onTrue; this.onFalse = onFalse;
+        }
+        public int next(ILOCThreadedInterpreter m)
+        {
+            int v = (cond[0] == ILOCImage.VIRTUAL_REG ? m.regs[cond[1]] : m.get(cond));
+            return (v != 0 ? onTrue : onFalse);
+        }
+    }
+
+    private static class Call extends Exit
+    {
+        private final int func, returnBlock;
+        public Call(int func, int returnBlock)
+        {
+            this.func = func; this.returnBlock = returnBlock;
+        }
+        public int next(ILOCThreadedInterpreter m)
+        {
+            return m.enterFunction(func, returnBlock);
+        }
+    }
+
+    private static class Return extends Exit
+    {
+        public int next(ILOCThreadedInterpreter m)
+        {
+            return m.leaveFunction();
+        }
+    }
+
+    private static class MoveConst extends Op
+    {
+        private final int value, dst;
+        public MoveConst(int value, int dst) { this.value = value; this.dst = dst; }
+        public void exec(ILOCThreadedInterpreter m) { m.regs[dst] = value; }
+    }
+
+    private static class MoveReg extends Op
+    {
+        private final int src, dst;
+        public MoveReg(int src, int dst) { this.src = src; this.dst = dst; }
+        public void exec(ILOCThreadedInterpreter m) { m.regs[dst] = m.regs[src]; }
+    }
+
+    private static class LoadFrame extends Op
+    {
+        private final int offset, dst;
+        public LoadFrame(int offset, int dst) { this.offset = offset; this.dst = dst; }
+        public void exec(ILOCThreadedInterpreter m)
+        {
+            m.regs[dst] = m.memory.loadInt(m.bp + offset);
+        }
+    }
+
+    private static class LoadIndexed extends Op
+    {
+        private final int base, offset, dst;
+        public LoadIndexed(int base, int offset, int dst)
+        {
+            this.base = base; this.offset = offset; this.dst = dst;
+        }
+        public void exec(ILOCThreadedInterpreter m)
+        {
+            int r[] = m.regs;
+            r[dst] = m.memory.loadInt(r[base] + r[offset]);
+        }
+    }
+
+    private static class StoreFrame extends Op
+    {
+        private final int src, offset;
+        public StoreFrame(int src, int offset) { this.src = src; this.offset = offset; }
+        public void exec(ILOCThreadedInterpreter m)
+        {
+            m.memory.storeInt(m.bp + offset, m.regs[src]);
+        }
+    }
+
+    private static class StoreIndexed extends Op
+    {
+        private final int src, base, offset;
+        public StoreIndexed(int src, int base, int offset)
+        {
+            this.src = src; this.base = base; this.offset = offset;
+        }
+        public void exec(ILOCThreadedInterpreter m)
+        {
+            int r[] = m.regs;
+            m.memory.storeInt(r[base] + r[offset], r[src]);
+        }
+    }
+
+    private static class AddRR extends Op
+    {
+        private final int a, b, dst;
+        public AddRR(int a, int b, int dst) { this.a = a; this.b = b; this.dst = dst; }
+        public void exec(ILOCThreadedInterpreter m) { int r[] = m.regs; r[dst] = r[a] + r[b]; }
+    }
+
+    private static class AddRC extends Op
+    {
+        private final int a, b, dst;
+        public AddRC(int a, int b, int dst) { this.a = a; this.b = b; this.dst = dst; }
+        public void exec(ILOCThreadedInterpreter m) { int r[] = m.regs; r[dst] = r[a] + b; }
+    }
+
+    private static class SubRR extends Op
+    {
+        private final int a, b, dst;
+        public SubRR(int a, int b, int dst) { this.a = a; this.b = b; this.dst = dst; }
+        public void exec(ILOCThreadedInterpreter m) { int r[] = m.regs; r[dst] = r[a] - r[b]; }
+    }
+
+    private static class MultRR extends Op
+    {
+        private final int a, b, dst;
+        public MultRR(int a, int b, int dst) { this.a = a; this.b = b; this.dst = dst; }
+        public void exec(ILOCThreadedInterpreter m) { int r[] = m.regs; r[dst] = r[a] * r[b]; }
+    }
+
+    private static class MultRC extends Op
+    {
+        private final int a, b, dst;
+        public MultRC(int a, int b, int dst) { this.a = a; this.b = b; this.dst = dst; }
+        public void exec(ILOCThreadedInterpreter m) { int r[] = m.regs; r[dst] = r[a] * b; }
+    }
+
+    private static class CompareRR extends Op
+    {
+        private final int opcode, a, b, dst;
+        public CompareRR(int opcode, int a, int b, int dst)
+        {
+            this.opcode = opcode; this.a = a; this.b = b; this.dst = dst;
+        }
+        public void exec(ILOCThreadedInterpreter m)
+        {
+            int r[] = m.regs;
+            r[dst] = (compare(opcode, r[a], r[b]) ? 1 : 0);
+        }
+    }
+
+    private static class ParamReg extends Op
+    {
+        private final int src;
+        public ParamReg(int src) { this.src = src; }
+        public void exec(ILOCThreadedInterpreter m) { m.push(m.regs[src]); }
+    }
+
+    private static class PrintString extends Op
+    {
+        private final String text;
+        public PrintString(String text) { this.text = text; }
+        public void exec(ILOCThreadedInterpreter m) { m.out().print(text); }
+    }
+
+    private static class Warning extends Op
+    {
+        private final String text;
+        public Warning(String text) { this.text = text; }
+        public void exec(ILOCThreadedInterpreter m) { m.out().println(text); }
+    }
+
+    /**
+     * Fallback handler for any operand shapes without a specialized handler
+     */
+    private static class Generic extends Op
+    {
+        private final int opcode;
+        private final int a[], b[], c[];
+        public Generic(int opcode, int[] a, int[] b, int[] c)
+        {
+            this.opcode = opcode; this.a = a; this.b = b; this.c = c;
+        }
+        public void exec(ILOCThreadedInterpreter m)
+        {
+            switch (opcode) {
+            case ILOCImage.OP_MOVE:     m.set(b, m.get(a)); break;
+            case ILOCImage.OP_LOAD:     m.set(b, m.loadInt(m.get(a))); break;
+            case ILOCImage.OP_LOAD_AO:  m.set(c, m.loadInt(m.get(a) + m.get(b))); break;
+            case ILOCImage.OP_STORE:    m.storeInt(m.get(b), m.get(a)); break;
+            case ILOCImage.OP_STORE_AO: m.storeInt(m.get(b) + m.get(c), m.get(a)); break;
+            case ILOCImage.OP_ADD:      m.set(c, m.get(a) + m.get(b)); break;
+            case ILOCImage.OP_SUB:      m.set(c, m.get(a) - m.get(b)); break;
+            case ILOCImage.OP_MULT:     m.set(c, m.get(a) * m.get(b)); break;
+            case ILOCImage.OP_DIV:      m.set(c, m.get(a) / m.get(b)); break;
+            case ILOCImage.OP_AND:      m.set(c, m.get(a) != 0 && m.get(b) != 0 ? 1 : 0); break;
+            case ILOCImage.OP_OR:       m.set(c, m.get(a) != 0 || m.get(b) != 0 ? 1 : 0); break;
+            case ILOCImage.OP_NOT:      m.set(b, m.get(a) == 0 ? 1 : 0); break;
+            case ILOCImage.OP_NEG:      m.set(b, -m.get(a)); break;
+            case ILOCImage.OP_PARAM:    m.push(m.get(a)); break;
+            case ILOCImage.OP_PRINT_INT: m.out().print(m.get(a)); break;
+            default:
+                m.set(c, compare(opcode, m.get(a), m.get(b)) ? 1 : 0);
+                break;
+            }
+        }
+    }
+
+    private static boolean compare(int opcode, int a, int b)
+    {
+        switch (opcode) {
+        case ILOCImage.OP_CMP_LT:   return a < b;
+        case ILOCImage.OP_CMP_LE:   return a <= b;
+        case ILOCImage.OP_CMP_EQ:   return a == b;
+        case ILOCImage.OP_CMP_GE:   return a >= b;
+        case ILOCImage.OP_CMP_GT:   return a > b;
+        default:                    return a != b;
+        }
+    }
+
+    private int get(int[] op)
+    {
+        switch (op[0]) {
+        case ILOCImage.VIRTUAL_REG: return regs[op[1]];
+        case ILOCImage.INT_CONST:   return op[1];
+        case ILOCImage.BASE_REG:    return bp;
+        case ILOCImage.RETURN_REG:  return ret;
+        default:                    assert(false);      // invalid operand
+                                    return -1;
+        }
+    }
+
+    private void set(int[] op, int value)
+    {
+        switch (op[0]) {
+        case ILOCImage.VIRTUAL_REG: regs[op[1]] = value; break;
+        case ILOCImage.BASE_REG:    bp = value; break;
+        case ILOCImage.RETURN_REG:  ret = value; break;
+        default:                    assert(false);      // invalid operand
+        }
+    }
+
+}
@@ -0,0 +1,43 @@
+package edu.jmu.decaf;
+
+/**
+ * Prints every instruction executed by an {@link ILOCInterpreter} along with
+ * the full system state after each one. This is the listener behind
+ * {@code new ILOCInterpreter(true)}.
+ */
+public class ILOCTracer extends DefaultExecutionListener
+{
+    @Override
+    public void programLoaded(ILOCInterpreter interp)
+    {
+        ILOCImage image = interp.getImage();
+        System.out.println();
+        System.out.println("All code:");
+        for (int i=0; i<image.size(); i++) {
+            System.out.print(String.format("%4d", i) + ": ");
+            System.out.println(image.code[i].toString());
+        }
+        System.out.println();
+
+        interp.dumpSystemState();
+        System.out.println("Calling main()\n");
+    }
+
+    @Override
+    public void programStarted(ILOCInterpreter interp)
+    {
+        interp.dumpSystemState();
+    }
+
+    @Override
+    public void beforeInstruction(ILOCInterpreter interp, int pc)
+    {
+        System.out.println("Executing: " + interp.getImage().code[pc].toString());
+    }
+
+    @Override
+    public void afterInstruction(ILOCInterpreter interp, int pc)
+    {
+        interp.dumpSystemState();
+    }
+}
@@ -0,0 +1,86 @@
+package edu.jmu.decaf;
+
+import java.util.*;
+
+/**
+ * Word-addressed implementation of {@link ILOCMemory}. Memory is stored as an
+ * array of 32-bit words, so aligned loads and stores (which is all that the
+ * code generator ever emits) are a single array access. Unaligned accesses
+ * are still supported; they are split into individual byte accesses with the
+ * same big-endian layout as {@link ILOCByteMemory}.
+ */
+public class ILOCWordMemory implements ILOCMemory
+{
+    private int words[];
+    private int size;
+
+    /**
+     * Create a new zero-filled memory
+     * @param size Size (in bytes); must be a multiple of the word size
+     */
+    public ILOCWordMemory(int size)
+    {
+        if (size <= 0 || size % Symbol.WORD_SIZE != 0) {
+            throw new IllegalArgumentException("Invalid memory size: " + size);
+        }
+        this.words = new int[size / Symbol.WORD_SIZE];
+        this.size = size;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public void clear()
+    {
+        Arrays.fill(words, 0);
+    }
+
+    public int loadInt(int address)
+    {
+        if ((address & 3) == 0 && address <= size - Symbol.WORD_SIZE) {
+            return words[address >> 2];
+        }
+        int value = 0;
+        for (int i = 0; i < Symbol.WORD_SIZE; i++) {
+            value = (value << 8) | loadByte(address + i);
+        }
+        return value;
+    }
+
+    public void storeInt(int address, int value)
+    {
+        if ((address & 3) == 0 && address <= size - Symbol.WORD_SIZE) {
+            words[address >> 2] = value;
+            return;
+        }
+        int offset = (Symbol.WORD_SIZE-1) * 8;
+        for (int i = 0; i < Symbol.WORD_SIZE; i++) {
+            storeByte(address + i, value >> offset);
+            offset -= 8;
+        }
+    }
+
+    private int loadByte(int address)
+    {
+        checkAddress(address);
+        int shift = (3 - (address & 3)) * 8;
+        return (words[address >> 2] >>> shift) & 0xFF;
+    }
+
+    private void storeByte(int address, int value)
+    {
+        checkAddress(address);
+        int shift = (3 - (address & 3)) * 8;
+        int word = words[address >> 2] & ~(0xFF << shift);
+        words[address >> 2] = word | ((value & 0xFF) << shift);
+    }
+
+    private void checkAddress(int address)
+    {
+        if (address < 0 || address >= size) {
+            throw new ArrayIndexOutOfBoundsException(address);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package edu.jmu.decaf;
+
+import java.io.*;
+import java.lang.ref.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Thread-safe pool that runs many independent ILOC programs in parallel:
+ *
+ * <pre>
+ * InterpreterPool pool = new InterpreterPool();
+ * Future&lt;InterpreterPool.Result&gt; f = pool.submit(program);
+ * System.out.print(f.get().getOutput());
+ * pool.shutdown();
+ * </pre>
+ *
+ * Each run gets an idle {@link ILOCInterpreter} from the pool (so memory and
+ * register windows are recycled rather than reallocated), and its output is
+ * captured instead of going to {@code System.out}. Programs are linked once:
+ * the pool caches the {@link ILOCImage} of every program it has seen, and
+ * images can also be linked by the caller and submitted directly.
+ *
+ * Runs can be limited with an instruction budget and stopped with a
+ * {@link CancellationToken} or with {@link Future#cancel Future.cancel(true)}.
+ * Programs must not be modified after they have been submitted.
+ */
+public class InterpreterPool
+{
+    /**
+     * Outcome of a single run
+     */
+    public static class Result
+    {
+        private final ILOCInterpreter.Status status;
+        private final int returnValue;
+        private final String output;
+        private final long instructions;
+
+        public Result(ILOCInterpreter.Status status, int returnValue,
+                String output, long instructions)
+        {
+            this.status = status;
+            this.returnValue = returnValue;
+            this.output = output;
+            this.instructions = instructions;
+        }
+
+        public ILOCInterpreter.Status getStatus()   { return status; }
+        public int getReturnValue()                 { return returnValue; }
+        public String getOutput()                   { return output; }
+        public long getInstructions()               { return instructions; }
+    }
+
+    private final ExecutorService executor;
+    private final Queue<ILOCInterpreter> idle;
+    private final Map<ILOCProgram, SoftReference<ILOCImage>> images;
+    private final int memSize;
+
+    /**
+     * Create a pool with one thread per processor and the default memory
+     * size
+     */
+    public InterpreterPool()
+    {
+        this(Runtime.getRuntime().availableProcessors(),
+                ILOCInterpreter.DEFAULT_MEM_SIZE);
+    }
+
+    /**
+     * Create a pool
+     * @param threads Number of worker threads
+     * @param memSize Memory size of each interpreter (in bytes)
+     */
+    public InterpreterPool(int threads, int memSize)
+    {
+        if (memSize <= 0 || memSize % Symbol.WORD_SIZE != 0) {
+            throw new IllegalArgumentException("Invalid memory size: " + memSize);
+        }
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "iloc-interpreter");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        this.idle = new ConcurrentLinkedQueue<ILOCInterpreter>();
+        this.images = new WeakHashMap<ILOCProgram, SoftReference<ILOCImage>>();
+        this.memSize = memSize;
+    }
+
+    /**
+     * Link a program, reusing the image from an earlier run if possible
+     * @param program Program to link
+     * @return Linked image
+     */
+    public ILOCImage link(ILOCProgram program)
+    {
+        synchronized (images) {
+            SoftReference<ILOCImage> ref = images.get(program);
+            ILOCImage image = (ref == null ? null : ref.get());
+            if (image == null) {
+                image = ILOCImage.link(program);
+                images.put(program, new SoftReference<ILOCImage>(image));
+            }
+            return image;
+        }
+    }
+
+    /**
+     * Run a program without limits
+     * @param program Program to run
+     * @return Result of the run
+     */
+    public Future<Result> submit(ILOCProgram program)
+    {
+        return submit(link(program), ILOCInterpreter.UNLIMITED_FUEL, null);
+    }
+
+    /**
+     * Run a linked program image
+     * @param image Image to run
+     * @param fuel Instruction budget (or {@link ILOCInterpreter#UNLIMITED_FUEL})
+     * @param token Cancellation token (or null)
+     * @return Result of the run; the future fails with an
+     *         {@link ILOCRuntimeException} if the program traps
+     */
+    public Future<Result> submit(final ILOCImage image, final long fuel,
+            final CancellationToken token)
+    {
+        return executor.submit(new Callable<Result>() {
+            public Result call() {
+                return run(image, fuel, token);
+            }
+        });
+    }
+
+    private Result run(ILOCImage image, long fuel, CancellationToken token)
+    {
+        ILOCInterpreter interp = idle.poll();
+        if (interp == null) {
+            interp = new ILOCInterpreter();
+            interp.setMemorySize(memSize);
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream output = new PrintStream(buffer);
+        try {
+            interp.setOutput(output);
+            interp.setFuel(fuel);
+            interp.setCancellationToken(token);
+            interp.process(image);
+            output.flush();
+            return new Result(interp.getStatus(), interp.getReturnValue(),
+                    buffer.toString(), interp.getFuelUsed());
+        } finally {
+            interp.setOutput(null);
+            interp.setCancellationToken(null);
+            interp.reset();
+            idle.add(interp);
+        }
+    }
+
+    /**
+     * Stop accepting programs; runs that have already been submitted still
+     * finish
+     */
+    public void shutdown()
+    {
+        executor.shutdown();
+    }
+
+    /**
+     * Wait for all submitted runs to finish after {@link #shutdown}
+     * @param timeout Maximum time to wait
+     * @param unit Unit of {@code timeout}
+     * @return True if all runs finished
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+        throws InterruptedException
+    {
+        return executor.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,112 @@
+package edu.jmu.decaf;
+
+/**
+ * Pool of canonical strings for the names that appear in a program. The
+ * lexer looks up each identifier directly in the source text, so a name
+ * that occurs many times is only converted to a string once and all of its
+ * tokens share the same text. Keyword and symbol texts are in the pool from
+ * the start (as the constants returned by {@link Token#textOf}).
+ *
+ * There is one pool per compilation (see {@link
+ * CompilationContext#getNames}); like the rest of the context, a pool must
+ * only be used by one thread at a time.
+ */
+public class NamePool
+{
+    private String[] table;
+    private int size;
+
+    public NamePool()
+    {
+        table = new String[256];
+        size = 0;
+        for (int code = 0; code < Token.numCodes(); code++) {
+            intern(Token.textOf(code));
+        }
+    }
+
+    /**
+     * Retrieve the canonical copy of a string
+     *
+     * @param text Name
+     * @return Pooled string equal to the name
+     */
+    public String intern(String text)
+    {
+        return intern(text, 0, text.length());
+    }
+
+    /**
+     * Retrieve the canonical copy of part of a character sequence, creating
+     * a string only if the pool does not contain it yet
+     *
+     * @param text Character sequence
+     * @param start Index of the first character
+     * @param end Index after the last character
+     * @return Pooled string equal to text[start, end)
+     */
+    public String intern(CharSequence text, int start, int end)
+    {
+        // same hash as String.hashCode (which strings cache)
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+
+        int mask = table.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        String name;
+        while ((name = table[slot]) != null) {
+            if (name.hashCode() == hash && matches(name, text, start, end)) {
+                return name;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        name = text.subSequence(start, end).toString();
+        table[slot] = name;
+        size++;
+        if (size * 2 > table.length) {
+            rehash();
+        }
+        return name;
+    }
+
+    /**
+     * @return Number of distinct names in the pool
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    private static boolean matches(String name, CharSequence text, int start, int end)
+    {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash()
+    {
+        String[] old = table;
+        table = new String[old.length * 2];
+        int mask = table.length - 1;
+        for (String name : old) {
+            if (name != null) {
+                int hash = name.hashCode();
+                int slot = (hash ^ (hash >>> 16)) & mask;
+                while (table[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = name;
+            }
+        }
+    }
+}
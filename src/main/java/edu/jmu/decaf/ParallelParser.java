@@ -0,0 +1,213 @@
+package edu.jmu.decaf;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Parser that parses the top-level declarations of a large program in
+ * parallel. A Decaf program is a flat list of global variables and
+ * functions, and a function can only begin with a {@code def} keyword that
+ * is not nested inside braces, parentheses, or brackets. A pre-scan over
+ * the tokens splits the program at those keywords. Runs of segments are
+ * then parsed with {@link MyDecafParser#parseFunction} and {@link
+ * MyDecafParser#parseVariable} on the common fork-join pool, and the
+ * results are stitched back together in source order. The first segment is
+ * parsed as a program of its own (with {@link MyDecafParser#parseProgram}),
+ * and the declarations from the other segments are appended to it.
+ *
+ * The declaration parsers never look past the last token of a declaration,
+ * so a segment that parses completely yields exactly the nodes that a
+ * sequential parse would. If any segment fails to parse (e.g., because
+ * unbalanced braces made the pre-scan split the program in the wrong
+ * place), the whole program is parsed again sequentially, which reports
+ * the same first error as before. Small programs (and all programs on
+ * single-processor machines) are parsed sequentially.
+ *
+ * The pre-scan has to buffer every token of the program before any of it is
+ * parsed, which gives up the overlap of lexing and parsing and the bounded
+ * token memory of a sequential parse. The driver therefore only uses this
+ * parser for source files of at least {@link #MIN_PARALLEL_BYTES}.
+ */
+public class ParallelParser extends DecafParser
+{
+    /**
+     * Programs with fewer tokens than this are parsed sequentially
+     */
+    public static final int MIN_PARALLEL_TOKENS = 50000;
+
+    /**
+     * Source files smaller than this are parsed sequentially by the driver
+     * (about four times {@link #MIN_PARALLEL_TOKENS} tokens)
+     */
+    public static final long MIN_PARALLEL_BYTES = 1000000;
+
+    /**
+     * Approximate number of tokens parsed by each fork-join task
+     */
+    private static final int TASK_TOKENS = 10000;
+
+    private static final int DEF = Token.codeOf("def");
+    private static final int[] OPEN = {
+        Token.codeOf("{"), Token.codeOf("("), Token.codeOf("[") };
+    private static final int[] CLOSE = {
+        Token.codeOf("}"), Token.codeOf(")"), Token.codeOf("]") };
+
+    private final MyDecafParser parser;
+    private final ForkJoinPool pool;
+
+    public ParallelParser()
+    {
+        this(new MyDecafParser(), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param parser Sequential parser (must not keep any state between
+     *               calls, because it is shared by all tasks)
+     * @param pool Pool to run the tasks on
+     */
+    ParallelParser(MyDecafParser parser, ForkJoinPool pool)
+    {
+        this.parser = parser;
+        this.pool = pool;
+    }
+
+    @Override
+    public ASTProgram parse(Queue<Token> tokens) throws InvalidSyntaxException
+    {
+        if (pool.getParallelism() < 2) {
+            return parser.parse(tokens);
+        }
+        TokenBuffer buffer = (tokens instanceof TokenBuffer ?
+                (TokenBuffer)tokens : new TokenBuffer(tokens));
+        int start = buffer.mark();
+
+        // find top-level "def" keywords (this also buffers all tokens)
+        List<Integer> segments = new ArrayList<Integer>();
+        segments.add(start);
+        int depth = 0;
+        int k = 0;
+        Token t;
+        while ((t = buffer.peek(k)) != null) {
+            if (t.type == Token.Type.SYM) {
+                for (int i = 0; i < OPEN.length; i++) {
+                    if (t.code == OPEN[i]) {
+                        depth++;
+                    } else if (t.code == CLOSE[i]) {
+                        depth--;
+                    }
+                }
+            } else if (depth == 0 && k > 0 && t.type == Token.Type.KEY && t.code == DEF) {
+                segments.add(start + k);
+            }
+            k++;
+        }
+        segments.add(start + k);
+
+        if (k >= MIN_PARALLEL_TOKENS && segments.size() > 2) {
+            // parse the first segment on this thread while the rest are
+            // parsed in the pool
+            ForkJoinTask<Segments> rest = pool.submit(new ParseTask(buffer,
+                        segments, 1, segments.size() - 1));
+            ASTProgram program;
+            try {
+                program = parser.parse(buffer.slice(segments.get(0), segments.get(1)));
+            } catch (InvalidSyntaxException ex) {
+                program = null;
+            } catch (RuntimeException ex) {
+                program = null;
+            }
+            Segments result = rest.join();
+            if (program != null && result != null) {
+                buffer.reset(start + k);
+                buffer.release(start);
+                program.variables.addAll(result.variables);
+                program.functions.addAll(result.functions);
+                return program;
+            }
+        }
+
+        // small or invalid program
+        buffer.reset(start);
+        buffer.release(start);
+        return parser.parse(buffer);
+    }
+
+    /**
+     * Declarations parsed from a run of segments
+     */
+    private static class Segments
+    {
+        public List<ASTVariable> variables = new ArrayList<ASTVariable>();
+        public List<ASTFunction> functions = new ArrayList<ASTFunction>();
+    }
+
+    /**
+     * Fork-join task that parses segments [lo, hi)
+     */
+    private class ParseTask extends RecursiveTask<Segments>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final TokenBuffer buffer;
+        private final List<Integer> segments;
+        private final int lo;
+        private final int hi;
+
+        public ParseTask(TokenBuffer buffer, List<Integer> segments, int lo, int hi)
+        {
+            this.buffer = buffer;
+            this.segments = segments;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        /**
+         * @return Parsed declarations, or null if any segment is invalid
+         */
+        @Override
+        protected Segments compute()
+        {
+            int from = segments.get(lo);
+            int to = segments.get(hi);
+            if (hi - lo == 1 || to - from <= TASK_TOKENS) {
+                return parseSegments(buffer.slice(from, to));
+            }
+
+            int mid = (lo + hi) / 2;
+            ParseTask left = new ParseTask(buffer, segments, lo, mid);
+            left.fork();
+            Segments right = (new ParseTask(buffer, segments, mid, hi)).compute();
+            Segments result = left.join();
+            if (result == null || right == null) {
+                return null;
+            }
+            result.variables.addAll(right.variables);
+            result.functions.addAll(right.functions);
+            return result;
+        }
+
+        /**
+         * Parse declarations until the slice is exhausted (as in {@link
+         * MyDecafParser#parseProgram})
+         */
+        private Segments parseSegments(TokenBuffer tokens)
+        {
+            Segments result = new Segments();
+            try {
+                while (tokens.peek() != null) {
+                    if (isNextTokenKeyword(tokens, DEF)) {
+                        result.functions.add(parser.parseFunction(tokens));
+                    } else {
+                        result.variables.add(parser.parseVariable(tokens));
+                    }
+                }
+            } catch (InvalidSyntaxException ex) {
+                return null;
+            } catch (RuntimeException ex) {
+                // the sequential parse will report the problem
+                return null;
+            }
+            return result;
+        }
+    }
+}
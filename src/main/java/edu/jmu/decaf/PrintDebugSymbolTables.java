@@ -26,25 +26,22 @@ class PrintDebugSymbolTables extends DefaultASTVisitor
 
     public void indent(ASTNode node)
     {
-        if (node.attributes.containsKey("depth")) {
-            int level = ((Integer)node.attributes.get("depth")).intValue();
-            while (level > 0) {
-                output.print("  ");
-                level--;
-            }
+        int level = node.getDepth();     // -1 if not present
+        while (level > 0) {
+            output.print("  ");
+            level--;
         }
     }
 
     @Override
     public void defaultPreVisit(ASTNode node)
     {
-        if (node.attributes.containsKey("symbolTable")) {
-            SymbolTable table = (SymbolTable)node.attributes.get("symbolTable");
+        SymbolTable table = node.getSymbolTable();
+        if (table != null) {
             indent(node);
             output.println(node.getASTTypeStr());
-            if (node.attributes.containsKey("depth")) {
-                int level = ((Integer)node.attributes.get("depth")).intValue();
-                output.println(table.toString(level));
+            if (node.getDepth() >= 0) {
+                output.println(table.toString(node.getDepth()));
             } else {
                 output.println(table.toString());
             }
@@ -24,12 +24,10 @@ class PrintDebugTree extends DefaultASTVisitor
 
     public void indent(ASTNode node)
     {
-        if (node.attributes.containsKey("depth")) {
-            int level = ((Integer)node.attributes.get("depth")).intValue();
-            while (level > 0) {
-                output.print("  ");
-                level--;
-            }
+        int level = node.getDepth();     // -1 if not present
+        while (level > 0) {
+            output.print("  ");
+            level--;
         }
     }
 
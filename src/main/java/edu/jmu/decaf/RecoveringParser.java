@@ -0,0 +1,238 @@
+package edu.jmu.decaf;
+
+import java.util.*;
+
+/**
+ * Parser that reports every syntax error in a program instead of stopping
+ * at the first one (panic-mode recovery). It follows the same grammar as
+ * {@link MyDecafParser} and uses it to parse individual declarations and
+ * statements. When one of those fails, the error is recorded and the parser
+ * skips ahead to a synchronizing token:
+ *
+ * <ul>
+ * <li> a statement or variable declaration is skipped up to and including
+ *      its terminating {@code ;} (or the {@code }} that closes its body,
+ *      e.g., for a {@code while} loop) </li>
+ * <li> a function whose header cannot be parsed is skipped up to the next
+ *      {@code def} keyword, which can only start a new function </li>
+ * <li> a function body that is missing its closing {@code }} ends at the
+ *      next {@code def} keyword (or the end of the input) </li>
+ * </ul>
+ *
+ * Statements are only resynchronized at the top level of a function body,
+ * so an error inside a nested block discards the whole statement that
+ * contains it. The first error reported is the one that {@link
+ * MyDecafParser} would have thrown.
+ *
+ * Errors are not thrown. They are added to the current compilation context
+ * (as with {@link StaticAnalysis#addError(String)}), so the program that is
+ * returned, which contains everything that could be parsed, can still be
+ * analyzed and the syntax errors are reported together with any errors that
+ * static analysis finds in the unaffected functions.
+ */
+public class RecoveringParser extends DecafParser
+{
+    private static final int DEF = Token.codeOf("def");
+    private static final int INT = Token.codeOf("int");
+    private static final int BOOL = Token.codeOf("bool");
+    private static final int VOID = Token.codeOf("void");
+    private static final int SEMICOLON = Token.codeOf(";");
+    private static final int COMMA = Token.codeOf(",");
+    private static final int LPAREN = Token.codeOf("(");
+    private static final int RPAREN = Token.codeOf(")");
+    private static final int LBRACE = Token.codeOf("{");
+    private static final int RBRACE = Token.codeOf("}");
+
+    private final MyDecafParser parser;
+    private final List<String> errors;
+
+    public RecoveringParser()
+    {
+        parser = new MyDecafParser();
+        errors = new ArrayList<String>();
+    }
+
+    /**
+     * Retrieve the syntax errors found by the last call to {@link #parse}
+     * @return List of error messages (in source order)
+     */
+    public List<String> getErrors()
+    {
+        return errors;
+    }
+
+    /**
+     * Parse as much of the program as possible
+     *
+     * @param tokens Input token queue
+     * @return Parsed abstract syntax tree (without the declarations and
+     *         statements that contain syntax errors)
+     */
+    @Override
+    public ASTProgram parse(Queue<Token> tokens)
+    {
+        TokenBuffer buffer = (tokens instanceof TokenBuffer ?
+                (TokenBuffer)tokens : new TokenBuffer(tokens));
+        errors.clear();
+
+        ASTProgram program = new ASTProgram();
+        program.setSourceInfo(getCurrentSourceInfo(buffer));
+        while (buffer.peek() != null) {
+            if (isNextTokenKeyword(buffer, DEF)) {
+                ASTFunction function = parseFunction(buffer);
+                if (function != null) {
+                    program.functions.add(function);
+                }
+            } else {
+                ASTVariable variable = parseVariable(buffer);
+                if (variable != null) {
+                    program.variables.add(variable);
+                }
+            }
+        }
+        return program;
+    }
+
+    /**
+     * Parse a function (see {@link MyDecafParser#parseFunction})
+     * @return Function, or null if its header is invalid
+     */
+    private ASTFunction parseFunction(TokenBuffer tokens)
+    {
+        SourceInfo source = getCurrentSourceInfo(tokens);
+        ASTNode.DataType type;
+        String name;
+        List<ASTFunction.Parameter> parameters = new ArrayList<ASTFunction.Parameter>();
+        try {
+            matchKeyword(tokens, DEF);
+            type = parser.parseType(tokens);
+            name = parser.parseID(tokens);
+            matchSymbol(tokens, LPAREN);
+            if (!isNextTokenSymbol(tokens, RPAREN)) {
+                parameters.add(parser.parseParameter(tokens));
+                while (!isNextTokenSymbol(tokens, RPAREN)) {
+                    matchSymbol(tokens, COMMA);
+                    parameters.add(parser.parseParameter(tokens));
+                }
+            }
+            matchSymbol(tokens, RPAREN);
+        } catch (InvalidSyntaxException ex) {
+            error(ex);
+            while (tokens.peek() != null && !isNextTokenKeyword(tokens, DEF)) {
+                tokens.poll();
+            }
+            return null;
+        }
+
+        ASTFunction function = new ASTFunction(name, type, parseBlock(tokens));
+        function.parameters.addAll(parameters);
+        function.setSourceInfo(source);
+        return function;
+    }
+
+    /**
+     * Parse a function body (see {@link MyDecafParser#parseBlock})
+     * @return Block (without any invalid declarations or statements)
+     */
+    private ASTBlock parseBlock(TokenBuffer tokens)
+    {
+        ASTBlock block = new ASTBlock();
+        block.setSourceInfo(getCurrentSourceInfo(tokens));
+        try {
+            matchSymbol(tokens, LBRACE);
+        } catch (InvalidSyntaxException ex) {
+            error(ex);
+            while (tokens.peek() != null && !isNextTokenKeyword(tokens, DEF)) {
+                tokens.poll();
+            }
+            return block;
+        }
+
+        while (isNextTokenKeyword(tokens, INT) || isNextTokenKeyword(tokens, BOOL) ||
+                isNextTokenKeyword(tokens, VOID)) {
+            ASTVariable variable = parseVariable(tokens);
+            if (variable != null) {
+                block.variables.add(variable);
+            }
+        }
+        while (!isNextTokenSymbol(tokens, RBRACE)) {
+            int mark = tokens.mark();
+            try {
+                block.statements.add(parser.parseStatement(tokens));
+            } catch (InvalidSyntaxException ex) {
+                error(ex);
+                skipStatement(tokens, mark);
+                if (tokens.peek() == null || isNextTokenKeyword(tokens, DEF)) {
+                    // the body is missing its closing brace
+                    return block;
+                }
+            } finally {
+                tokens.release(mark);
+            }
+        }
+        tokens.poll();      // closing brace
+        return block;
+    }
+
+    /**
+     * Parse a global or local variable declaration (see {@link
+     * MyDecafParser#parseVariable})
+     * @return Variable, or null if the declaration is invalid
+     */
+    private ASTVariable parseVariable(TokenBuffer tokens)
+    {
+        int mark = tokens.mark();
+        try {
+            return parser.parseVariable(tokens);
+        } catch (InvalidSyntaxException ex) {
+            error(ex);
+            skipStatement(tokens, mark);
+            return null;
+        } finally {
+            tokens.release(mark);
+        }
+    }
+
+    /**
+     * Skip an invalid statement or declaration: everything from its first
+     * token up to and including a {@code ;} or {@code }} that is not nested
+     * in braces, but not a {@code }} that closes an enclosing block or a
+     * {@code def} keyword. At least one token (other than {@code def}) is
+     * always skipped.
+     *
+     * @param mark Position of the first token of the statement
+     */
+    private void skipStatement(TokenBuffer tokens, int mark)
+    {
+        tokens.reset(mark);
+        int depth = 0;
+        Token token;
+        while ((token = tokens.peek()) != null) {
+            if (token.type == Token.Type.KEY && token.code == DEF) {
+                break;
+            } else if (token.type == Token.Type.SYM && token.code == RBRACE && depth == 0) {
+                break;
+            }
+            tokens.poll();
+            if (token.type == Token.Type.SYM) {
+                if (token.code == LBRACE) {
+                    depth++;
+                } else if (token.code == RBRACE && --depth == 0) {
+                    break;
+                } else if (token.code == SEMICOLON && depth == 0) {
+                    break;
+                }
+            }
+        }
+        if (tokens.position() == mark && tokens.peek() != null &&
+                !isNextTokenKeyword(tokens, DEF)) {
+            tokens.poll();
+        }
+    }
+
+    private void error(InvalidSyntaxException ex)
+    {
+        errors.add(ex.getMessage());
+        StaticAnalysis.addError(ex.getMessage());
+    }
+}
@@ -8,10 +8,12 @@ import java.util.*;
  * from any AST static analysis pass. Errors found during static analysis are
  * usually not fatal to further analysis, and can be gathered and reported at
  * the end of the static analysis phase of compilation.
+ *
+ * Errors are kept in the current {@link CompilationContext}, so programs
+ * compiled in different contexts do not see each other's errors.
  */
 public class StaticAnalysis extends DefaultASTVisitor
 {
-    protected static List<String> errors = new ArrayList<String>();
 
     /**
      * Report an {@link InvalidProgramException} error. This error is saved
@@ -21,7 +23,7 @@ public class StaticAnalysis extends DefaultASTVisitor
      */
     public static void addError(InvalidProgramException ex)
     {
-        errors.add(ex.getMessage());
+        CompilationContext.current().addError(ex.getMessage());
     }
 
     /**
@@ -30,7 +32,7 @@ public class StaticAnalysis extends DefaultASTVisitor
      */
     public static void addError(String msg)
     {
-        errors.add(msg);
+        CompilationContext.current().addError(msg);
     }
 
     /**
@@ -38,17 +40,17 @@ public class StaticAnalysis extends DefaultASTVisitor
      */
     public static void resetErrors()
     {
-        errors = new ArrayList<String>();
+        CompilationContext.current().resetErrors();
     }
 
     /**
      * Retrieve a list of all errors encountered by any {@link StaticAnalysis}
-     * subclass thus far.
+     * subclass thus far (in the current compilation context).
      * @return List of error strings
      */
     public static List<String> getErrors()
     {
-        return errors;
+        return CompilationContext.current().getErrors();
     }
 
     /**
@@ -59,7 +61,7 @@ public class StaticAnalysis extends DefaultASTVisitor
     public static String getErrorString()
     {
         StringBuffer str = new StringBuffer();
-        for (String s : errors) {
+        for (String s : getErrors()) {
             str.append(s);
             str.append("\n");
         }
@@ -1,11 +1,48 @@
 package edu.jmu.decaf;
 
+import java.util.*;
+
 /**
  * Data structure that represents a single token of a Decaf program.
  *
  */
 public class Token
 {
+    /**
+     * Code of tokens that are not keywords or symbols
+     */
+    public static final int NO_CODE = -1;
+
+    /**
+     * Keyword, reserved word, and symbol texts, indexed by code (keywords
+     * first, then words that are reserved but unused, then symbols)
+     */
+    private static final String[] CODE_TEXT = {
+        "def", "if", "while", "return", "break", "continue", "else",
+        "int", "bool", "void", "true", "false",
+        "for", "callout", "class", "interface", "extends", "implements",
+        "new", "this", "string", "float", "double", "null",
+        "<=", ">=", "&&", "||", "==", "!=", "(", ")", "[", "]", "{", "}",
+        ",", ".", ";", "=", "+", "-", "*", "/", "%", "!", "<", ">"
+    };
+
+    /**
+     * Number of keyword codes (reserved word codes follow)
+     */
+    private static final int NUM_KEYWORDS = 12;
+
+    /**
+     * Number of keyword and reserved word codes (symbol codes follow)
+     */
+    private static final int NUM_WORDS = 24;
+
+    private static final Map<String, Integer> CODES = new HashMap<String, Integer>();
+    static {
+        for (int i = 0; i < CODE_TEXT.length; i++) {
+            CODES.put(CODE_TEXT[i], i);
+        }
+    }
+
     /**
      * Token type.
      * 
@@ -48,6 +85,13 @@ public class Token
      */
     public String text;
 
+    /**
+     * Keyword or symbol code of the token text (see {@link #codeOf}), set
+     * when the token is created so that the parser can compare codes instead
+     * of strings
+     */
+    public int code;
+
     /**
      * Token source info (filename and line number)
      */
@@ -64,12 +108,68 @@ public class Token
     }
 
     public Token(Type type, String text, SourceInfo source)
+    {
+        this(type, text, codeOf(text), source);
+    }
+
+    public Token(Type type, String text, int code, SourceInfo source)
     {
         this.type = type;
         this.text = text;
+        this.code = code;
         this.source = source;
     }
 
+    /**
+     * Look up the code of a keyword, reserved word, or symbol
+     *
+     * @param text Keyword, reserved word, or symbol text
+     * @return Code, or {@link #NO_CODE} if the text is not a keyword,
+     *         reserved word, or symbol
+     */
+    public static int codeOf(String text)
+    {
+        Integer code = CODES.get(text);
+        return (code == null ? NO_CODE : code.intValue());
+    }
+
+    /**
+     * Look up the text of a keyword, reserved word, or symbol code
+     *
+     * @param code Keyword, reserved word, or symbol code
+     * @return Canonical (interned) text
+     */
+    public static String textOf(int code)
+    {
+        return CODE_TEXT[code];
+    }
+
+    /**
+     * @return True if the code belongs to a keyword (rather than a reserved
+     *         word or a symbol)
+     */
+    public static boolean isKeywordCode(int code)
+    {
+        return code >= 0 && code < NUM_KEYWORDS;
+    }
+
+    /**
+     * @return True if the code belongs to a word that is reserved but not
+     *         used by the language (and so cannot be an identifier)
+     */
+    public static boolean isReservedCode(int code)
+    {
+        return code >= NUM_KEYWORDS && code < NUM_WORDS;
+    }
+
+    /**
+     * @return Number of keyword, reserved word, and symbol codes
+     */
+    public static int numCodes()
+    {
+        return CODE_TEXT.length;
+    }
+
     /**
      * Returns a nicely-formatted representation suitable for debug printing
      */
@@ -0,0 +1,270 @@
+package edu.jmu.decaf;
+
+import java.util.*;
+
+/**
+ * Array-backed token queue with an index cursor. Tokens are kept in a flat
+ * array and consuming a token only advances the cursor, so looking ahead
+ * {@code k} tokens ({@link #peek(int)}) takes constant time and the parser
+ * can backtrack after a speculative parse:
+ *
+ * <pre>
+ * int mark = tokens.mark();
+ * try {
+ *     ... parse one alternative ...
+ * } catch (InvalidSyntaxException ex) {
+ *     tokens.reset(mark);
+ *     ... parse another alternative ...
+ * } finally {
+ *     tokens.release(mark);
+ * }
+ * </pre>
+ *
+ * The buffer takes its tokens from a source queue (usually a lazily lexed
+ * {@link TokenStream}) as they are needed, so lexing still overlaps with
+ * parsing. Consumed tokens are kept only as long as a mark that has not been
+ * released might return to them: when the array fills up, the tokens before
+ * the cursor and the oldest outstanding mark are dropped instead of growing
+ * the array, so a parse without marks only holds a bounded window of the
+ * input. (Once a buffer has been sliced, it keeps all of its tokens.) As with
+ * a token stream, {@link #size} only counts the buffered tokens that have
+ * not been consumed (it is zero only at the end of the input), and the
+ * buffer is read-only.
+ *
+ * The {@link DecafParser} helpers work on any token queue; on a token
+ * buffer, each of them comes down to an array access and a cursor update.
+ */
+public class TokenBuffer extends AbstractQueue<Token>
+{
+    private final Queue<Token> source;
+    private final int base;
+    private Token[] tokens;
+    private int count;
+    private int cursor;
+
+    // position of tokens[0] (the number of tokens dropped so far)
+    private int offset;
+
+    // outstanding marks, and whether the array is shared with slices
+    private int[] marks;
+    private int numMarks;
+    private boolean shared;
+
+    /**
+     * Create a buffer that takes tokens from a source queue as needed
+     * @param source Source of tokens (consumed by the buffer)
+     */
+    public TokenBuffer(Queue<Token> source)
+    {
+        this.source = source;
+        base = 0;
+        tokens = new Token[256];
+        count = 0;
+        cursor = 0;
+        offset = 0;
+        marks = new int[8];
+        numMarks = 0;
+        shared = false;
+    }
+
+    /**
+     * Create a view of part of another buffer's array
+     */
+    private TokenBuffer(Token[] tokens, int from, int to, int offset)
+    {
+        this.source = null;
+        base = from;
+        this.tokens = tokens;
+        count = to;
+        cursor = from;
+        this.offset = offset;
+        marks = new int[8];
+        numMarks = 0;
+        shared = true;
+    }
+
+    /**
+     * Buffer tokens until at least {@code n} are available past the cursor
+     * or the source ends
+     * @return True if {@code n} tokens are available
+     */
+    private boolean fill(int n)
+    {
+        while (count - cursor < n) {
+            Token token = (source == null ? null : source.poll());
+            if (token == null) {
+                return false;
+            }
+            if (count == tokens.length) {
+                makeRoom();
+            }
+            tokens[count++] = token;
+        }
+        return true;
+    }
+
+    /**
+     * Make room for another token in a full array, by dropping tokens that
+     * can no longer be reached if at least half of the array is taken up by
+     * them and by growing the array otherwise
+     */
+    private void makeRoom()
+    {
+        int keep = cursor;
+        for (int i = 0; i < numMarks; i++) {
+            keep = Math.min(keep, marks[i] - offset);
+        }
+        if (!shared && keep >= tokens.length / 2) {
+            System.arraycopy(tokens, keep, tokens, 0, count - keep);
+            Arrays.fill(tokens, count - keep, count, null);
+            count -= keep;
+            cursor -= keep;
+            offset += keep;
+        } else {
+            tokens = Arrays.copyOf(tokens, 2 * count);
+        }
+    }
+
+    /**
+     * Size of the token array (for testing)
+     */
+    int capacity()
+    {
+        return tokens.length;
+    }
+
+    /**
+     * Look ahead in the buffer without consuming anything
+     *
+     * @param k Number of tokens to skip ({@code peek(0)} is the same as
+     *          {@link #peek()})
+     * @return Token k positions ahead, or null if the input ends first
+     */
+    public Token peek(int k)
+    {
+        return (cursor + k < count || fill(k + 1)) ? tokens[cursor + k] : null;
+    }
+
+    @Override
+    public Token peek()
+    {
+        return (cursor < count || fill(1)) ? tokens[cursor] : null;
+    }
+
+    @Override
+    public Token poll()
+    {
+        return (cursor < count || fill(1)) ? tokens[cursor++] : null;
+    }
+
+    /**
+     * Not supported; token buffers are read-only
+     */
+    @Override
+    public boolean offer(Token token)
+    {
+        throw new UnsupportedOperationException("Token buffers are read-only");
+    }
+
+    /**
+     * Number of buffered tokens that have not been consumed (zero only at
+     * the end of the input)
+     */
+    @Override
+    public int size()
+    {
+        fill(1);
+        return count - cursor;
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return !(cursor < count || fill(1));
+    }
+
+    /**
+     * Iterate over the buffered tokens that have not been consumed
+     */
+    @Override
+    public Iterator<Token> iterator()
+    {
+        fill(1);
+        return Collections.unmodifiableList(
+                Arrays.asList(tokens).subList(cursor, count)).iterator();
+    }
+
+    /**
+     * Retrieve the current position (the number of tokens consumed so far,
+     * counting from the start of the buffer this one is a slice of)
+     * @return Current position
+     */
+    public int position()
+    {
+        return cursor + offset;
+    }
+
+    /**
+     * Mark the current position so that the parser can return to it. The
+     * tokens from the mark on are kept until the mark is released.
+     * @return Position to be passed to {@link #reset}, {@link #release}, or
+     *         {@link #slice}
+     */
+    public int mark()
+    {
+        if (numMarks == marks.length) {
+            marks = Arrays.copyOf(marks, 2 * numMarks);
+        }
+        marks[numMarks++] = cursor + offset;
+        return cursor + offset;
+    }
+
+    /**
+     * Release a mark (the buffer may then drop the tokens before it)
+     * @param mark Position returned by {@link #mark}
+     */
+    public void release(int mark)
+    {
+        for (int i = numMarks - 1; i >= 0; i--) {
+            if (marks[i] == mark) {
+                System.arraycopy(marks, i + 1, marks, i, numMarks - i - 1);
+                numMarks--;
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Token buffer mark not found: " + mark);
+    }
+
+    /**
+     * Return to an earlier position (all tokens consumed since then are
+     * available again, as long as they have not been dropped) or skip ahead
+     * to a position that was reached before an earlier reset
+     * @param mark Position returned by {@link #mark} or {@link #position}
+     */
+    public void reset(int mark)
+    {
+        if (mark - offset < base || mark - offset > count) {
+            throw new IllegalArgumentException("Invalid token buffer mark: " + mark);
+        }
+        cursor = mark - offset;
+    }
+
+    /**
+     * Create an independent buffer over tokens that have already been
+     * buffered (without copying them)
+     *
+     * @param from Position of the first token (see {@link #mark})
+     * @param to Position after the last token
+     * @return New buffer containing only the tokens between the positions,
+     *         with its cursor at the first one
+     */
+    public TokenBuffer slice(int from, int to)
+    {
+        if (from - offset < base || from > to || to - offset > count) {
+            throw new IllegalArgumentException("Invalid token buffer slice: " +
+                    from + " to " + to);
+        }
+        shared = true;
+        return new TokenBuffer(tokens, from - offset, to - offset, offset);
+    }
+}
@@ -0,0 +1,173 @@
+package edu.jmu.decaf;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Pull-based source of tokens. Tokens are produced on demand (e.g., lexed
+ * lazily from a reader by {@link DecafScanner#stream}) and discarded once
+ * they have been consumed, so only a small lookahead window is ever kept in
+ * memory and lexing overlaps with parsing.
+ *
+ * A token stream is a read-only {@link Queue}, so it can be passed to any
+ * {@link DecafParser} (and to helpers such as {@link
+ * DecafParser#matchSymbol} and {@link DecafParser#isNextToken}) in place of
+ * a fully lexed queue. Unlike a normal queue, {@link #size} only counts the
+ * tokens that are currently buffered; it is zero only at the end of the
+ * stream, which is all the parser helpers need to know. {@link #iterator}
+ * likewise only visits buffered tokens; use {@link #peek(int)} to look
+ * further ahead.
+ *
+ * Queue methods cannot throw checked exceptions, so a lexical or I/O error
+ * ends the stream early and is thrown later by {@link #finish}, which
+ * should be called once parsing is over (successful or not):
+ *
+ * <pre>
+ * TokenStream tokens = (new DecafScanner()).stream(input, filename);
+ * try {
+ *     ast = parser.parse(tokens);
+ * } finally {
+ *     tokens.finish();    // lexical errors take precedence
+ * }
+ * </pre>
+ */
+public abstract class TokenStream extends AbstractQueue<Token>
+{
+    private final ArrayDeque<Token> lookahead;
+    private boolean exhausted;
+    private IOException ioError;
+    private InvalidTokenException tokenError;
+
+    public TokenStream()
+    {
+        lookahead = new ArrayDeque<Token>();
+        exhausted = false;
+        ioError = null;
+        tokenError = null;
+    }
+
+    /**
+     * Produce the next token
+     *
+     * @return Next token, or null at the end of the input
+     * @throws IOException Thrown if there is an error reading the input
+     * @throws InvalidTokenException Thrown if an invalid token is encountered
+     */
+    protected abstract Token readToken() throws IOException, InvalidTokenException;
+
+    /**
+     * Buffer tokens until at least {@code n} are available or the stream
+     * ends
+     * @return True if {@code n} tokens are available
+     */
+    private boolean fill(int n)
+    {
+        while (lookahead.size() < n && !exhausted) {
+            try {
+                Token token = readToken();
+                if (token == null) {
+                    exhausted = true;
+                } else {
+                    lookahead.add(token);
+                }
+            } catch (IOException ex) {
+                ioError = ex;
+                exhausted = true;
+            } catch (InvalidTokenException ex) {
+                tokenError = ex;
+                exhausted = true;
+            }
+        }
+        return lookahead.size() >= n;
+    }
+
+    /**
+     * Look ahead in the stream without consuming anything
+     *
+     * @param k Number of tokens to skip ({@code peek(0)} is the same as
+     *          {@link #peek()})
+     * @return Token k positions ahead, or null if the stream ends first
+     */
+    public Token peek(int k)
+    {
+        if (!fill(k + 1)) {
+            return null;
+        }
+        Iterator<Token> it = lookahead.iterator();
+        for (int i = 0; i < k; i++) {
+            it.next();
+        }
+        return it.next();
+    }
+
+    @Override
+    public Token peek()
+    {
+        return fill(1) ? lookahead.peek() : null;
+    }
+
+    @Override
+    public Token poll()
+    {
+        return fill(1) ? lookahead.poll() : null;
+    }
+
+    /**
+     * Not supported; token streams are read-only
+     */
+    @Override
+    public boolean offer(Token token)
+    {
+        throw new UnsupportedOperationException("Token streams are read-only");
+    }
+
+    /**
+     * Number of buffered tokens (zero only at the end of the stream)
+     */
+    @Override
+    public int size()
+    {
+        fill(1);
+        return lookahead.size();
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return !fill(1);
+    }
+
+    /**
+     * Iterate over the buffered tokens (at least one unless the stream has
+     * ended)
+     */
+    @Override
+    public Iterator<Token> iterator()
+    {
+        fill(1);
+        return Collections.unmodifiableCollection(lookahead).iterator();
+    }
+
+    /**
+     * Read (and discard) the rest of the input and report any error that
+     * ended the stream. Lexical errors are reported even if the parser
+     * stopped before reaching them, just as if the whole input had been
+     * lexed before parsing.
+     *
+     * @throws IOException Thrown if there was an error reading the input
+     * @throws InvalidTokenException Thrown if an invalid token was found
+     */
+    public void finish() throws IOException, InvalidTokenException
+    {
+        lookahead.clear();
+        while (fill(1)) {
+            lookahead.clear();
+        }
+        if (ioError != null) {
+            throw ioError;
+        }
+        if (tokenError != null) {
+            throw tokenError;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package edu.jmu.decaf;
+
+import java.io.*;
+
+/**
+ * Memory and wall-clock benchmark for the AST annotation passes on a large
+ * generated program. This is not part of the test suite; run it manually
+ * after {@code mvn test-compile}:
+ *
+ * <pre>
+ * java -Xms2g -Xmx2g -cp target/classes:target/test-classes edu.jmu.decaf.ASTBenchmark [MB]
+ * </pre>
+ *
+ * The source size defaults to 8 MB. The heap used by the annotated AST is
+ * measured after parsing, after analysis (i.e., with parent links, depths,
+ * source information, types, and symbol tables), and after code generation.
+ * A fixed heap size keeps the number of collections during the timed passes
+ * comparable between runs.
+ */
+public class ASTBenchmark
+{
+    /**
+     * Number of timed repetitions
+     */
+    public static final int REPS = 5;
+
+    /**
+     * Counts AST nodes
+     */
+    private static class NodeCounter extends DefaultASTVisitor
+    {
+        public int count = 0;
+
+        @Override
+        public void defaultPreVisit(ASTNode node)
+        {
+            count++;
+        }
+    }
+
+    private static ASTProgram parse(File file) throws Exception
+    {
+        DecafScanner scanner = new DecafScanner(CompilationContext.current().getNames());
+        return (new MyDecafParser()).parse(scanner.lexMapped(file, file.getName()));
+    }
+
+    private static void analyze(ASTProgram ast)
+    {
+        ast.traverse(new BuildParentLinks());
+        ast.traverse(new CalculateNodeDepths());
+        ast.traverse(new BuildSymbolTables());
+        ast.traverse(new MyDecafAnalysis());
+    }
+
+    private static void generate(ASTProgram ast)
+    {
+        ast.traverse(new AllocateSymbols());
+        ast.traverse(new MyILOCGenerator());
+    }
+
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        long mb = (args.length > 0 ? Long.parseLong(args[0]) : 8);
+        File file = File.createTempFile("ast-benchmark", ".decaf");
+        file.deleteOnExit();
+        LexerBenchmark.generate(file, mb * 1000000);
+        Writer out = new FileWriter(file, true);
+        out.write("def int main() { return f0(1, false); }\n");
+        out.close();
+
+        CompilationContext previous = (new CompilationContext()).enter();
+        try {
+            // retained heap per node
+            long empty = usedHeap();
+            ASTProgram ast = parse(file);
+            NodeCounter counter = new NodeCounter();
+            ast.traverse(counter);
+            long parsed = usedHeap();
+            analyze(ast);
+            long analyzed = usedHeap();
+            generate(ast);
+            long generated = usedHeap();
+            if (CompilationContext.current().getErrors().size() > 0) {
+                throw new InvalidProgramException(StaticAnalysis.getErrorString());
+            }
+            System.out.println(String.format("nodes=%d  bytes/node: parsed=%.1f analyzed=%.1f generated=%.1f",
+                        counter.count, (parsed - empty) / (double)counter.count,
+                        (analyzed - empty) / (double)counter.count,
+                        (generated - empty) / (double)counter.count));
+            ast = null;
+
+            // pass times (parsing is not timed)
+            long bestAnalysis = Long.MAX_VALUE;
+            long bestCodegen = Long.MAX_VALUE;
+            for (int i = 0; i < REPS + 2; i++) {
+                ast = parse(file);
+                usedHeap();     // collect the tokens before timing
+                long start = System.nanoTime();
+                analyze(ast);
+                long mid = System.nanoTime();
+                generate(ast);
+                long end = System.nanoTime();
+                if (i >= 2) {
+                    bestAnalysis = Math.min(bestAnalysis, mid - start);
+                    bestCodegen = Math.min(bestCodegen, end - mid);
+                }
+                ast = null;
+                CompilationContext.current().resetErrors();
+            }
+            System.out.println(String.format("best: analysis=%8.2f ms  codegen=%8.2f ms",
+                        bestAnalysis / 1e6, bestCodegen / 1e6));
+        } finally {
+            CompilationContext.restore(previous);
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package edu.jmu.decaf;
+
+/**
+ * Simple wall-clock benchmark for the ILOC execution engines on loop-heavy
+ * Decaf programs. This is not part of the test suite; run it manually after
+ * {@code mvn test-compile}:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes edu.jmu.decaf.InterpreterBenchmark
+ * </pre>
+ *
+ * Register allocation is skipped so that the interpreter sees the full set of
+ * virtual registers produced by the code generator.
+ */
+public class InterpreterBenchmark
+{
+    /**
+     * Nested counting loops over a global array
+     */
+    public static final String ARRAY_LOOP =
+        "int a[100]; " +
+        "def int main() { " +
+        "  int i; int j; int s; " +
+        "  i = 0; s = 0; " +
+        "  while (i < 100) { a[i] = i; i = i + 1; } " +
+        "  j = 0; " +
+        "  while (j < 2000) { " +
+        "    i = 0; " +
+        "    while (i < 100) { s = s + a[i] * 2 - a[i]; i = i + 1; } " +
+        "    j = j + 1; " +
+        "  } " +
+        "  return s / 1000; }";
+
+    /**
+     * Scalar arithmetic in a single hot loop
+     */
+    public static final String SCALAR_LOOP =
+        "def int main() { " +
+        "  int i; int x; " +
+        "  i = 0; x = 1; " +
+        "  while (i < 300000) { " +
+        "    x = (x * 3 + i) / 2 - (i - x) / 4; " +
+        "    if (x > 100000) { x = x / 7; } " +
+        "    i = i + 1; " +
+        "  } " +
+        "  return x; }";
+
+    /**
+     * Deeply recursive calls (one register window per activation)
+     */
+    public static final String FIB =
+        "def int fib(int n) { " +
+        "  if (n < 2) { return n; } " +
+        "  return fib(n-1) + fib(n-2); } " +
+        "def int main() { return fib(20); }";
+
+    /**
+     * Number of timed repetitions per program
+     */
+    public static final int REPS = 10;
+
+    /**
+     * Parse, analyze, and generate ILOC for the given Decaf source code.
+     * @param text Decaf source code
+     * @return Generated (renumbered) ILOC program
+     * @throws Exception Thrown if the program is invalid
+     */
+    public static ILOCProgram compile(String text) throws Exception
+    {
+        StaticAnalysis.resetErrors();
+        ASTProgram program = (new MyDecafParser()).parse(
+                (new MyDecafLexer()).lex(text));
+        program.traverse(new BuildParentLinks());
+        program.traverse(new BuildSymbolTables());
+        program.traverse(new MyDecafAnalysis());
+        String errors = StaticAnalysis.getErrorString();
+        if (errors.length() > 0) {
+            throw new InvalidProgramException(errors);
+        }
+        program.traverse(new AllocateSymbols());
+        ILOCGenerator codegen = new MyILOCGenerator();
+        program.traverse(codegen);
+        (new RenumberRegistersAndLabels()).process(codegen.getProgram());
+        return codegen.getProgram();
+    }
+
+    /**
+     * Time repeated interpretation of a single program
+     * @param name Benchmark name
+     * @param text Decaf source code
+     * @throws Exception Thrown if the program is invalid
+     */
+    public static void run(String name, String text) throws Exception
+    {
+        run(name, text, "switch");
+        run(name, text, "threaded");
+        run(name, text, "tiered");
+    }
+
+    public static void run(String name, String text, String engine) throws Exception
+    {
+        ILOCProgram program = compile(text);
+        int result = 0;
+
+        // warm-up
+        for (int i = 0; i < 3; i++) {
+            result = execute(program, engine);
+        }
+
+        long best = Long.MAX_VALUE;
+        long total = 0;
+        for (int i = 0; i < REPS; i++) {
+            long start = System.nanoTime();
+            execute(program, engine);
+            long elapsed = System.nanoTime() - start;
+            best = Math.min(best, elapsed);
+            total += elapsed;
+        }
+        System.out.println(String.format("%-20s result=%-8d best=%8.2f ms  avg=%8.2f ms",
+                    name + "/" + engine, result, best / 1e6, total / 1e6 / REPS));
+    }
+
+    private static int execute(ILOCProgram program, String engine)
+    {
+        if (engine.equals("threaded")) {
+            ILOCThreadedInterpreter interp = new ILOCThreadedInterpreter();
+            interp.process(program);
+            return interp.getReturnValue();
+        } else {
+            ILOCInterpreter interp = new ILOCInterpreter();
+            interp.setTieredCompilation(engine.equals("tiered"));
+            interp.process(program);
+            return interp.getReturnValue();
+        }
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        run("array-loop", ARRAY_LOOP);
+        run("scalar-loop", SCALAR_LOOP);
+        run("fib", FIB);
+    }
+}
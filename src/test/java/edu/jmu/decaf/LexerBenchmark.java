@@ -0,0 +1,126 @@
+package edu.jmu.decaf;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Wall-clock throughput benchmark for the lexer's input paths on a large
+ * generated source file. This is not part of the test suite; run it manually
+ * after {@code mvn test-compile}:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes edu.jmu.decaf.LexerBenchmark [MB]
+ * </pre>
+ *
+ * The file size defaults to 64 MB.
+ */
+public class LexerBenchmark
+{
+    /**
+     * Number of timed repetitions per input path
+     */
+    public static final int REPS = 5;
+
+    /**
+     * Write a generated Decaf program of (roughly) the given size
+     * @param file Output file
+     * @param bytes Minimum file size
+     * @throws IOException Thrown if the file cannot be written
+     */
+    public static void generate(File file, long bytes) throws IOException
+    {
+        Writer out = new BufferedWriter(new FileWriter(file));
+        try {
+            long size = 0;
+            for (int i = 0; size < bytes; i++) {
+                String text =
+                    "// function number " + i + "\n" +
+                    "def int f" + i + "(int x, bool b) {\n" +
+                    "    int a_" + i + ";\n" +
+                    "    a_" + i + " = (x * 0x1F + " + i + ") / 3;   // scaled\n" +
+                    "    while (a_" + i + " >= 0 && !b) { a_" + i + " = a_" + i + " - 7; }\n" +
+                    "    print_str(\"f" + i + ":\\t\\\"done\\\"\\n\");\n" +
+                    "    return a_" + i + ";\n" +
+                    "}\n";
+                out.write(text);
+                size += text.length();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Lex a file with the given input path
+     * @return Number of tokens
+     */
+    private static int lex(File file, String path) throws Exception
+    {
+        DecafScanner scanner = new DecafScanner();
+        if (path.equals("mapped")) {
+            return scanner.lexMapped(file, file.getName()).size();
+        } else if (path.equals("mapped-stream")) {
+            return count(scanner.streamMapped(file, file.getName()));
+        } else if (path.equals("reader-stream")) {
+            return count(scanner.stream(new BufferedReader(new FileReader(file)), file.getName()));
+        } else {
+            return scanner.lex(new BufferedReader(new FileReader(file)), file.getName()).size();
+        }
+    }
+
+    private static int count(TokenStream tokens) throws Exception
+    {
+        int n = 0;
+        while (tokens.poll() != null) {
+            n++;
+        }
+        tokens.finish();
+        return n;
+    }
+
+    /**
+     * Time repeated lexing of a file with one input path
+     * @param file Input file
+     * @param path Input path ("reader", "mapped", "reader-stream", or
+     *             "mapped-stream")
+     * @throws Exception Thrown if the file cannot be lexed
+     */
+    public static void run(File file, String path) throws Exception
+    {
+        int tokens = 0;
+
+        // warm-up
+        for (int i = 0; i < 2; i++) {
+            tokens = lex(file, path);
+        }
+
+        long best = Long.MAX_VALUE;
+        long total = 0;
+        for (int i = 0; i < REPS; i++) {
+            long start = System.nanoTime();
+            lex(file, path);
+            long elapsed = System.nanoTime() - start;
+            best = Math.min(best, elapsed);
+            total += elapsed;
+        }
+        double mb = file.length() / 1e6;
+        System.out.println(String.format("%-14s tokens=%-9d best=%8.2f ms (%6.1f MB/s)  avg=%8.2f ms",
+                    path, tokens, best / 1e6, mb / (best / 1e9), total / 1e6 / REPS));
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        long mb = (args.length > 0 ? Long.parseLong(args[0]) : 64);
+        File file = File.createTempFile("lexer-benchmark", ".decaf");
+        file.deleteOnExit();
+        generate(file, mb * 1000000);
+        try {
+            run(file, "reader");
+            run(file, "mapped");
+            run(file, "reader-stream");
+            run(file, "mapped-stream");
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package edu.jmu.decaf;
+
+import java.util.*;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Test cases for AST node attributes (fields and the attribute map view).
+ */
+public class TestASTAttributes extends TestCase
+{
+    /**
+     * Initialization
+     *
+     * @param testName name of the test case
+     */
+    public TestASTAttributes(String testName)
+    {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite(TestASTAttributes.class);
+    }
+
+    public void testDefaults()
+    {
+        ASTFunction func = new ASTFunction("f", ASTNode.DataType.INT, new ASTBlock());
+        assertNull(func.getParent());
+        assertEquals(-1, func.getDepth());
+        assertSame(SourceInfo.INVALID, func.getSourceInfo());
+        assertEquals(ASTNode.DataType.VOID, func.getType());
+        assertNull(func.getSymbolTable());
+        assertEquals(-1, func.getLocalSize());
+        assertTrue(func.attributes.isEmpty());
+        assertFalse(func.attributes.containsKey("depth"));
+        assertFalse(func.attributes.containsKey("localSize"));
+    }
+
+    public void testMapViewOfFields()
+    {
+        ASTProgram program = new ASTProgram();
+        ASTFunction func = new ASTFunction("f", ASTNode.DataType.INT, new ASTBlock());
+        SymbolTable table = new SymbolTable();
+
+        // map writes are visible through the accessors ...
+        func.attributes.put("symbolTable", table);
+        func.attributes.put("parent", program);
+        func.attributes.put("localSize", Integer.valueOf(8));
+        assertSame(table, func.getSymbolTable());
+        assertSame(program, func.getParent());
+        assertEquals(8, func.getLocalSize());
+
+        // ... and accessor writes through the map
+        func.setDepth(1);
+        program.setStaticSize(16);
+        assertEquals(Integer.valueOf(1), func.attributes.get("depth"));
+        assertEquals(Integer.valueOf(16), program.attributes.get("staticSize"));
+        assertEquals(new HashSet<String>(Arrays.asList(
+                        "parent", "depth", "symbolTable", "localSize")),
+                func.attributes.keySet());
+
+        // other keys are kept separately
+        func.attributes.put("dotid", "Function1");
+        assertEquals("Function1", func.attributes.get("dotid"));
+        assertEquals(5, func.attributes.size());
+
+        func.attributes.remove("symbolTable");
+        assertNull(func.getSymbolTable());
+        func.attributes.clear();
+        assertNull(func.getParent());
+        assertEquals(-1, func.getDepth());
+        assertTrue(func.attributes.isEmpty());
+    }
+
+    public void testSymbolTableOutsideScopes()
+    {
+        // nodes without a symbol table field keep one in the map
+        ASTBreak node = new ASTBreak();
+        SymbolTable table = new SymbolTable();
+        node.setSymbolTable(table);
+        assertSame(table, node.getSymbolTable());
+        assertSame(table, node.attributes.get("symbolTable"));
+    }
+}
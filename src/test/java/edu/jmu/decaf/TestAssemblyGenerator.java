@@ -0,0 +1,139 @@
+package edu.jmu.decaf;
+
+import java.io.*;
+import java.util.*;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Test cases for the x86-64 assembly backend. The generated assembly is
+ * always checked; it is also built and run (and compared with the
+ * interpreter) if gcc is available.
+ */
+public class TestAssemblyGenerator extends TestCase
+{
+    /**
+     * Initialization
+     *
+     * @param testName name of the test case
+     */
+    public TestAssemblyGenerator(String testName)
+    {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite(TestAssemblyGenerator.class);
+    }
+
+    /**
+     * Run an external command and return its output (or null if the command
+     * cannot be started)
+     */
+    private static String execute(File dir, String... command) throws Exception
+    {
+        Process proc;
+        try {
+            proc = (new ProcessBuilder(command)).directory(dir)
+                .redirectErrorStream(true).start();
+        } catch (IOException ex) {
+            return null;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputStream in = proc.getInputStream();
+        byte[] buffer = new byte[4096];
+        for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+            out.write(buffer, 0, n);
+        }
+        assertEquals(out.toString(), 0, proc.waitFor());
+        return out.toString();
+    }
+
+    /**
+     * Check that generated assembly defines every function it calls and
+     * every label it jumps to
+     */
+    private static void assertWellFormedAssembly(String asm)
+    {
+        assertTrue(asm.startsWith("\t.text\n\t.globl main\n"));
+        assertTrue(asm.endsWith("\t.section .note.GNU-stack,\"\",@progbits\n"));
+        Set<String> labels = new HashSet<String>();
+        for (String line : asm.split("\n")) {
+            if (line.endsWith(":")) {
+                assertTrue(line, labels.add(line.substring(0, line.length() - 1)));
+            }
+        }
+        for (String line : asm.split("\n")) {
+            String[] words = line.trim().split(" ");
+            if ((words[0].startsWith("j") || words[0].equals("call")) &&
+                    !words[1].endsWith("@PLT")) {
+                assertTrue(line, labels.contains(words[1]));
+            }
+        }
+    }
+
+    public void testAssemblyGenerator() throws Exception
+    {
+        String[] programs = {
+            InterpreterBenchmark.ARRAY_LOOP,
+            InterpreterBenchmark.FIB,
+            "def int sum(int n) { if (n == 0) { return 0; } return n + sum(n-1); } " +
+            "def int main() { return sum(2000); }",
+            "def void show(int x) { print_int(x); print_str(\"\\n\"); } " +
+            "def bool odd(int x) { return x % 2 == 1; } " +
+            "def int main() { int i; i = 0; " +
+            "  while (true) { i = i + 1; if (i > 10) { break; } " +
+            "    if (odd(i) || !(i != 4) && i >= 4) { show(-i / 2); } else { continue; } } " +
+            "  return i; }",
+        };
+        ILOCAssemblyGenerator[] gens = new ILOCAssemblyGenerator[programs.length];
+        String[] asm = new String[programs.length];
+        for (int i = 0; i < programs.length; i++) {
+            ILOCProgram program = TestInterpreter.compile(programs[i]);
+            gens[i] = new ILOCAssemblyGenerator();
+            gens[i].process(program);
+            asm[i] = gens[i].getAssembly();
+            assertWellFormedAssembly(asm[i]);
+            for (int f = 0; f < program.functions.size(); f++) {
+                String name = program.functions.get(f).functionSymbol.name;
+                assertTrue(asm[i].contains("\ndecaf_" + f + "_" + name + ":\n"));
+                if (name.equals("main")) {
+                    assertTrue(asm[i].contains("\tcall decaf_" + f + "_main\n"));
+                }
+            }
+        }
+        assertTrue(asm[1].contains("\tcall decaf_0_fib\n"));
+        assertTrue(asm[3].contains("\t.string \"\\012\"\n"));
+
+        // run the programs natively if a toolchain is available
+        File dir = File.createTempFile("decaf", "");
+        dir.delete();
+        dir.mkdir();
+        try {
+            if (execute(dir, "gcc", "--version") == null) {
+                return;     // no native toolchain
+            }
+            for (int i = 0; i < programs.length; i++) {
+                ILOCInterpreter interp = new ILOCInterpreter();
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                interp.setOutput(new PrintStream(out));
+                interp.process(TestInterpreter.compile(programs[i]));
+                gens[i].writeAssembly(new File(dir, "prog.s"));
+                execute(dir, "gcc", "-o", "prog", "prog.s");
+                assertEquals(out.toString() + "\nResult: " + interp.getReturnValue() + "\n",
+                        execute(dir, "./prog"));
+            }
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+}
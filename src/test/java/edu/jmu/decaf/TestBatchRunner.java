@@ -0,0 +1,104 @@
+package edu.jmu.decaf;
+
+import java.io.*;
+import java.util.*;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Test cases for the concurrent batch runner.
+ */
+public class TestBatchRunner extends TestCase
+{
+    /**
+     * Initialization
+     *
+     * @param testName name of the test case
+     */
+    public TestBatchRunner(String testName)
+    {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite(TestBatchRunner.class);
+    }
+
+    public void testBatchRunner() throws Exception
+    {
+        String[] programs = {
+            InterpreterBenchmark.FIB,
+            "def void show(int x) { print_int(x); print_str(\" \"); } " +
+            "def int main() { int i; i = 0; while (i < 10) { show(i); i = i + 1; } return i; }",
+            "def int main() { return x; }",
+            TestInterpreter.INFINITE_LOOP,
+        };
+        File dir = File.createTempFile("decaf", "");
+        dir.delete();
+        dir.mkdir();
+        List<File> files = new ArrayList<File>();
+        try {
+            PrintWriter manifest = new PrintWriter(new File(dir, "manifest.txt"));
+            manifest.println("# test programs");
+            for (int i = 0; i < 16; i++) {
+                File f = new File(dir, "p" + i + ".decaf");
+                PrintWriter out = new PrintWriter(f);
+                out.println(programs[i % programs.length]);
+                out.close();
+                manifest.println(f.getName());
+                files.add(f);
+            }
+            manifest.close();
+            assertEquals(files, DecafBatchRunner.listPrograms(
+                        new File(dir, "manifest.txt")));
+            assertEquals(16, DecafBatchRunner.listPrograms(dir).size());
+
+            DecafBatchRunner runner = new DecafBatchRunner();
+            runner.setThreads(4);
+            runner.setTimeout(1000);
+            ByteArrayOutputStream report = new ByteArrayOutputStream();
+            List<DecafBatchRunner.Result> results =
+                runner.run(files, new PrintStream(report));
+            assertEquals(17, report.toString().split("\n").length);
+
+            int fib = TestInterpreter.runProgram(InterpreterBenchmark.FIB);
+            for (int i = 0; i < results.size(); i++) {
+                DecafBatchRunner.Result r = results.get(i);
+                assertEquals(files.get(i), r.getFile());
+                switch (i % programs.length) {
+                    case 0:
+                        assertEquals(DecafBatchRunner.Status.OK, r.getStatus());
+                        assertEquals(fib, r.getReturnValue());
+                        assertTrue(r.getInstructions() > 0);
+                        break;
+                    case 1:
+                        assertEquals(DecafBatchRunner.Status.OK, r.getStatus());
+                        assertEquals(10, r.getReturnValue());
+                        assertEquals("0 1 2 3 4 5 6 7 8 9 ", r.getOutput());
+                        break;
+                    case 2:
+                        assertEquals(DecafBatchRunner.Status.INVALID, r.getStatus());
+                        assertTrue(r.getMessage().contains("Symbol not found"));
+                        break;
+                    default:
+                        assertEquals(DecafBatchRunner.Status.TIMEOUT, r.getStatus());
+                        break;
+                }
+            }
+
+            // errors from other threads do not leak into this one
+            assertEquals(0, StaticAnalysis.getErrors().size());
+        } finally {
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package edu.jmu.decaf;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Test cases for stopping interpreted programs, with an instruction budget
+ * (fuel) or from another thread.
+ */
+public class TestCancellation extends TestCase
+{
+    /**
+     * Initialization
+     *
+     * @param testName name of the test case
+     */
+    public TestCancellation(String testName)
+    {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite(TestCancellation.class);
+    }
+
+    public void testFuel() throws Exception
+    {
+        ILOCInterpreter interp = new ILOCInterpreter();
+        ILOCProfiler profiler = new ILOCProfiler();
+        interp.setExecutionListener(profiler);
+        interp.setFuel(1000000);
+        interp.process(TestInterpreter.compile(InterpreterBenchmark.FIB));
+        assertEquals(ILOCInterpreter.Status.HALTED, interp.getStatus());
+        assertEquals(6765, interp.getReturnValue());
+        assertEquals(profiler.getTotalInstructions(), interp.getFuelUsed());
+
+        interp.setFuel(100000);
+        interp.process(TestInterpreter.compile(InterpreterBenchmark.FIB));
+        assertEquals(ILOCInterpreter.Status.OUT_OF_FUEL, interp.getStatus());
+
+        interp.setExecutionListener(null);
+        interp.process(TestInterpreter.compile(TestInterpreter.INFINITE_LOOP));
+        assertEquals(ILOCInterpreter.Status.OUT_OF_FUEL, interp.getStatus());
+        assertTrue(interp.getFuelUsed() > 100000);
+        assertTrue(interp.getFuelUsed() < 100100);
+
+        // compiled loops are stopped too
+        interp.setTieredCompilation(true);
+        interp.setCompileThresholds(2, 3);
+        interp.process(TestInterpreter.compile(TestInterpreter.INFINITE_LOOP));
+        assertEquals(ILOCInterpreter.Status.OUT_OF_FUEL, interp.getStatus());
+        assertTrue(interp.isCompiled("main"));
+    }
+
+    /**
+     * Run a program on a new thread
+     */
+    private static Thread start(final ILOCInterpreter interp, final ILOCProgram program)
+    {
+        Thread t = new Thread(new Runnable() {
+            public void run() {
+                interp.process(program);
+            }
+        });
+        t.start();
+        return t;
+    }
+
+    public void testCancellation() throws Exception
+    {
+        for (boolean tiered : new boolean[] { false, true }) {
+            CancellationToken token = new CancellationToken();
+            ILOCInterpreter interp = new ILOCInterpreter();
+            interp.setTieredCompilation(tiered);
+            interp.setCancellationToken(token);
+            Thread t = start(interp, TestInterpreter.compile(TestInterpreter.INFINITE_LOOP));
+            Thread.sleep(50);
+            assertTrue(t.isAlive());
+            token.cancel();
+            t.join(10000);
+            assertFalse(t.isAlive());
+            assertEquals(ILOCInterpreter.Status.CANCELLED, interp.getStatus());
+
+            interp = new ILOCInterpreter();
+            interp.setTieredCompilation(tiered);
+            t = start(interp, TestInterpreter.compile(TestInterpreter.INFINITE_LOOP));
+            Thread.sleep(50);
+            t.interrupt();
+            t.join(10000);
+            assertFalse(t.isAlive());
+            assertEquals(ILOCInterpreter.Status.CANCELLED, interp.getStatus());
+        }
+
+        final ILOCThreadedInterpreter threaded = new ILOCThreadedInterpreter();
+        final ILOCProgram program = TestInterpreter.compile(TestInterpreter.INFINITE_LOOP);
+        CancellationToken token = new CancellationToken();
+        threaded.setCancellationToken(token);
+        Thread t = new Thread() {
+            public void run() {
+                threaded.process(program);
+            }
+        };
+        t.start();
+        Thread.sleep(50);
+        assertTrue(t.isAlive());
+        token.cancel();
+        t.join(10000);
+        assertFalse(t.isAlive());
+        assertEquals(ILOCInterpreter.Status.CANCELLED, threaded.getStatus());
+    }
+}
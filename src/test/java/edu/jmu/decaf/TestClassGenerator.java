@@ -0,0 +1,95 @@
+package edu.jmu.decaf;
+
+import java.io.*;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Test cases for the ahead-of-time ILOC-to-JVM-bytecode backend. Generated
+ * classes must print and return the same as the interpreter.
+ */
+public class TestClassGenerator extends TestCase
+{
+    /**
+     * Initialization
+     *
+     * @param testName name of the test case
+     */
+    public TestClassGenerator(String testName)
+    {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite(TestClassGenerator.class);
+    }
+
+    /**
+     * Class loader for classes built by {@link ILOCClassGenerator}
+     */
+    private static class ByteClassLoader extends ClassLoader
+    {
+        public Class<?> define(String name, byte[] bytes)
+        {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    public void testClassGenerator() throws Exception
+    {
+        String[] programs = {
+            InterpreterBenchmark.ARRAY_LOOP,
+            InterpreterBenchmark.FIB,
+            "def void show(int x) { print_int(x); print_str(\"\\n\"); } " +
+            "def int main() { int i; i = 0; " +
+            "  while (i < 5) { show(i * -3); i = i + 1; } return i; }",
+        };
+        for (String text : programs) {
+            ILOCInterpreter interp = new ILOCInterpreter();
+            ILOCClassGenerator gen = new ILOCClassGenerator("test.DecafMain");
+            ByteArrayOutputStream out1 = new ByteArrayOutputStream();
+            ByteArrayOutputStream out2 = new ByteArrayOutputStream();
+            PrintStream stdout = System.out;
+            Object result;
+            try {
+                System.setOut(new PrintStream(out1));
+                interp.process(TestInterpreter.compile(text));
+                gen.process(TestInterpreter.compile(text));
+                Class<?> cls = (new ByteClassLoader()).define(
+                        gen.getClassName(), gen.getClassBytes());
+                System.setOut(new PrintStream(out2));
+                result = cls.getMethod("run").invoke(null);
+            } finally {
+                System.setOut(stdout);
+            }
+            assertEquals(out1.toString(), out2.toString());
+            assertEquals(Integer.valueOf(interp.getReturnValue()), result);
+        }
+    }
+
+    public void testClassGeneratorJar() throws Exception
+    {
+        ILOCClassGenerator gen = new ILOCClassGenerator("DecafMain");
+        gen.process(TestInterpreter.compile(InterpreterBenchmark.FIB));
+        File jar = File.createTempFile("decaf", ".jar");
+        try {
+            gen.writeJar(jar);
+            java.util.jar.JarFile file = new java.util.jar.JarFile(jar);
+            try {
+                assertNotNull(file.getEntry("DecafMain.class"));
+                assertEquals("DecafMain", file.getManifest().getMainAttributes()
+                        .getValue(java.util.jar.Attributes.Name.MAIN_CLASS));
+            } finally {
+                file.close();
+            }
+        } finally {
+            jar.delete();
+        }
+    }
+}
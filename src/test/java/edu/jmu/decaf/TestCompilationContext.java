@@ -0,0 +1,93 @@
+package edu.jmu.decaf;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Test cases for per-compilation state. Compilations running concurrently
+ * in their own contexts must not affect each other.
+ */
+public class TestCompilationContext extends TestCase
+{
+    /**
+     * Initialization
+     *
+     * @param testName name of the test case
+     */
+    public TestCompilationContext(String testName)
+    {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite(TestCompilationContext.class);
+    }
+
+    /**
+     * Compile a program in a fresh context and describe everything the
+     * compilation produced: the ILOC (or errors) and the final ID counters
+     */
+    private static String compileInContext(String text)
+    {
+        CompilationContext context = new CompilationContext();
+        StringBuilder str = new StringBuilder();
+        try {
+            str.append(DecafCompiler.compile(context,
+                        new BufferedReader(new StringReader(text)), "test.decaf"));
+        } catch (Exception ex) {
+            str.append(ex.getMessage());
+        }
+        str.append(" regs=" + context.newVirtualRegID());
+        str.append(" labels=" + context.newAnonymousLabelID());
+        str.append(" blocks=" + context.newBasicBlockID());
+        return str.toString();
+    }
+
+    public void testConcurrentCompilation() throws Exception
+    {
+        final String[] programs = {
+            InterpreterBenchmark.ARRAY_LOOP,
+            InterpreterBenchmark.FIB,
+            TestInterpreter.INFINITE_LOOP,
+            "def void show(int x) { if (x > 2) { print_int(x); } else { print_str(\"-\"); } } " +
+            "def int main() { int i; i = 0; while (i < 5) { show(i); i = i + 1; } return i; }",
+            "def int main() { return x; }",
+            "def int main() { bool b; b = 1; return b; }",
+        };
+        String[] expected = new String[programs.length];
+        for (int i = 0; i < programs.length; i++) {
+            expected[i] = compileInContext(programs[i]);
+        }
+        assertTrue(expected[4].contains("Symbol not found"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> futures = new ArrayList<Future<String>>();
+            for (int i = 0; i < 600; i++) {
+                final String text = programs[i % programs.length];
+                futures.add(executor.submit(new Callable<String>() {
+                    public String call() {
+                        return compileInContext(text);
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(expected[i % programs.length], futures.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // compiling in a context leaves the thread's own context alone
+        assertEquals(0, StaticAnalysis.getErrors().size());
+    }
+}
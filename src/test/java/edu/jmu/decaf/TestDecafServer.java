@@ -0,0 +1,142 @@
+package edu.jmu.decaf;
+
+import java.io.*;
+import java.util.*;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Test cases for the compiler server.
+ */
+public class TestDecafServer extends TestCase
+{
+    /**
+     * Initialization
+     *
+     * @param testName name of the test case
+     */
+    public TestDecafServer(String testName)
+    {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite(TestDecafServer.class);
+    }
+
+    /**
+     * Send a request to a compiler server (with the token from its token
+     * file) and return its response
+     */
+    private static String request(DecafServer server, File dir, String... args) throws Exception
+    {
+        BufferedReader file = new BufferedReader(new FileReader(server.getTokenFile()));
+        String token = file.readLine();
+        file.close();
+        return request(server.getPort(), token, dir, args);
+    }
+
+    /**
+     * Send a request to a compiler server and return its response
+     */
+    private static String request(int port, String token, File dir, String... args) throws Exception
+    {
+        java.net.Socket socket = new java.net.Socket("127.0.0.1", port);
+        try {
+            PrintStream out = new PrintStream(socket.getOutputStream(), true, "UTF-8");
+            out.print(DecafServer.HEADER + "\n" + token + "\n" + dir.getPath() + "\n");
+            for (String arg : args) {
+                out.print(arg + "\n");
+            }
+            out.print("\n");
+            out.flush();
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            StringBuilder response = new StringBuilder();
+            String line;
+            while ((line = in.readLine()) != null) {
+                response.append(line + "\n");
+            }
+            return response.toString();
+        } finally {
+            socket.close();
+        }
+    }
+
+    public void testServer() throws Exception
+    {
+        File dir = File.createTempFile("decaf", "");
+        dir.delete();
+        dir.mkdir();
+        final DecafServer server = new DecafServer(0, new File(dir, "server.token"), null);
+        Thread thread = new Thread() {
+            public void run() {
+                try {
+                    server.serve();
+                } catch (IOException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+        };
+        try {
+            PrintWriter out = new PrintWriter(new File(dir, "fib.decaf"));
+            out.println(InterpreterBenchmark.FIB);
+            out.close();
+            out = new PrintWriter(new File(dir, "bad.decaf"));
+            out.println("def int main() { return x; }");
+            out.close();
+            File loops = new File(dir, "loops");
+            loops.mkdir();
+            out = new PrintWriter(new File(loops, "loop.decaf"));
+            out.println(TestInterpreter.INFINITE_LOOP);
+            out.close();
+            server.warmUp(2);
+            server.setRequestTimeout(200);
+            thread.start();
+
+            // only the server's own user can read the token
+            Set<java.nio.file.attribute.PosixFilePermission> perms =
+                java.nio.file.Files.getPosixFilePermissions(server.getTokenFile().toPath());
+            assertEquals(java.nio.file.attribute.PosixFilePermissions.fromString("rw-------"),
+                    perms);
+
+            // relative names are resolved against the client's directory
+            String response = request(server, dir, "bad.decaf");
+            assertTrue(response.contains("Symbol not found"));
+            response = request(server, dir, "--batch=.");
+            assertTrue(response.contains("fib.decaf\t" +
+                        TestInterpreter.runProgram(InterpreterBenchmark.FIB) + "\t"));
+            response = request(server, dir, "--bogus");
+            assertTrue(response.startsWith("Usage:"));
+
+            // runaway programs are stopped after the request time limit
+            response = request(server, dir, "--batch=loops");
+            assertTrue(response.startsWith("TIMEOUT\t"));
+
+            // requests without the right token are rejected
+            response = request(server.getPort(), "0123", dir, DecafServer.SHUTDOWN);
+            assertTrue(response.startsWith("Invalid token"));
+            assertTrue(thread.isAlive());
+
+            assertEquals("Server stopped\n",
+                    request(server, dir, DecafServer.SHUTDOWN));
+            thread.join(5000);
+            assertFalse(thread.isAlive());
+        } finally {
+            server.close();
+            for (File f : new File(dir, "loops").listFiles()) {
+                f.delete();
+            }
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package edu.jmu.decaf;
+
+import java.io.*;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Test cases for execution listeners, which observe the interpreter (and
+ * keep tracing out of its main loop).
+ */
+public class TestExecutionListener extends TestCase
+{
+    /**
+     * Initialization
+     *
+     * @param testName name of the test case
+     */
+    public TestExecutionListener(String testName)
+    {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite(TestExecutionListener.class);
+    }
+
+    public void testExecutionListener() throws Exception
+    {
+        final int[] counts = new int[5];
+        ILOCInterpreter interp = new ILOCInterpreter();
+        interp.setExecutionListener(new DefaultExecutionListener() {
+            public void programLoaded(ILOCInterpreter m)            { counts[0]++; }
+            public void programStarted(ILOCInterpreter m)           { counts[1]++; }
+            public void beforeInstruction(ILOCInterpreter m, int pc) { counts[2]++; }
+            public void afterInstruction(ILOCInterpreter m, int pc)  { counts[3]++; }
+            public void programFinished(ILOCInterpreter m)          { counts[4]++; }
+        });
+        interp.setTieredCompilation(true);
+        interp.setCompileThresholds(2, 3);
+        interp.process(TestInterpreter.compile(InterpreterBenchmark.FIB));
+        assertEquals(6765, interp.getReturnValue());
+        assertEquals(1, counts[0]);
+        assertEquals(1, counts[1]);
+        assertTrue(counts[2] > 6765);
+        assertEquals(counts[2], counts[3]);
+        assertEquals(1, counts[4]);
+        assertFalse(interp.isCompiled("fib"));
+
+        // detaching the listener re-enables compilation
+        interp.setExecutionListener(null);
+        interp.process(TestInterpreter.compile(InterpreterBenchmark.FIB));
+        assertEquals(6765, interp.getReturnValue());
+        assertTrue(interp.isCompiled("fib"));
+    }
+
+    public void testTrace() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrintStream stdout = System.out;
+        ILOCInterpreter interp = new ILOCInterpreter(true);
+        try {
+            System.setOut(new PrintStream(out));
+            interp.process(TestInterpreter.compile("def int main() { return 14; }"));
+        } finally {
+            System.setOut(stdout);
+        }
+        assertEquals(14, interp.getReturnValue());
+        String trace = out.toString();
+        assertTrue(trace.contains("All code:"));
+        assertTrue(trace.contains("Calling main()"));
+        assertTrue(trace.contains("Executing:   return"));
+    }
+}
@@ -0,0 +1,216 @@
+package edu.jmu.decaf;
+
+import java.io.*;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Test cases for the ILOC interpreter. Programs are run without register
+ * allocation so that these tests exercise only the interpreter itself.
+ */
+public class TestInterpreter extends TestCase
+{
+    /**
+     * Initialization
+     *
+     * @param testName name of the test case
+     */
+    public TestInterpreter(String testName)
+    {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite(TestInterpreter.class);
+    }
+
+    /**
+     * Parse, analyze, and generate ILOC for the given Decaf source code.
+     * @param text Decaf source code
+     * @return Generated (renumbered) ILOC program
+     * @throws Exception Thrown if the program is invalid
+     */
+    protected static ILOCProgram compile(String text) throws Exception
+    {
+        StaticAnalysis.resetErrors();
+        ASTProgram program = (new MyDecafParser()).parse(
+                (new MyDecafLexer()).lex(text));
+        program.traverse(new BuildParentLinks());
+        program.traverse(new BuildSymbolTables());
+        program.traverse(new MyDecafAnalysis());
+        String errors = StaticAnalysis.getErrorString();
+        if (errors.length() > 0) {
+            throw new InvalidProgramException(errors);
+        }
+        program.traverse(new AllocateSymbols());
+        ILOCGenerator codegen = new MyILOCGenerator();
+        program.traverse(codegen);
+        (new RenumberRegistersAndLabels()).process(codegen.getProgram());
+        return codegen.getProgram();
+    }
+
+    /**
+     * Compile and interpret the given Decaf source code.
+     * @param text Decaf source code
+     * @return Integer program return value
+     * @throws Exception Thrown if the program is invalid
+     */
+    protected static int runProgram(String text) throws Exception
+    {
+        ILOCInterpreter interp = new ILOCInterpreter();
+        interp.process(compile(text));
+        return interp.getReturnValue();
+    }
+
+    /**
+     * Program that never halts, for tests that stop runs
+     */
+    static final String INFINITE_LOOP =
+        "def int main() { int i; i = 0; while (true) { i = i + 1; } return i; }";
+
+    public void testAssign() throws Exception { assertEquals(14, runProgram(
+                "def int main() { " +
+                "  int a; a = 2 + 3 * 4; " +
+                "  return a; }")); }
+
+    public void testWhile() throws Exception { assertEquals(10, runProgram(
+                "def int main() { " +
+                "  int a; a = 0; " +
+                "  while (a < 10) { a = a + 1; } " +
+                "  return a; }")); }
+
+    public void testGlobalArray() throws Exception { assertEquals(9900, runProgram(
+                InterpreterBenchmark.ARRAY_LOOP)); }
+
+    public void testRecursion() throws Exception { assertEquals(6765, runProgram(
+                InterpreterBenchmark.FIB)); }
+
+    public void testDeepRecursion() throws Exception { assertEquals(2001000, runProgram(
+                "def int sum(int n) { if (n == 0) { return 0; } return n + sum(n-1); } " +
+                "def int main() { return sum(2000); }")); }
+
+    public void testSharedRegisters() throws Exception
+    {
+        ILOCInterpreter interp = new ILOCInterpreter();
+        interp.setSharedRegisters(true);
+        interp.process(compile(
+                "def int add(int a, int b) { return a + b; } " +
+                "def int main() { return add(2,3) * add(4,5); }"));
+        assertEquals(45, interp.getReturnValue());
+    }
+
+    public void testDumpRegisterNames() throws Exception
+    {
+        // main does not call f, so both models dump the same registers
+        String text = "def int f(int x) { return x * 2; } " +
+                "def int main() { int a; a = 3; return a + 4; }";
+        String[] dumps = new String[2];
+        for (int i = 0; i < 2; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            PrintStream stdout = System.out;
+            ILOCInterpreter interp = new ILOCInterpreter(true);
+            interp.setSharedRegisters(i == 0);
+            try {
+                System.setOut(new PrintStream(out));
+                interp.process(compile(text));
+            } finally {
+                System.setOut(stdout);
+            }
+            dumps[i] = out.toString();
+        }
+        assertEquals(dumps[0], dumps[1]);
+        assertFalse(dumps[1].contains("virtualRegs: { r0="));
+    }
+
+    public void testRegisterGrowth() throws Exception
+    {
+        // registers created after loading must still be addressable
+        ILOCProgram program = compile("def int main() { return 5; }");
+        ILOCFunction main = program.getFunction("main");
+        ILOCOperand reg = ILOCOperand.newVirtualReg();
+        reg.id = 1000;
+        ILOCOperand[] load = { ILOCOperand.newIntConstant(7), reg };
+        ILOCOperand[] copy = { reg, ILOCOperand.REG_RET };
+        main.instructions.add(0, new ILOCInstruction(ILOCInstruction.Form.I2I, copy));
+        main.instructions.add(0, new ILOCInstruction(ILOCInstruction.Form.LOAD_I, load));
+        main.instructions.add(2, new ILOCInstruction(ILOCInstruction.Form.RETURN,
+                    new ILOCOperand[0]));
+        ILOCInterpreter interp = new ILOCInterpreter();
+        interp.process(program);
+        assertEquals(7, interp.getReturnValue());
+    }
+
+    public void testByteMemory() throws Exception
+    {
+        ILOCInterpreter interp = new ILOCInterpreter();
+        interp.setMemory(new ILOCByteMemory(65536));
+        interp.process(compile(InterpreterBenchmark.ARRAY_LOOP));
+        assertEquals(9900, interp.getReturnValue());
+    }
+
+    public void testWordMemoryLayout()
+    {
+        ILOCMemory words = new ILOCWordMemory(16);
+        ILOCMemory bytes = new ILOCByteMemory(16);
+        int[] addrs = { 0, 4, 1, 6, 11, 12, 3 };
+        int value = 0x01020304;
+        for (int addr : addrs) {
+            words.storeInt(addr, value);
+            bytes.storeInt(addr, value);
+            value = value * 31 + 0x7f7f;
+            for (int i = 0; i <= 12; i++) {
+                assertEquals(bytes.loadInt(i), words.loadInt(i));
+            }
+        }
+        try {
+            words.storeInt(13, 1);
+            fail("expected out-of-bounds store to fail");
+        } catch (ArrayIndexOutOfBoundsException ex) { }
+    }
+
+    public void testPagedMemory() throws Exception
+    {
+        ILOCPagedMemory memory = new ILOCPagedMemory(1 << 30);
+        ILOCInterpreter interp = new ILOCInterpreter();
+        interp.setMemory(memory);
+        interp.process(compile(InterpreterBenchmark.ARRAY_LOOP));
+        assertEquals(9900, interp.getReturnValue());
+        assertTrue(memory.getCommittedPages() <= 2);
+    }
+
+    public void testStackOverflow() throws Exception
+    {
+        ILOCInterpreter interp = new ILOCInterpreter();
+        interp.setMemorySize(4096);
+        try {
+            interp.process(compile(
+                    "def int f(int n) { return f(n+1); } " +
+                    "def int main() { return f(0); }"));
+            fail("expected stack overflow");
+        } catch (ILOCRuntimeException ex) {
+            assertTrue(ex.getMessage().startsWith("Stack overflow"));
+        }
+    }
+
+    public void testStaticDataTooLarge() throws Exception
+    {
+        ILOCInterpreter interp = new ILOCInterpreter();
+        interp.setMemorySize(1024);
+        try {
+            interp.process(compile(
+                    "int a[1000]; def int main() { a[0] = 1; return a[0]; }"));
+            fail("expected stack overflow");
+        } catch (ILOCRuntimeException ex) { }
+
+        interp.setMemorySize(8192);
+        interp.process(compile(
+                "int a[1000]; def int main() { a[999] = 7; return a[999]; }"));
+        assertEquals(7, interp.getReturnValue());
+    }
+}
@@ -0,0 +1,125 @@
+package edu.jmu.decaf;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Test cases for reusing interpreters and for running many programs
+ * concurrently on an {@link InterpreterPool}.
+ */
+public class TestInterpreterPool extends TestCase
+{
+    /**
+     * Initialization
+     *
+     * @param testName name of the test case
+     */
+    public TestInterpreterPool(String testName)
+    {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite(TestInterpreterPool.class);
+    }
+
+    public void testReuse() throws Exception
+    {
+        // memory must be cleared between runs
+        ILOCInterpreter interp = new ILOCInterpreter();
+        ILOCImage image = ILOCImage.link(TestInterpreter.compile(
+                    "int g; def int main() { g = g + 1; return g; }"));
+        interp.process(image);
+        assertEquals(1, interp.getReturnValue());
+        interp.process(image);
+        assertEquals(1, interp.getReturnValue());
+        interp.reset();
+        interp.process(TestInterpreter.compile(InterpreterBenchmark.FIB));
+        assertEquals(6765, interp.getReturnValue());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        interp.setOutput(new PrintStream(out));
+        interp.process(TestInterpreter.compile("def int main() { print_int(42); return 0; }"));
+        assertEquals("42", out.toString());
+
+        ILOCThreadedInterpreter threaded = new ILOCThreadedInterpreter();
+        ILOCProgram program = TestInterpreter.compile("int g; def int main() { g = g + 1; return g; }");
+        threaded.process(program);
+        assertEquals(1, threaded.getReturnValue());
+        threaded.process(program);
+        assertEquals(1, threaded.getReturnValue());
+    }
+
+    public void testInterpreterPool() throws Exception
+    {
+        String[] programs = {
+            InterpreterBenchmark.ARRAY_LOOP,
+            InterpreterBenchmark.FIB,
+            "def void show(int x) { print_int(x); print_str(\" \"); } " +
+            "def int main() { int i; i = 0; while (i < 100) { show(i); i = i + 1; } return i; }",
+        };
+        InterpreterPool pool = new InterpreterPool(4, ILOCInterpreter.DEFAULT_MEM_SIZE);
+        try {
+            List<ILOCProgram> linked = new ArrayList<ILOCProgram>();
+            List<Future<InterpreterPool.Result>> futures =
+                new ArrayList<Future<InterpreterPool.Result>>();
+            for (String text : programs) {
+                linked.add(TestInterpreter.compile(text));
+            }
+            for (int i = 0; i < 30; i++) {
+                futures.add(pool.submit(linked.get(i % programs.length)));
+            }
+            assertSame(pool.link(linked.get(0)), pool.link(linked.get(0)));
+
+            for (int i = 0; i < futures.size(); i++) {
+                ILOCInterpreter interp = new ILOCInterpreter();
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                interp.setOutput(new PrintStream(out));
+                interp.process(linked.get(i % programs.length));
+                InterpreterPool.Result result = futures.get(i).get();
+                assertEquals(ILOCInterpreter.Status.HALTED, result.getStatus());
+                assertEquals(interp.getReturnValue(), result.getReturnValue());
+                assertEquals(out.toString(), result.getOutput());
+            }
+
+            InterpreterPool.Result result = pool.submit(
+                    ILOCImage.link(TestInterpreter.compile(TestInterpreter.INFINITE_LOOP)), 10000, null).get();
+            assertEquals(ILOCInterpreter.Status.OUT_OF_FUEL, result.getStatus());
+
+            Future<InterpreterPool.Result> f = pool.submit(
+                    ILOCImage.link(TestInterpreter.compile(TestInterpreter.INFINITE_LOOP)),
+                    ILOCInterpreter.UNLIMITED_FUEL, null);
+            Thread.sleep(50);
+            assertTrue(f.cancel(true));
+            assertTrue(f.isCancelled());
+            try {
+                f.get();
+                fail("expected a cancelled run");
+            } catch (CancellationException ex) { }
+
+            // the cancelled run must have released its worker, so one run
+            // per worker still finishes
+            futures.clear();
+            for (int i = 0; i < 4; i++) {
+                futures.add(pool.submit(linked.get(1)));
+            }
+            for (Future<InterpreterPool.Result> g : futures) {
+                result = g.get(10, TimeUnit.SECONDS);
+                assertEquals(ILOCInterpreter.Status.HALTED, result.getStatus());
+                assertEquals(6765, result.getReturnValue());
+            }
+        } finally {
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+}
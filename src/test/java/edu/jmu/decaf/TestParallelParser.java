@@ -0,0 +1,124 @@
+package edu.jmu.decaf;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Test cases for the parallel parser. Its trees and errors are compared
+ * against those of the sequential parser.
+ */
+public class TestParallelParser extends TestCase
+{
+    /**
+     * Initialization
+     *
+     * @param testName name of the test case
+     */
+    public TestParallelParser(String testName)
+    {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite(TestParallelParser.class);
+    }
+
+    /**
+     * Generate a program that is large enough to be parsed in parallel
+     */
+    private static String program(int functions)
+    {
+        StringBuilder text = new StringBuilder("int g[10];\n");
+        for (int i = 0; i < functions; i++) {
+            text.append("def int f" + i + "(int x, bool b) {\n" +
+                    "    int a;\n" +
+                    "    a = (x * 0x1F + " + i + ") / 3;\n" +
+                    "    while (a >= 0 && !b) { a = a - 7; g[a % 10] = a; }\n" +
+                    "    if (b) { print_str(\"f" + i + "\"); } else { return -a; }\n" +
+                    "    return f" + i + "(a, b || false);\n" +
+                    "}\n");
+            if (i % 100 == 0) {
+                text.append("bool h" + i + ";\n");
+            }
+        }
+        return text.toString() + "def int main() { return f0(1, true); }\n";
+    }
+
+    /**
+     * Parse a program and describe the result (the tree or the error message)
+     */
+    private static String describe(DecafParser parser, String text) throws Exception
+    {
+        Queue<Token> tokens = (new DecafScanner()).lex(text, "test.decaf");
+        try {
+            ASTProgram program = parser.parse(tokens);
+            assertTrue(tokens.isEmpty());
+            program.traverse(new BuildParentLinks());
+            program.traverse(new CalculateNodeDepths());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            program.traverse(new PrintDebugTree(new PrintStream(out)));
+            return out.toString();
+        } catch (InvalidSyntaxException ex) {
+            return "error: " + ex.getMessage();
+        }
+    }
+
+    private static void assertSameParse(String text) throws Exception
+    {
+        // use several threads even on single-processor machines
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(describe(new MyDecafParser(), text),
+                    describe(new ParallelParser(new MyDecafParser(), pool), text));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testLargeProgram() throws Exception
+    {
+        String text = program(3000);
+        assertTrue((new DecafScanner()).lex(text, "test.decaf").size() >=
+                ParallelParser.MIN_PARALLEL_TOKENS);
+        assertSameParse(text);
+    }
+
+    public void testSmallPrograms() throws Exception
+    {
+        assertSameParse("");
+        assertSameParse(program(1));
+        assertSameParse(InterpreterBenchmark.FIB);
+        assertSameParse("def int main() { return 0; ");
+    }
+
+    public void testErrors() throws Exception
+    {
+        String text = program(3000);
+        int middle = text.indexOf("def int f1500(");
+
+        // a syntax error in the middle of the program
+        assertSameParse(text.substring(0, middle) + "def int (" + text.substring(middle));
+
+        // unbalanced braces, which confuse the pre-scan
+        assertSameParse(text.substring(0, middle) + "}" + text.substring(middle));
+        assertSameParse(text.substring(0, middle) + "{" + text.substring(middle));
+        assertSameParse(text.substring(0, middle) + "def" + text.substring(middle));
+
+        // errors in several segments (only the first one is reported)
+        int later = text.indexOf("def int f2500(");
+        assertSameParse(text.substring(0, middle) + ";" + text.substring(middle, later) +
+                "x" + text.substring(later));
+
+        // missing tokens at the end
+        assertSameParse(text.substring(0, text.length() - 3));
+    }
+}
@@ -0,0 +1,61 @@
+package edu.jmu.decaf;
+
+import java.io.*;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Test cases for the instruction-level execution profiler.
+ */
+public class TestProfiler extends TestCase
+{
+    /**
+     * Initialization
+     *
+     * @param testName name of the test case
+     */
+    public TestProfiler(String testName)
+    {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite(TestProfiler.class);
+    }
+
+    public void testProfiler() throws Exception
+    {
+        ILOCInterpreter interp = new ILOCInterpreter();
+        ILOCProfiler profiler = new ILOCProfiler();
+        interp.setExecutionListener(profiler);
+        interp.process(TestInterpreter.compile(InterpreterBenchmark.FIB));
+        assertEquals(6765, interp.getReturnValue());
+        assertEquals(1, profiler.getCallCount("main"));
+        assertEquals(21891, profiler.getCallCount("fib"));
+        assertEquals(1, profiler.getCallCount(ILOCProfiler.START, "main"));
+        assertEquals(1, profiler.getCallCount("main", "fib"));
+        assertEquals(21890, profiler.getCallCount("fib", "fib"));
+        assertEquals(0, profiler.getCallCount("fib", "main"));
+        long total = profiler.getTotalInstructions();
+        assertEquals(total, profiler.getSelfCount("main") + profiler.getSelfCount("fib"));
+        assertEquals(total, profiler.getInclusiveCount("main"));
+        assertEquals(profiler.getSelfCount("fib"), profiler.getInclusiveCount("fib"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        profiler.writeCSV(new PrintStream(out));
+        assertTrue(out.toString().startsWith("kind,function,item,count"));
+        assertTrue(out.toString().contains("edge,fib,fib,21890"));
+        out.reset();
+        profiler.writeJSON(new PrintStream(out));
+        assertTrue(out.toString().contains("\"total\": " + total + ","));
+        out.reset();
+        profiler.printFlatProfile(new PrintStream(out));
+        assertTrue(out.toString().startsWith("Flat profile (" + total));
+    }
+}
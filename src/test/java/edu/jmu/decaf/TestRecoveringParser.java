@@ -0,0 +1,144 @@
+package edu.jmu.decaf;
+
+import java.io.*;
+import java.util.*;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Test cases for the error-recovering parser.
+ */
+public class TestRecoveringParser extends TestCase
+{
+    /**
+     * Initialization
+     *
+     * @param testName name of the test case
+     */
+    public TestRecoveringParser(String testName)
+    {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite(TestRecoveringParser.class);
+    }
+
+    private static final String PROGRAM =
+        "int g;\n" +
+        "int bad bad;\n" +
+        "def int f(int x) {\n" +
+        "    int a;\n" +
+        "    a = x + ;\n" +
+        "    while (a > 0) { a = a - ; }\n" +
+        "    return a;\n" +
+        "}\n" +
+        "def int g2(int x, ) {\n" +
+        "    return 1;\n" +
+        "}\n" +
+        "def void h() {\n" +
+        "    print_int(1)\n" +
+        "    print_int(2);\n" +
+        "}\n" +
+        "def int main() {\n" +
+        "    return f(1) + true;\n" +
+        "}\n";
+
+    /**
+     * Parse a program with recovery
+     * @return Syntax errors
+     */
+    private static List<String> syntaxErrors(String text) throws Exception
+    {
+        RecoveringParser parser = new RecoveringParser();
+        CompilationContext context = new CompilationContext();
+        CompilationContext previous = context.enter();
+        try {
+            parser.parse((new DecafScanner()).lex(text, "test.decaf"));
+        } finally {
+            CompilationContext.restore(previous);
+        }
+        assertEquals(parser.getErrors(), context.getErrors());
+        return parser.getErrors();
+    }
+
+    /**
+     * Parse a program without recovery
+     * @return Syntax error (or null)
+     */
+    private static String firstError(String text) throws Exception
+    {
+        try {
+            (new MyDecafParser()).parse((new DecafScanner()).lex(text, "test.decaf"));
+            return null;
+        } catch (InvalidSyntaxException ex) {
+            return ex.getMessage();
+        }
+    }
+
+    public void testAllErrors() throws Exception
+    {
+        assertEquals(Arrays.asList(
+                    "Symbol \";\" expected but not found at test.decaf:2",
+                    "Missing expression at test.decaf:5",
+                    "Missing expression at test.decaf:6",
+                    "Missing type specifier at test.decaf:9",
+                    "Symbol \";\" expected but not found at test.decaf:14"),
+                syntaxErrors(PROGRAM));
+    }
+
+    public void testValidPrograms() throws Exception
+    {
+        assertEquals(0, syntaxErrors(InterpreterBenchmark.FIB).size());
+        assertEquals(0, syntaxErrors(InterpreterBenchmark.ARRAY_LOOP).size());
+        assertEquals(0, syntaxErrors("").size());
+    }
+
+    public void testFirstError() throws Exception
+    {
+        // delete each token of a valid program in turn; the first error must
+        // match the one reported without recovery
+        String text = InterpreterBenchmark.FIB + " int x; def void f() { x = 1; }";
+        List<Token> tokens = new ArrayList<Token>((new DecafScanner()).lex(text, "test.decaf"));
+        for (int i = 0; i < tokens.size(); i++) {
+            StringBuilder broken = new StringBuilder();
+            for (int j = 0; j < tokens.size(); j++) {
+                if (j != i) {
+                    broken.append(tokens.get(j).text);
+                    broken.append(j % 5 == 0 ? '\n' : ' ');
+                }
+            }
+            String expected = firstError(broken.toString());
+            List<String> errors = syntaxErrors(broken.toString());
+            if (expected == null) {
+                assertEquals(0, errors.size());
+            } else {
+                assertEquals(expected, errors.get(0));
+            }
+        }
+    }
+
+    public void testRestOfPipeline() throws Exception
+    {
+        // static analysis still runs on the functions without syntax errors
+        try {
+            DecafCompiler.compile(new CompilationContext(),
+                    (new DecafScanner()).stream(new BufferedReader(
+                            new StringReader(PROGRAM)), "test.decaf"),
+                    new RecoveringParser());
+            fail("expected errors");
+        } catch (InvalidProgramException ex) {
+            String[] lines = ex.getMessage().split("\n");
+            assertEquals(6, lines.length);
+            assertEquals("Missing expression at test.decaf:5", lines[1]);
+            assertEquals("Type mismatch: int expected but bool found at test.decaf:17",
+                    lines[5]);
+        }
+    }
+}
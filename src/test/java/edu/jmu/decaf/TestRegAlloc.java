@@ -108,15 +108,18 @@ public class TestRegAlloc extends TestCase
     {
         TimeoutTest test = new TimeoutTest(text);
         Thread t = new Thread(test);
-        Instant start = Instant.now();
         t.start();
-        while (t.isAlive()) {
-            Instant curr = Instant.now();
-            Duration len = Duration.between(start, curr);
-            if (len.getSeconds() > 1) {
+        try {
+            t.join(Duration.ofSeconds(2).toMillis());
+            if (t.isAlive()) {
+                // the interpreter stops when its thread is interrupted
                 t.interrupt();
+                t.join();
                 assertTrue(false);
             }
+        } catch (InterruptedException ex) {
+            t.interrupt();
+            assertTrue(false);
         }
         return test.getReturnValue();
     }
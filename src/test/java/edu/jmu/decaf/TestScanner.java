@@ -0,0 +1,382 @@
+package edu.jmu.decaf;
+
+import java.io.*;
+import java.util.*;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Test cases for the hand-coded lexer. Its output is compared against the
+ * regular-expression lexer, which serves as the reference implementation.
+ */
+public class TestScanner extends TestCase
+{
+    /**
+     * Initialization
+     *
+     * @param testName name of the test case
+     */
+    public TestScanner(String testName)
+    {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite(TestScanner.class);
+    }
+
+    /**
+     * Lex some text and describe the result (all tokens with their source
+     * info, or the error message)
+     */
+    private static String describe(DecafLexer lexer, String text) throws IOException
+    {
+        StringBuilder str = new StringBuilder();
+        try {
+            for (Token t : lexer.lex(new BufferedReader(new StringReader(text)), "test.decaf")) {
+                str.append(t.toString());
+                str.append('\n');
+            }
+        } catch (InvalidTokenException ex) {
+            str.append("error: " + ex.getMessage());
+        }
+        return str.toString();
+    }
+
+    private static void assertSameTokens(String text) throws IOException
+    {
+        assertEquals(describe(new MyDecafLexer(), text), describe(new DecafScanner(), text));
+    }
+
+    public void testPrograms() throws Exception
+    {
+        assertSameTokens(InterpreterBenchmark.FIB);
+        assertSameTokens(InterpreterBenchmark.ARRAY_LOOP);
+        assertSameTokens(
+                "// comment\n" +
+                "int a[10];   // trailing comment\r\n" +
+                "def void f(int x, bool b) {\r" +
+                "  if (x <= 0x1F && !b || x >= 017) { print_str(\"a\\tb\\n\\\"\\\\\"); }\n" +
+                "\n" +
+                "  else { while (x != 0) { x = x - 1; continue; } break; }\n" +
+                "  return;\t}\f\u000B");
+    }
+
+    public void testEdgeCases() throws Exception
+    {
+        String[] cases = {
+            "", "\n", "\r\n\r\n", "  ", "//", "a//b", "a /b", "a/ /b",
+            "0x", "0x0", "0x01", "0xg", "0xFFz", "00", "0123", "12ab", "a_1 _a",
+            "\"\"", "\"abc", "\"a\\qb\"", "\"a\\\"", "\"a\\\\\"", "\"\\n\"x\"",
+            "<<=>==!==&&&|||", "&", "|", "#", "a.b", "@",
+            "if iff for forx class", "true false null", "$",
+            "// x\u2028y", "a\u0085b", "\u00e9t\u00e9", "x\ty\u000Bz\fw",
+            "a\n\"b\nc\"",
+        };
+        for (String text : cases) {
+            assertSameTokens(text);
+        }
+    }
+
+    public void testRandomInput() throws Exception
+    {
+        String[] pieces = {
+            " ", "  ", "\t", "\n", "\r\n", "\r", "//", "/", "0", "0x", "1", "9",
+            "a", "Z", "_", "x", "f", "int", "if", "new", "\"", "\\", "\\n", "\\q",
+            "<", "=", "!", "&", "|", "(", ";", ".", "#", "\u2028",
+        };
+        Random random = new Random(480);
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder text = new StringBuilder();
+            int n = random.nextInt(12);
+            for (int j = 0; j < n; j++) {
+                text.append(pieces[random.nextInt(pieces.length)]);
+            }
+            assertSameTokens(text.toString());
+        }
+    }
+
+    public void testStream() throws Exception
+    {
+        String text = InterpreterBenchmark.FIB + "\n// end\n";
+        Queue<Token> expected = (new DecafScanner()).lex(text, "test.decaf");
+        TokenStream stream = (new DecafScanner()).stream(
+                new BufferedReader(new StringReader(text)), "test.decaf");
+
+        DecafParser parser = new MyDecafParser();
+        assertEquals("fib", parser.peekToken(stream, 2).text);
+        assertEquals("fib", parser.peekToken(expected, 2).text);
+        assertNull(parser.peekToken(expected, expected.size()));
+        for (Token t : expected) {
+            assertFalse(stream.isEmpty());
+            assertEquals(t.toString(), stream.peek().toString());
+            assertEquals(t.toString(), stream.remove().toString());
+        }
+        assertTrue(stream.isEmpty());
+        assertEquals(0, stream.size());
+        assertNull(stream.peek(0));
+        stream.finish();
+        try {
+            stream.add(new Token(Token.Type.ID, "x"));
+            fail("expected token streams to be read-only");
+        } catch (UnsupportedOperationException ex) { }
+    }
+
+    public void testStreamIsLazy() throws Exception
+    {
+        // the reader fails if the stream reads past the second line
+        Reader reader = new StringReader("def int main()\n{ return 0;\n}\n") {
+            public int read(char[] buf, int off, int len) throws IOException {
+                int n = super.read(buf, off, Math.min(len, 1));
+                if (n > 0 && buf[off] == '}') {
+                    throw new IOException("read too far");
+                }
+                return n;
+            }
+        };
+        TokenStream stream = (new DecafScanner()).stream(
+                new BufferedReader(reader, 1), "test.decaf");
+        assertEquals("def", stream.peek().text);
+        assertEquals("{", stream.peek(5).text);
+        try {
+            stream.finish();
+            fail("expected the I/O error to be reported");
+        } catch (IOException ex) { }
+    }
+
+    /**
+     * Compile some text with the driver (which parses from a token stream)
+     * and return the error message (or null)
+     */
+    private static String compileError(String text) throws Exception
+    {
+        try {
+            DecafCompiler.compile(new CompilationContext(),
+                    new BufferedReader(new StringReader(text)), "test.decaf");
+            return null;
+        } catch (InvalidTokenException ex) {
+            return "token: " + ex.getMessage();
+        } catch (InvalidSyntaxException ex) {
+            return "syntax: " + ex.getMessage();
+        }
+    }
+
+    public void testStreamErrors() throws Exception
+    {
+        // lexical errors win even if the parser fails (or succeeds) first
+        assertEquals("token: Invalid text at test.decaf:3",
+                compileError("def int main( {\n\n #"));
+        assertEquals("token: Invalid use of reserved word \"class\" at test.decaf:2",
+                compileError("def int main() { return 0; }\nclass"));
+        assertEquals("syntax: Missing type specifier at test.decaf:1",
+                compileError("def int main( { }\n"));
+        assertNull(compileError("def int main() { return 0; }"));
+    }
+
+    /**
+     * Lex a file through a reader or a memory mapping and describe the
+     * result (as in {@link #describe})
+     */
+    private static String describe(File file, boolean mapped) throws IOException
+    {
+        DecafScanner scanner = new DecafScanner();
+        StringBuilder str = new StringBuilder();
+        try {
+            for (Token t : (mapped ? scanner.lexMapped(file, "test.decaf") :
+                        scanner.lex(new BufferedReader(new FileReader(file)), "test.decaf"))) {
+                str.append(t.toString());
+                str.append('\n');
+            }
+        } catch (InvalidTokenException ex) {
+            str.append("error: " + ex.getMessage());
+        }
+        return str.toString();
+    }
+
+    public void testMapped() throws Exception
+    {
+        String[] cases = {
+            "", "\n\n", InterpreterBenchmark.FIB,
+            "int a; // caf\u00e9\r\ndef void f() {\r print_str(\"\u00fcber\"); }\n",
+            "// x\u2028y\na\u0085b", "def int main() {\n  return 0x1F;\n}\n#",
+        };
+        File file = File.createTempFile("test", ".decaf");
+        try {
+            for (String text : cases) {
+                Writer out = new FileWriter(file);
+                out.write(text);
+                out.close();
+                assertEquals(describe(file, false), describe(file, true));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testCodesAndNames() throws Exception
+    {
+        NamePool names = new NamePool();
+        Queue<Token> tokens = (new DecafScanner(names)).lex(
+                "def int f(int x) { return x + xy + x; }", "test.decaf");
+        Map<String, String> seen = new HashMap<String, String>();
+        for (Token t : tokens) {
+            if (t.type == Token.Type.KEY || t.type == Token.Type.SYM) {
+                assertEquals(t.text, Token.textOf(t.code));
+                assertSame(Token.textOf(t.code), t.text);
+                assertEquals(t.type == Token.Type.KEY, Token.isKeywordCode(t.code));
+            } else {
+                assertEquals(Token.NO_CODE, t.code);
+            }
+            if (seen.containsKey(t.text)) {
+                assertSame(seen.get(t.text), t.text);
+            }
+            seen.put(t.text, t.text);
+        }
+        assertSame(names.intern("xy"), names.intern(new StringBuilder("(xy)"), 1, 3));
+        assertTrue(Token.isReservedCode(Token.codeOf("class")));
+        assertFalse(Token.isKeywordCode(Token.codeOf("class")));
+        for (int code = 0; code < Token.numCodes(); code++) {
+            // the scanner's keywords and reserved words match the reference
+            assertSameTokens(Token.textOf(code));
+            assertSameTokens(Token.textOf(code) + "x");
+        }
+        assertEquals(Token.numCodes() + 3, names.size());    // f, x, xy
+
+        DecafParser parser = new MyDecafParser();
+        assertTrue(parser.isNextTokenKeyword(tokens, Token.codeOf("def")));
+        assertFalse(parser.isNextTokenSymbol(tokens, Token.codeOf("(")));
+        parser.matchKeyword(tokens, Token.codeOf("def"));
+        parser.matchKeyword(tokens, "int");
+        assertTrue(parser.isNextToken(tokens, Token.Type.ID));
+        parser.consumeNextToken(tokens);
+        parser.matchSymbol(tokens, Token.codeOf("("));
+        try {
+            parser.matchSymbol(tokens, Token.codeOf(")"));
+            fail("expected a syntax error");
+        } catch (InvalidSyntaxException ex) {
+            assertEquals("Symbol \")\" expected but not found at test.decaf:1", ex.getMessage());
+        }
+    }
+
+    public void testTokenBuffer() throws Exception
+    {
+        String text = InterpreterBenchmark.FIB;
+        Queue<Token> expected = (new DecafScanner()).lex(text, "test.decaf");
+        TokenBuffer tokens = new TokenBuffer((new DecafScanner()).stream(
+                    new BufferedReader(new StringReader(text)), "test.decaf"));
+
+        DecafParser parser = new MyDecafParser();
+        assertEquals("fib", parser.peekToken(tokens, 2).text);
+        int mark = tokens.mark();
+        parser.matchKeyword(tokens, "def");
+        parser.matchKeyword(tokens, "int");
+        parser.consumeNextToken(tokens);
+        assertEquals(3, tokens.mark());
+        try {
+            parser.matchSymbol(tokens, ")");
+            fail("expected a syntax error");
+        } catch (InvalidSyntaxException ex) {
+            assertEquals("Symbol \")\" expected but not found at test.decaf:1", ex.getMessage());
+        }
+        tokens.reset(mark);
+        assertEquals("def", tokens.peek().text);
+        tokens.reset(3);
+        assertEquals("(", tokens.peek().text);
+        tokens.reset(mark);
+
+        for (Token t : expected) {
+            assertSame(tokens.peek().source, parser.getCurrentSourceInfo(tokens));
+            assertEquals(t.toString(), tokens.poll().toString());
+        }
+        assertTrue(tokens.isEmpty());
+        assertEquals(0, tokens.size());
+        assertNull(tokens.peek(0));
+        assertSame(SourceInfo.INVALID, parser.getCurrentSourceInfo(tokens));
+        try {
+            parser.consumeNextToken(tokens);
+            fail("expected a syntax error");
+        } catch (InvalidSyntaxException ex) { }
+
+        // the whole program can be parsed again after a reset
+        tokens.reset(0);
+        assertEquals(expected.size(), tokens.size());
+        assertNotNull(parser.parse(tokens));
+        try {
+            tokens.reset(expected.size() + 1);
+            fail("expected an invalid mark");
+        } catch (IllegalArgumentException ex) { }
+    }
+
+    public void testTokenBufferDropsTokens() throws Exception
+    {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            text.append("x = " + i + ";\n");
+        }
+        TokenBuffer tokens = new TokenBuffer((new DecafScanner()).stream(
+                    new BufferedReader(new StringReader(text.toString())), "test.decaf"));
+
+        // tokens after an outstanding mark are kept ...
+        int mark = tokens.mark();
+        for (int i = 0; i < 20000; i++) {
+            tokens.poll();
+        }
+        tokens.reset(mark);
+        assertEquals("x", tokens.peek().text);
+        assertEquals(1, tokens.peek().source.lineNumber);
+
+        // ... but consumed tokens are dropped once it is released
+        tokens.release(mark);
+        int n = 0;
+        while (tokens.poll() != null) {
+            n++;
+        }
+        assertEquals(40000, n);
+        assertEquals(40000, tokens.position());
+        try {
+            tokens.reset(mark);
+            fail("expected a dropped mark");
+        } catch (IllegalArgumentException ex) { }
+        tokens.reset(39999);
+        assertEquals(";", tokens.poll().text);
+    }
+
+    public void testTokenBufferStaysBounded() throws Exception
+    {
+        // parsing without marks only keeps a window of the input
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            text.append("def int f" + i + "(int x) {\n  int y;\n  y = x * " + i +
+                    ";\n  if (y > 10) { return y - 1; }\n  return f" + i + "(y + 1);\n}\n");
+        }
+        text.append("def int main() { return 0; }\n");
+        TokenStream stream = (new DecafScanner()).stream(
+                new BufferedReader(new StringReader(text.toString())), "test.decaf");
+        TokenBuffer tokens = new TokenBuffer(stream);
+        ASTProgram program = (new MyDecafParser()).parse(tokens);
+        stream.finish();
+        assertEquals(5001, program.functions.size());
+        assertEquals(256, tokens.capacity());
+        assertEquals(5000 * 39 + 10, tokens.position());
+    }
+
+    public void testLongLine() throws Exception
+    {
+        // would take quadratic time with the regular-expression lexer
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            text.append("a[" + i + "] = a[" + i + "] + 0x1F; ");
+        }
+        Queue<Token> tokens = (new DecafScanner()).lex(text, "long.decaf");
+        assertEquals(1200000, tokens.size());
+        for (Token t : tokens) {
+            assertEquals(1, t.source.lineNumber);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package edu.jmu.decaf;
+
+import java.io.*;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Test cases for tiered compilation (hot ILOC functions compiled to JVM
+ * bytecode at run time). Every program is also checked against the other
+ * execution engines.
+ */
+public class TestTieredCompilation extends TestCase
+{
+    /**
+     * Initialization
+     *
+     * @param testName name of the test case
+     */
+    public TestTieredCompilation(String testName)
+    {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite(TestTieredCompilation.class);
+    }
+
+    /**
+     * Run a program on all execution engines (the interpreter, the threaded
+     * engine, and the interpreter with tiered compilation and very low
+     * thresholds) and check that they print the same output and return the
+     * same value
+     */
+    private static void assertSameResults(String text, boolean shared) throws Exception
+    {
+        ByteArrayOutputStream out1 = new ByteArrayOutputStream();
+        ByteArrayOutputStream out2 = new ByteArrayOutputStream();
+        ByteArrayOutputStream out3 = new ByteArrayOutputStream();
+        ILOCInterpreter interp = new ILOCInterpreter();
+        ILOCThreadedInterpreter threaded = new ILOCThreadedInterpreter();
+        ILOCInterpreter tiered = new ILOCInterpreter();
+        interp.setSharedRegisters(shared);
+        threaded.setSharedRegisters(shared);
+        tiered.setSharedRegisters(shared);
+        tiered.setTieredCompilation(true);
+        tiered.setCompileThresholds(2, 3);
+        interp.setOutput(new PrintStream(out1));
+        threaded.setOutput(new PrintStream(out2));
+        tiered.setOutput(new PrintStream(out3));
+        interp.process(TestInterpreter.compile(text));
+        threaded.process(TestInterpreter.compile(text));
+        tiered.process(TestInterpreter.compile(text));
+        assertEquals(out1.toString(), out2.toString());
+        assertEquals(out1.toString(), out3.toString());
+        assertEquals(interp.getReturnValue(), threaded.getReturnValue());
+        assertEquals(interp.getReturnValue(), tiered.getReturnValue());
+    }
+
+    public void testEngines() throws Exception
+    {
+        String[] programs = {
+            InterpreterBenchmark.ARRAY_LOOP,
+            InterpreterBenchmark.SCALAR_LOOP,
+            InterpreterBenchmark.FIB,
+            "def int sum(int n) { if (n == 0) { return 0; } return n + sum(n-1); } " +
+            "def int main() { return sum(2000); }",
+            "def void show(int x) { print_int(x); print_str(\"\\n\"); } " +
+            "def bool odd(int x) { return x % 2 == 1; } " +
+            "def int main() { int i; i = 0; " +
+            "  while (true) { i = i + 1; if (i > 10) { break; } " +
+            "    if (odd(i) || !(i != 4) && i >= 4) { show(-i); } else { continue; } } " +
+            "  return i; }",
+        };
+        for (String text : programs) {
+            assertSameResults(text, false);
+            assertSameResults(text, true);
+        }
+    }
+
+    public void testTieredCompilation() throws Exception
+    {
+        ILOCInterpreter interp = new ILOCInterpreter();
+        interp.setTieredCompilation(true);
+        interp.setCompileThresholds(10, 100);
+        interp.process(TestInterpreter.compile(InterpreterBenchmark.FIB));
+        assertEquals(6765, interp.getReturnValue());
+        assertTrue(interp.isCompiled("fib"));
+        assertFalse(interp.isCompiled("main"));
+
+        // main is only called once, so it must be compiled from inside a loop
+        interp.process(TestInterpreter.compile(InterpreterBenchmark.ARRAY_LOOP));
+        assertEquals(9900, interp.getReturnValue());
+        assertTrue(interp.isCompiled("main"));
+
+        // no compilation with shared registers
+        interp.setSharedRegisters(true);
+        interp.process(TestInterpreter.compile(InterpreterBenchmark.ARRAY_LOOP));
+        assertEquals(9900, interp.getReturnValue());
+        assertFalse(interp.isCompiled("main"));
+    }
+}